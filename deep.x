@@ -0,0 +1,9 @@
+program { int k
+  int deep(int n) {
+      if (n < 1) then
+         { return 0 }
+      else
+         { return 1 + deep(n-1) }
+  }
+  k = write(deep(read()))
+}
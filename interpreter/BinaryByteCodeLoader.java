@@ -0,0 +1,205 @@
+package interpreter;
+import interpreter.ByteCode.Arguments;
+import interpreter.ByteCode.ByteCode;
+import interpreter.analysis.Verifier;
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.function.Supplier;
+
+/**
+ * Loads a Program from a binary .xbc file, see BinaryFormat.
+ *
+ * The file is mapped into memory and decoded in place.  The Strings of the
+ * pool are made once each, numbers are never turned into Strings, and the
+ * LABELs are already resolved, so loading a code allocates nothing but the
+ * code itself.  Each code is made by the loader's InstructionSet, and gets
+ * its operands as its Arguments.
+ *
+ * @author admin
+ */
+public class BinaryByteCodeLoader implements Arguments {
+
+    private InstructionSet codes;
+    private MappedByteBuffer buffer;
+    private String[] pool;
+
+    // the operands of the code being loaded
+    private String name;
+    private int count;
+    private int[] tags = new int[4];
+    private int[] values = new int[4];
+    private int[] addresses = new int[4];
+
+    public BinaryByteCodeLoader(String fileName) throws IOException{
+        this(fileName, InstructionSet.STANDARD);
+    }
+
+    public BinaryByteCodeLoader(String fileName, InstructionSet codes) throws IOException{
+        this.codes = codes;
+        RandomAccessFile file = new RandomAccessFile(fileName, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            // the mapping stays valid once the file is closed
+            file.close();
+        }
+    }
+
+    /**
+     * @throws ByteCodeLoadException if the file is not an .xbc file this
+     *  loader can read, or the Program in it does not verify.
+     */
+    public Program loadCodes(){
+        Program program = new Program();
+        try {
+            readHeader();
+        } catch (BufferUnderflowException e){
+            throw new ByteCodeLoadException("the file ends in its header");
+        }
+        try {
+            readPool();
+        } catch (BufferUnderflowException e){
+            throw new ByteCodeLoadException("the file ends in its string pool");
+        }
+        int codes;
+        try {
+            codes = readVarint();
+        } catch (BufferUnderflowException e){
+            throw new ByteCodeLoadException("the file ends before its number of codes");
+        }
+        if (codes < 0) throw new ByteCodeLoadException("the number of codes is negative: " + codes);
+        try {
+            for (int i=0; i<codes; i++){
+                program.pushByteCode(readCode(i));
+            }
+        } catch (BufferUnderflowException e){
+            throw new ByteCodeLoadException("the file ends in code " + program.getNumberOfByteCodes()
+                    + " of " + codes);
+        }
+        program.markTailCalls();
+        // reject malformed programs before anything runs them
+        program.setStackDepth(Verifier.verify(program).getStackDepth());
+        return program;
+    }
+
+    private void readHeader(){
+        for (byte b : BinaryFormat.MAGIC){
+            if (buffer.get() != b) throw new ByteCodeLoadException("not an .xbc file");
+        }
+        int version = buffer.get();
+        if (version != BinaryFormat.VERSION){
+            throw new ByteCodeLoadException("cannot read version " + version + " of the .xbc format");
+        }
+    }
+
+    private void readPool(){
+        pool = new String[readCount("the number of strings")];
+        byte[] bytes = new byte[64];
+        for (int i=0; i<pool.length; i++){
+            int length = readCount("the length of string " + i);
+            if (length > bytes.length) bytes = new byte[length];
+            buffer.get(bytes, 0, length);
+            try {
+                pool[i] = new String(bytes, 0, length, "UTF-8");
+            } catch (UnsupportedEncodingException e){
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private ByteCode readCode(int address){
+        int number = buffer.get() & 0xff;
+        if (number >= BinaryFormat.NAMES.length){
+            throw new ByteCodeLoadException("code " + address + ": there is no code number " + number);
+        }
+        name = BinaryFormat.NAMES[number];
+        Supplier<? extends ByteCode> factory = codes.factory(name);
+        if (factory == null){
+            throw new ByteCodeLoadException("code " + address + ": " + name + " cannot be loaded here");
+        }
+
+        count = readCount("the number of operands of code " + address);
+        if (count > tags.length){
+            tags = new int[count];
+            values = new int[count];
+            addresses = new int[count];
+        }
+        for (int i=0; i<count; i++){
+            tags[i] = buffer.get();
+            if (tags[i] < BinaryFormat.INT || tags[i] > BinaryFormat.LABEL){
+                throw new ByteCodeLoadException("code " + address + ": there is no operand tag " + tags[i]);
+            }
+            values[i] = readVarint();
+            if (tags[i] == BinaryFormat.INT) values[i] = (values[i] >>> 1) ^ -(values[i] & 1);
+            else if (values[i] < 0 || values[i] >= pool.length){
+                throw new ByteCodeLoadException("code " + address + ": there is no string " + values[i]);
+            }
+            addresses[i] = Program.UNRESOLVED;
+            if (tags[i] == BinaryFormat.LABEL){
+                int target = readVarint();
+                if (target > 0) addresses[i] = target-1;
+            }
+        }
+
+        try {
+            ByteCode code = factory.get();
+            code.init(this);
+            return code.specialize();
+        } catch (ByteCodeLoadException e){
+            throw new ByteCodeLoadException("code " + address + ": " + e.getMessage());
+        } catch (RuntimeException e){
+            throw new ByteCodeLoadException("code " + address + ": " + name + " cannot take its operands");
+        }
+    }
+
+    // A count or length, which each thing it counts takes at least a byte of,
+    // so one past the end of the file means the file ends early.
+    private int readCount(String what){
+        int count = readVarint();
+        if (count < 0) throw new ByteCodeLoadException(what + " is negative: " + count);
+        if (count > buffer.remaining()) throw new BufferUnderflowException();
+        return count;
+    }
+
+    private int readVarint(){
+        int value = 0;
+        for (int shift=0; ; shift+=7){
+            byte b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) return value;
+            if (shift > 28) throw new ByteCodeLoadException("a number in the file is too long");
+        }
+    }
+
+    // -------- the operands of the code being loaded, as its Arguments --------
+
+    public int size(){
+        return count+1;
+    }
+
+    public int intAt(int i){
+        if (i < 1 || i > count || tags[i-1] != BinaryFormat.INT){
+            throw new ByteCodeLoadException(name + " needs a number as operand " + i);
+        }
+        return values[i-1];
+    }
+
+    public String stringAt(int i){
+        if (i == 0) return name;
+        if (tags[i-1] == BinaryFormat.INT) return Integer.toString(values[i-1]);
+        return pool[values[i-1]];
+    }
+
+    public int addressAt(int i){
+        return addresses[i-1];
+    }
+
+    public String[] toStrings(){
+        String[] strings = new String[count+1];
+        for (int i=0; i<=count; i++) strings[i] = stringAt(i);
+        return strings;
+    }
+}
@@ -0,0 +1,116 @@
+package interpreter;
+import java.io.*;
+import java.util.*;
+
+/**
+ * Converts a .cod file into the binary .xbc format that BinaryFormat
+ * describes.
+ *
+ * The codes are those the ByteCodeLoader loads from the .cod file, so a
+ * line it leaves out is left out of the .xbc file too and every code keeps
+ * its address.  A program the loader rejects is never written.
+ *
+ * @author admin
+ */
+public class BinaryByteCodeWriter {
+
+    private List<String[]> lines = new ArrayList<String[]>();
+    private HashMap<String, Integer> labels = new HashMap<String, Integer>();
+    private LinkedHashMap<String, Integer> pool = new LinkedHashMap<String, Integer>();
+
+    /**
+     * @return the number of codes written.
+     * @throws ByteCodeLoadException if the .cod file is not a valid program.
+     */
+    public static int write(String codFile, String xbcFile) throws IOException{
+        ByteCodeLoader loader = new ByteCodeLoader(codFile);
+        loader.tokens = new ArrayList<String[]>();
+        loader.loadCodes();
+
+        BinaryByteCodeWriter writer = new BinaryByteCodeWriter();
+        writer.read(loader.tokens);
+        ByteArrayOutputStream codes = new ByteArrayOutputStream();
+        writer.writeCodes(codes);
+
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(xbcFile));
+        try {
+            out.write(BinaryFormat.MAGIC);
+            out.write(BinaryFormat.VERSION);
+            writer.writePool(out);
+            codes.writeTo(out);
+        } finally {
+            out.close();
+        }
+        return writer.lines.size();
+    }
+
+    private void read(List<String[]> codes){
+        for (String[] tokens : codes){
+            if (BinaryFormat.numberOf(tokens[0]) < 0){
+                throw new ByteCodeLoadException(tokens[0] + " has no number in the binary format");
+            }
+            // the loader has already turned away a label defined twice
+            if (tokens[0].equals("LABEL")) labels.put(tokens[1], lines.size());
+            lines.add(tokens);
+        }
+    }
+
+    private void writeCodes(OutputStream out) throws IOException{
+        writeVarint(out, lines.size());
+        for (String[] tokens : lines){
+            out.write(BinaryFormat.numberOf(tokens[0]));
+            writeVarint(out, tokens.length-1);
+            for (int i=1; i<tokens.length; i++){
+                if (i == 1 && BinaryFormat.takesLabel(tokens[0])){
+                    Integer address = labels.get(tokens[i]);
+                    out.write(BinaryFormat.LABEL);
+                    writeVarint(out, poolIndex(tokens[i]));
+                    writeVarint(out, (address == null ? 0 : address+1));
+                } else if (isInt(tokens[i])){
+                    int value = Integer.parseInt(tokens[i]);
+                    out.write(BinaryFormat.INT);
+                    writeVarint(out, (value << 1) ^ (value >> 31));
+                } else {
+                    out.write(BinaryFormat.STRING);
+                    writeVarint(out, poolIndex(tokens[i]));
+                }
+            }
+        }
+    }
+
+    private void writePool(OutputStream out) throws IOException{
+        writeVarint(out, pool.size());
+        for (String string : pool.keySet()){
+            byte[] bytes = string.getBytes("UTF-8");
+            writeVarint(out, bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private int poolIndex(String string){
+        Integer index = pool.get(string);
+        if (index == null){
+            index = pool.size();
+            pool.put(string, index);
+        }
+        return index;
+    }
+
+    // Only numbers that print back the same are written as numbers, so
+    // that loading gives back every token as it was.
+    private static boolean isInt(String token){
+        try {
+            return Integer.toString(Integer.parseInt(token)).equals(token);
+        } catch (NumberFormatException e){
+            return false;
+        }
+    }
+
+    private static void writeVarint(OutputStream out, int value) throws IOException{
+        while ((value & ~0x7f) != 0){
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
@@ -0,0 +1,77 @@
+package interpreter;
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * The layout of a binary .xbc file, which holds the same Program as the
+ * .cod file it was written from, ready to be loaded without parsing text.
+ *
+ *   header      the bytes 'X' 'B' 'C' 0, then the version
+ *   pool        a varint count, then each String as a varint length and
+ *               that many bytes of UTF-8
+ *   codes       a varint count, then each code as
+ *                 the index of its name in NAMES, one byte
+ *                 a varint count of its operands
+ *                 each operand as a tag byte followed by
+ *                   INT     the number, zigzag encoded as a varint
+ *                   STRING  the index of the String in the pool
+ *                   LABEL   the index of the label in the pool, and the
+ *                           address of its LABEL plus one, 0 if there is
+ *                           none
+ *
+ * A varint is a number 7 bits at a time, lowest first, with the top bit of
+ * every byte but the last set.  Addresses are those of the Program as it is
+ * loaded without the debugger, whose codes would change them.
+ *
+ * @author admin
+ */
+public class BinaryFormat {
+
+    public static final byte[] MAGIC = {'X', 'B', 'C', 0};
+    public static final int VERSION = 1;
+
+    public static final int INT = 0;
+    public static final int STRING = 1;
+    public static final int LABEL = 2;
+
+    // the names of the codes by their number in the file; only ever add to
+    // the end, or files already written change their meaning
+    static final String[] NAMES = {
+        "ARGS", "BOP", "CALL", "DUMP", "FALSEBRANCH", "GOTO", "HALT", "LOAD",
+        "LABEL", "LIT", "POP", "READ", "RETURN", "STORE", "WRITE",
+        "SPAWN", "JOIN", "SEND", "RECV", "LINE", "FUNCTION", "FORMAL"
+    };
+
+    /**
+     * @return the number of the code with the name, or -1 if the format has
+     *  none for it.
+     */
+    static int numberOf(String name){
+        return Arrays.asList(NAMES).indexOf(name);
+    }
+
+    // Whether the first operand of a code is the name of a LABEL.
+    static boolean takesLabel(String name){
+        return name.equals("CALL") || name.equals("GOTO") || name.equals("FALSEBRANCH")
+                || name.equals("SPAWN");
+    }
+
+    /**
+     * @return whether the file starts with the header of an .xbc file.
+     */
+    public static boolean isBinary(String fileName) throws IOException{
+        byte[] header = new byte[MAGIC.length];
+        InputStream in = new FileInputStream(fileName);
+        try {
+            int read = 0;
+            while (read < header.length){
+                int n = in.read(header, read, header.length-read);
+                if (n < 0) return false;
+                read += n;
+            }
+        } finally {
+            in.close();
+        }
+        return Arrays.equals(header, MAGIC);
+    }
+}
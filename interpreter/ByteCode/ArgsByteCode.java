@@ -22,6 +22,14 @@ public class ArgsByteCode extends ByteCode{
     public void init(String arguments[]){
         numArguments = Integer.parseInt(arguments[1]);
     }
+    
+    public void init(Arguments arguments){
+        numArguments = arguments.intAt(1);
+    }
+    
+    public int numArguments(){
+        return numArguments;
+    }
         
     public void execute(VirtualMachine vm){
         vm.newFrameOnRunTimeStackAt(numArguments);
@@ -0,0 +1,29 @@
+package interpreter.ByteCode;
+
+/**
+ * The operands of a code as a loader that has already decoded them hands
+ * them to ByteCode.init, numbered like the tokens of a line of a .cod file:
+ * 0 is the name of the code and its operands start at 1.  A loader that
+ * knows an operand is a number or a resolved label does not have to turn it
+ * into a String and back.
+ * 
+ * @author admin
+ */
+public interface Arguments {
+    
+    // the number of tokens, the name of the code included
+    int size();
+    
+    // the operand at i as a number; throws ByteCodeLoadException if it is
+    // not one
+    int intAt(int i);
+    
+    String stringAt(int i);
+    
+    // the address of the LABEL the operand at i names, or 
+    // Program.UNRESOLVED if the loader has not resolved it
+    int addressAt(int i);
+    
+    // all of the tokens, as they would have been on a line of a .cod file
+    String[] toStrings();
+}
@@ -0,0 +1,20 @@
+package interpreter.ByteCode;
+import interpreter.VirtualMachine;
+/**
+ * BOP & 
+ * 1 if both operands are 1 (true), 0 otherwise.
+ * 
+ * @author admin
+ */
+public class BopAnd extends BopByteCode{
+    
+    public int apply(int first, int second){
+        return ((first==1)&(second==1) ? 1 : 0);
+    }
+    
+    public void execute(VirtualMachine vm){
+        int second = vm.popRunStack();
+        int first = vm.popRunStack();
+        vm.pushRunStack((first==1)&(second==1) ? 1 : 0);
+    }
+}
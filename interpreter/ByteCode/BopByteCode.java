@@ -1,4 +1,5 @@
 package interpreter.ByteCode;
+import interpreter.ByteCodeLoadException;
 import interpreter.VirtualMachine;
 /**
  * BOP <binary op> 
@@ -6,6 +7,10 @@ import interpreter.VirtualMachine;
  * operations are: +-/* == != <= > >= > | &. 
  * 
  * The lower level is the first operand. 
+ * 
+ * The operator is bound once, when the loader specializes the code, to one 
+ * of the Bop subclasses (BopAdd, BopSub, BopLe, BopEq, ...) that each 
+ * perform a single operation. 
  * @author admin
  */
 public class BopByteCode extends ByteCode{
@@ -18,13 +23,57 @@ public class BopByteCode extends ByteCode{
         binaryOp = arguments[1];
     }
     
-    public void execute(VirtualMachine vm){
-        BinaryOperation op = BinaryOpTable.get(binaryOp);
+    public void init(Arguments arguments){
+        binaryOp = arguments.stringAt(1);
+    }
+    
+    public String operator(){
+        return binaryOp;
+    }
+    
+    /**
+     * @return a fresh instance of the BopByteCode subclass that performs op,
+     *  or null if op is not a binary operation. 
+     */
+    public static BopByteCode forOperator(String op){
+        BopByteCode code;
+        if (op.equals("+")) code = new BopAdd();
+        else if (op.equals("-")) code = new BopSub();
+        else if (op.equals("*")) code = new BopMul();
+        else if (op.equals("/")) code = new BopDiv();
+        else if (op.equals("==")) code = new BopEq();
+        else if (op.equals("!=")) code = new BopNe();
+        else if (op.equals("<=")) code = new BopLe();
+        else if (op.equals(">=")) code = new BopGe();
+        else if (op.equals("<")) code = new BopLt();
+        else if (op.equals(">")) code = new BopGt();
+        else if (op.equals("|")) code = new BopOr();
+        else if (op.equals("&")) code = new BopAnd();
+        else return null;
         
+        code.binaryOp = op;
+        return code;
+    }
+    
+    public ByteCode specialize(){
+        BopByteCode code = forOperator(binaryOp);
+        if (code == null) {
+            throw new ByteCodeLoadException("unknown binary operator " + binaryOp);
+        }
+        return code;
+    }
+    
+    // Every subclass applies its own operation.  The loader specializes 
+    // every BOP, so a BopByteCode itself is never run. 
+    public int apply(int first, int second){
+        throw new IllegalStateException("BOP " + binaryOp + " was never specialized");
+    }
+    
+    public void execute(VirtualMachine vm){
         int secondOperand = vm.popRunStack();
         int firstOperand = vm.popRunStack();
         
-        int result = op.binaryOp(firstOperand, secondOperand);
+        int result = apply(firstOperand, secondOperand);
         vm.pushRunStack(result);
     }
     
@@ -0,0 +1,20 @@
+package interpreter.ByteCode;
+import interpreter.VirtualMachine;
+/**
+ * BOP / 
+ * Integer division of the lower level by the top of the stack.
+ * 
+ * @author admin
+ */
+public class BopDiv extends BopByteCode{
+    
+    public int apply(int first, int second){
+        return first / second;
+    }
+    
+    public void execute(VirtualMachine vm){
+        int second = vm.popRunStack();
+        int first = vm.popRunStack();
+        vm.pushRunStack(first / second);
+    }
+}
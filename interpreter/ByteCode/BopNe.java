@@ -0,0 +1,20 @@
+package interpreter.ByteCode;
+import interpreter.VirtualMachine;
+/**
+ * BOP != 
+ * 1 if the operands differ, 0 otherwise.
+ * 
+ * @author admin
+ */
+public class BopNe extends BopByteCode{
+    
+    public int apply(int first, int second){
+        return (first != second ? 1 : 0);
+    }
+    
+    public void execute(VirtualMachine vm){
+        int second = vm.popRunStack();
+        int first = vm.popRunStack();
+        vm.pushRunStack(first != second ? 1 : 0);
+    }
+}
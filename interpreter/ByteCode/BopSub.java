@@ -0,0 +1,20 @@
+package interpreter.ByteCode;
+import interpreter.VirtualMachine;
+/**
+ * BOP - 
+ * Subtracts the top of the stack from the level below it.
+ * 
+ * @author admin
+ */
+public class BopSub extends BopByteCode{
+    
+    public int apply(int first, int second){
+        return first - second;
+    }
+    
+    public void execute(VirtualMachine vm){
+        int second = vm.popRunStack();
+        int first = vm.popRunStack();
+        vm.pushRunStack(first - second);
+    }
+}
@@ -0,0 +1,19 @@
+package interpreter.ByteCode;
+
+/**
+ * A code that names a LABEL to go to, such as GOTO, FALSEBRANCH, CALL and 
+ * SPAWN.  The name is resolved to the address of the LABEL once, when the 
+ * program is loaded, and passes that rewrite the program move the address 
+ * along with the codes. 
+ * 
+ * @author admin
+ */
+public interface BranchingByteCode {
+    
+    String targetLabel();
+    
+    // the address of the LABEL, or Program.UNRESOLVED 
+    int targetAddress();
+    
+    void setTargetAddress(int address);
+}
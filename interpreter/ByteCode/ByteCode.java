@@ -15,6 +15,20 @@ public abstract class ByteCode {
     
     public void init(String arguments[]){}
     
+    // The same for operands a loader has already decoded.  Codes whose 
+    // operands are numbers or labels take them as they are; the others get 
+    // them as Strings. 
+    public void init(Arguments arguments){
+        init(arguments.toStrings());
+    }
+    
+    // Once initialized, a bytecode may hand back a more specific ByteCode to
+    // be put into the Program in its place.  The loader calls this once per 
+    // code, so decisions made here are not repeated on every execution. 
+    public ByteCode specialize(){
+        return this;
+    }
+    
     // Every bytecode will be responsible for its own execution. 
     abstract public void execute(VirtualMachine vm);
     
@@ -6,7 +6,7 @@ import interpreter.VirtualMachine;
  * 
  * @author admin
  */
-public class CallByteCode extends ByteCode{
+public class CallByteCode extends ByteCode implements BranchingByteCode{
     public String func;
     public int targetAddrs;
     
@@ -15,12 +15,49 @@ public class CallByteCode extends ByteCode{
         func = arguments[1];
     }
     
+    public void init(Arguments arguments){
+        func = arguments.stringAt(1);
+        targetAddrs = arguments.addressAt(1);
+    }
+    
+    public String targetLabel(){
+        return func;
+    }
+    
+    public int targetAddress(){
+        return targetAddrs;
+    }
+    
+    public void setTargetAddress(int address){
+        targetAddrs = address;
+    }
+    
     public void execute(VirtualMachine vm){
         // store the address of where the VM left off at the CallByteCode. 
         // this will be incremented after the ReturnByteCode is executed within 
         // the VM
-        vm.pushReturnAddrs(vm.getPc());
-        vm.setPc(targetAddrs);
+        vm.callFunction(targetAddrs);
+    }
+    
+    // Whether the function making the call returns as soon as it does. 
+    public boolean isTailCall(){
+        return false;
+    }
+    
+    // The same CALL for a function that returns as soon as the call does. 
+    public CallByteCode toTailCall(){
+        return copyInto(new TailCallByteCode());
+    }
+    
+    // The same CALL for a function that does more after the call returns. 
+    public CallByteCode toCall(){
+        return copyInto(new CallByteCode());
+    }
+    
+    protected CallByteCode copyInto(CallByteCode code){
+        code.func = func;
+        code.targetAddrs = targetAddrs;
+        return code;
     }
     
     public String toString(){
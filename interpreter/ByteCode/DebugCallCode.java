@@ -14,4 +14,12 @@ public class DebugCallCode extends CallByteCode{
         super.execute(vm);
         ((DebuggerVirtualMachine)vm).beginScope();
     }
+    
+    public CallByteCode toTailCall(){
+        return copyInto(new DebugTailCallCode());
+    }
+    
+    public CallByteCode toCall(){
+        return copyInto(new DebugCallCode());
+    }
 }
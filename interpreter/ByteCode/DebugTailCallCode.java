@@ -0,0 +1,28 @@
+package interpreter.ByteCode;
+
+import interpreter.VirtualMachine;
+import interpreter.debugger.DebuggerVirtualMachine;
+
+/**
+ * The debugger's TailCallByteCode.  When the caller's frame is reused, its 
+ * function environment record is replaced as well, and the call stack shows
+ * the new record as a collapsed frame. 
+ * 
+ * @author admin
+ */
+public class DebugTailCallCode extends DebugCallCode{
+    
+    public void execute(VirtualMachine vm){
+        DebuggerVirtualMachine debugvm = ((DebuggerVirtualMachine)vm);
+        
+        if (debugvm.tailCallFunction(targetAddrs)){
+            debugvm.collapseScope();
+        } else {
+            debugvm.beginScope();
+        }
+    }
+    
+    public boolean isTailCall(){
+        return true;
+    }
+}
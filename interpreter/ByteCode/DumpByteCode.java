@@ -15,6 +15,10 @@ public class DumpByteCode extends ByteCode{
         args = arguments[1];
     }
     
+    public void init(Arguments arguments){
+        args = arguments.stringAt(1);
+    }
+    
     public void execute(VirtualMachine vm){
         if (args.contains("ON"))  vm.dumping = true;
         if (args.contains("OFF")) vm.dumping = false;
@@ -8,7 +8,7 @@ import interpreter.VirtualMachine;
  * 
  * @author admin
  */
-public class FalseBranchByteCode extends ByteCode{
+public class FalseBranchByteCode extends ByteCode implements BranchingByteCode{
     
     public String targetLabel;
     public int targetAddrs;
@@ -17,6 +17,23 @@ public class FalseBranchByteCode extends ByteCode{
         targetLabel = arguments[1];
     }
     
+    public void init(Arguments arguments){
+        targetLabel = arguments.stringAt(1);
+        targetAddrs = arguments.addressAt(1);
+    }
+    
+    public String targetLabel(){
+        return targetLabel;
+    }
+    
+    public int targetAddress(){
+        return targetAddrs;
+    }
+    
+    public void setTargetAddress(int address){
+        targetAddrs = address;
+    }
+    
     public void execute(VirtualMachine vm){
         if (vm.popRunStack()==0) vm.setPc(targetAddrs);
        }
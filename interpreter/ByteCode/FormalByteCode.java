@@ -23,6 +23,11 @@ public class FormalByteCode extends ByteCode{
         offset = Integer.parseInt(args[2]);
     }
     
+    public void init(Arguments arguments){
+        name = arguments.stringAt(1);
+        offset = arguments.intAt(2);
+    }
+    
     public void execute(VirtualMachine vm){
         ((DebuggerVirtualMachine)vm).enterIntoCurrentRecord(name, offset);
         
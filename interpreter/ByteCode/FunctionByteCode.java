@@ -22,6 +22,12 @@ public class FunctionByteCode extends ByteCode{
         endLine = Integer.parseInt(args[3]);
     }
     
+    public void init(Arguments arguments){
+        name = arguments.stringAt(1);
+        startLine = arguments.intAt(2);
+        endLine = arguments.intAt(3);
+    }
+    
     public void execute(VirtualMachine vm){
         DebuggerVirtualMachine debugvm = ((DebuggerVirtualMachine)vm);
         
@@ -0,0 +1,32 @@
+package interpreter.ByteCode;
+import interpreter.VirtualMachine;
+
+/**
+ * ARGS n; CALL f  as one superinstruction, which sets up the frame on the
+ * RunTimeStack itself and then calls f from the address of the CALL, as 
+ * the CALL would have. 
+ * 
+ * @author admin
+ */
+public class FusedArgsCall extends FusedByteCode{
+    
+    private final int numArguments;
+    private final CallByteCode call;
+    
+    FusedArgsCall(ByteCode[] codes){
+        super(codes);
+        numArguments = ((ArgsByteCode)codes[0]).numArguments();
+        call = (CallByteCode)codes[1];
+    }
+    
+    public void execute(VirtualMachine vm){
+        if (vm.dumping){
+            super.execute(vm);
+            return;
+        }
+        vm.getRunStack().newFrameOfSize(numArguments);
+        vm.setPc(vm.getPc()+1);
+        if (call.isTailCall()) vm.tailCallFunction(call.targetAddrs);
+        else vm.callFunction(call.targetAddrs);
+    }
+}
@@ -0,0 +1,91 @@
+package interpreter.ByteCode;
+import interpreter.VirtualMachine;
+
+/**
+ * A superinstruction: a run of consecutive ByteCodes that the VM dispatches
+ * as one.  It takes the place of the first code of the run in the Program,
+ * and the other codes stay where they were, so a branch into the middle of
+ * the run still finds the original code there.
+ *
+ * Only the last code of the run may change the pc (CALL, RETURN, GOTO,
+ * FALSEBRANCH, HALT); the pc is moved onto that code before it executes, so
+ * it sees the same pc it would have seen on its own, and the VM moves past
+ * the run afterwards.  While dumping, every code of the run is dumped just
+ * like it would have been without fusing, which the runs with bodies of
+ * their own do by running their codes one by one.
+ *
+ * @author admin
+ */
+public class FusedByteCode extends ByteCode{
+
+    private final ByteCode[] codes;
+
+    public FusedByteCode(ByteCode[] codes){
+        this.codes = codes.clone();
+    }
+
+    /**
+     * @return a superinstruction for the run, with a body of its own for
+     *  the runs that are most often fused, which works on the RunTimeStack
+     *  directly instead of executing each code.
+     */
+    public static FusedByteCode of(ByteCode[] codes){
+        if (codes.length == 3 && codes[0] instanceof LoadByteCode && codes[1] instanceof LitByteCode
+                && codes[2] instanceof BopByteCode){
+            return new FusedLoadLitBop(codes);
+        }
+        if (codes.length == 3 && codes[0] instanceof LitByteCode && codes[1] instanceof BopByteCode
+                && codes[2] instanceof FalseBranchByteCode){
+            return new FusedLitBopBranch(codes);
+        }
+        if (codes.length == 2 && codes[0] instanceof LitByteCode && codes[1] instanceof BopByteCode){
+            return new FusedLitBop(codes);
+        }
+        if (codes.length == 2 && codes[0] instanceof ArgsByteCode && codes[1] instanceof CallByteCode){
+            return new FusedArgsCall(codes);
+        }
+        return new FusedByteCode(codes);
+    }
+
+    /**
+     * @return whether a code can be anywhere in a run but at its end.
+     */
+    public static boolean canPrecede(ByteCode code){
+        return !(code instanceof CallByteCode || code instanceof ReturnByteCode
+                || code instanceof GoToByteCode || code instanceof FalseBranchByteCode
+                || code instanceof HaltByteCode || code instanceof DumpByteCode
+                || code instanceof FusedByteCode);
+    }
+
+    /**
+     * @return whether a code can end a run.
+     */
+    public static boolean canEnd(ByteCode code){
+        return !(code instanceof DumpByteCode || code instanceof FusedByteCode);
+    }
+
+    public int length(){
+        return codes.length;
+    }
+
+    public ByteCode getCode(int i){
+        return codes[i];
+    }
+
+    public void execute(VirtualMachine vm){
+        int last = codes.length-1;
+        int start = vm.getPc();
+
+        for (int i=0; i<last; i++){
+            codes[i].execute(vm);
+            if (vm.dumping) vm.dump(codes[i]);
+        }
+        vm.setPc(start+last);
+        codes[last].execute(vm);
+    }
+
+    // The VM dumps the fused code after it ran, which is after its last code.
+    public String toString(){
+        return codes[codes.length-1].toString();
+    }
+}
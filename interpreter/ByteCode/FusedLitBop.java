@@ -0,0 +1,31 @@
+package interpreter.ByteCode;
+import interpreter.RunTimeStack;
+import interpreter.VirtualMachine;
+
+/**
+ * LIT c; BOP op  as one superinstruction, which applies op to the top of
+ * the stack and c in place. 
+ * 
+ * @author admin
+ */
+public class FusedLitBop extends FusedByteCode{
+    
+    private final int value;
+    private final BopByteCode bop;
+    
+    FusedLitBop(ByteCode[] codes){
+        super(codes);
+        value = ((LitByteCode)codes[0]).value();
+        bop = (BopByteCode)codes[1];
+    }
+    
+    public void execute(VirtualMachine vm){
+        if (vm.dumping){
+            super.execute(vm);
+            return;
+        }
+        RunTimeStack stack = vm.getRunStack();
+        stack.push(bop.apply(stack.pop(), value));
+        vm.setPc(vm.getPc()+1);
+    }
+}
@@ -0,0 +1,35 @@
+package interpreter.ByteCode;
+import interpreter.VirtualMachine;
+
+/**
+ * LIT c; BOP op; FALSEBRANCH label  as one superinstruction, the test of
+ * an if or a while against a constant, which never pushes the result of
+ * the comparison. 
+ * 
+ * @author admin
+ */
+public class FusedLitBopBranch extends FusedByteCode{
+    
+    private final int value;
+    private final BopByteCode bop;
+    private final FalseBranchByteCode branch;
+    
+    FusedLitBopBranch(ByteCode[] codes){
+        super(codes);
+        value = ((LitByteCode)codes[0]).value();
+        bop = (BopByteCode)codes[1];
+        branch = (FalseBranchByteCode)codes[2];
+    }
+    
+    public void execute(VirtualMachine vm){
+        if (vm.dumping){
+            super.execute(vm);
+            return;
+        }
+        if (bop.apply(vm.getRunStack().pop(), value) == 0){
+            vm.setPc(branch.targetAddrs);
+        } else {
+            vm.setPc(vm.getPc()+2);
+        }
+    }
+}
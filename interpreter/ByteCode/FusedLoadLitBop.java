@@ -0,0 +1,33 @@
+package interpreter.ByteCode;
+import interpreter.RunTimeStack;
+import interpreter.VirtualMachine;
+
+/**
+ * LOAD n; LIT c; BOP op  as one superinstruction, like the  LOAD 0 n; LIT 1;
+ * BOP -  of a recursive call's argument. 
+ * 
+ * @author admin
+ */
+public class FusedLoadLitBop extends FusedByteCode{
+    
+    private final int offset;
+    private final int value;
+    private final BopByteCode bop;
+    
+    FusedLoadLitBop(ByteCode[] codes){
+        super(codes);
+        offset = ((LoadByteCode)codes[0]).offset();
+        value = ((LitByteCode)codes[1]).value();
+        bop = (BopByteCode)codes[2];
+    }
+    
+    public void execute(VirtualMachine vm){
+        if (vm.dumping){
+            super.execute(vm);
+            return;
+        }
+        RunTimeStack stack = vm.getRunStack();
+        stack.push(bop.apply(stack.getValueAtOffset(offset), value));
+        vm.setPc(vm.getPc()+2);
+    }
+}
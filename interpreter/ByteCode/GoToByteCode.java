@@ -4,7 +4,7 @@ import interpreter.VirtualMachine;
  *
  * @author admin
  */
-public class GoToByteCode extends ByteCode{
+public class GoToByteCode extends ByteCode implements BranchingByteCode{
     
     public String label;
     public int targetAddrs;
@@ -13,6 +13,23 @@ public class GoToByteCode extends ByteCode{
         label = arguments[1];
     }
     
+    public void init(Arguments arguments){
+        label = arguments.stringAt(1);
+        targetAddrs = arguments.addressAt(1);
+    }
+    
+    public String targetLabel(){
+        return label;
+    }
+    
+    public int targetAddress(){
+        return targetAddrs;
+    }
+    
+    public void setTargetAddress(int address){
+        targetAddrs = address;
+    }
+    
     public void execute(VirtualMachine vm){
         vm.setPc(targetAddrs);
     }
@@ -0,0 +1,18 @@
+package interpreter.ByteCode;
+import interpreter.VirtualMachine;
+/**
+ * JOIN - wait for the task whose handle is on top of the stack to finish,
+ * and replace the handle with the return value of the task's function. 
+ * 
+ * @author admin
+ */
+public class JoinByteCode extends ByteCode{
+    
+    public void execute(VirtualMachine vm){
+        vm.joinTask();
+    }
+    
+    public String toString(){
+        return "JOIN ";
+    }
+}
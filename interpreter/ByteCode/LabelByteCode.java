@@ -15,6 +15,10 @@ public class LabelByteCode extends ByteCode{
         label = arguments[1];
     }
     
+    public void init(Arguments arguments){
+        label = arguments.stringAt(1);
+    }
+    
     public void execute(VirtualMachine vm){
     }
     
@@ -14,6 +14,10 @@ public class LineByteCode extends ByteCode{
         lineNumber = Integer.parseInt(arguments[1]);
     }
     
+    public void init(Arguments arguments){
+        lineNumber = arguments.intAt(1);
+    }
+    
     public int lineNumber(){
         return lineNumber;
     }
@@ -13,6 +13,15 @@ public class LitByteCode extends ByteCode{
         if (arguments.length>2) varName = arguments[2];
     }    
     
+    public void init(Arguments arguments){
+        value = arguments.intAt(1);
+        if (arguments.size()>2) varName = arguments.stringAt(2);
+    }
+    
+    public int value(){
+        return value;
+    }
+    
     public void execute(VirtualMachine vm){
         vm.pushRunStack(value);
     }
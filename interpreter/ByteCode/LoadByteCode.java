@@ -7,13 +7,27 @@ import interpreter.VirtualMachine;
 public class LoadByteCode extends ByteCode{
     
     int offset;
-    String id;
+    String id = "";
     
     public void init(String arguments[]){
         offset = Integer.parseInt(arguments[1]);
         id = arguments[2];
     }
     
+    public void init(Arguments arguments){
+        offset = arguments.intAt(1);
+        if (arguments.size()>2) id = arguments.stringAt(2);
+    }
+    
+    public int offset(){
+        return offset;
+    }
+    
+    // the name of the variable, which is only a comment
+    public String variable(){
+        return id;
+    }
+    
     public void execute(VirtualMachine vm){
         int var = vm.getValueAtOffset(offset);
         vm.pushRunStack(var);
@@ -11,6 +11,14 @@ public class PopByteCode extends ByteCode{
         numLevels = Integer.parseInt(arguments[1]);
     }
     
+    public void init(Arguments arguments){
+        numLevels = arguments.intAt(1);
+    }
+    
+    public int numLevels(){
+        return numLevels;
+    }
+    
     public void execute(VirtualMachine vm){
         for(int i=0; i<numLevels; i++) vm.popRunStack();
         
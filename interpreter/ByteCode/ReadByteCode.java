@@ -14,11 +14,16 @@ public class ReadByteCode extends ByteCode{
     public void init(String arguments[]){}
     
     public void execute(VirtualMachine vm){
+        vm.pushRunStack(readInteger());
+    }
+    
+    // Prompt for and read one integer, the way every READ does it. 
+    public static int readInteger(){
         System.out.print("Enter an integer: ");
         Scanner in = new Scanner(System.in);
         int input = in.nextInt();
         
-        vm.pushRunStack(input);
+        return input;
     }
     
     public String toString(){
@@ -0,0 +1,19 @@
+package interpreter.ByteCode;
+import interpreter.VirtualMachine;
+/**
+ * RECV - replace the number of a channel on top of the stack with the 
+ * oldest value sent on the channel that has not been received yet, waiting
+ * for one to be sent if there is none. 
+ * 
+ * @author admin
+ */
+public class ReceiveByteCode extends ByteCode{
+    
+    public void execute(VirtualMachine vm){
+        vm.receiveValue();
+    }
+    
+    public String toString(){
+        return "RECV ";
+    }
+}
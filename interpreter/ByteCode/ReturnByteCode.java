@@ -14,10 +14,13 @@ public class ReturnByteCode extends ByteCode{
         if (arguments.length>1) func = arguments[1];
     }
     
+    public void init(Arguments arguments){
+        if (arguments.size()>1) func = arguments.stringAt(1);
+    }
+    
     // Every bytecode will be responsible for its own execution. 
     public void execute(VirtualMachine vm){
-        vm.setPc(vm.popReturnAddrs());
-        vm.popRunStackFrame();
+        vm.setPc(vm.popRunStackFrame());
     }
     
     public String toString(){
@@ -0,0 +1,19 @@
+package interpreter.ByteCode;
+import interpreter.VirtualMachine;
+/**
+ * SEND - pop a value and the number of a channel below it, and send the
+ * value on the channel.  Channels need not be created first, and SEND 
+ * never waits for the value to be received. 
+ * 
+ * @author admin
+ */
+public class SendByteCode extends ByteCode{
+    
+    public void execute(VirtualMachine vm){
+        vm.sendValue();
+    }
+    
+    public String toString(){
+        return "SEND ";
+    }
+}
@@ -0,0 +1,50 @@
+package interpreter.ByteCode;
+import interpreter.VirtualMachine;
+/**
+ * SPAWN <funcname> n - run the indicated function with the n values on top
+ * of the stack as its arguments on a thread of its own, and replace the
+ * arguments with a handle for the task.  JOIN waits for the function's
+ * return value with the handle.
+ * 
+ * @author admin
+ */
+public class SpawnByteCode extends ByteCode implements BranchingByteCode{
+    public String func;
+    public int targetAddrs;
+    int numArguments;
+    
+    public void init(String arguments[]){
+        func = arguments[1];
+        numArguments = Integer.parseInt(arguments[2]);
+    }
+    
+    public void init(Arguments arguments){
+        func = arguments.stringAt(1);
+        targetAddrs = arguments.addressAt(1);
+        numArguments = arguments.intAt(2);
+    }
+    
+    public int numArguments(){
+        return numArguments;
+    }
+    
+    public String targetLabel(){
+        return func;
+    }
+    
+    public int targetAddress(){
+        return targetAddrs;
+    }
+    
+    public void setTargetAddress(int address){
+        targetAddrs = address;
+    }
+    
+    public void execute(VirtualMachine vm){
+        vm.spawnFunction(targetAddrs, numArguments);
+    }
+    
+    public String toString(){
+        return "SPAWN " + func + " " + numArguments;
+    }
+}
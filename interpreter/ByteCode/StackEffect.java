@@ -0,0 +1,15 @@
+package interpreter.ByteCode;
+
+/**
+ * Implemented by codes that the Verifier does not know, such as those a 
+ * plugin adds to an InstructionSet, to say what they do to the frame.  
+ * A code that implements it must go on to the next code once it is done.  
+ * 
+ * @author admin
+ */
+public interface StackEffect {
+    
+    // the number of values in the frame after the code runs with depth 
+    // values in it, or -1 if it cannot run with that many
+    int depthAfter(int depth);
+}
@@ -20,6 +20,20 @@ public class StoreByteCode extends ByteCode{
         if (arguments.length>2) id = arguments[2];
     }
     
+    public void init(Arguments arguments){
+        offset = arguments.intAt(1);
+        if (arguments.size()>2) id = arguments.stringAt(2);
+    }
+    
+    public int offset(){
+        return offset;
+    }
+    
+    // the name of the variable, which is only a comment
+    public String variable(){
+        return id;
+    }
+    
     public void execute(VirtualMachine vm){
         value = vm.storeRunStack(offset);
     }
@@ -0,0 +1,28 @@
+package interpreter.ByteCode;
+import interpreter.VirtualMachine;
+/**
+ * A CALL that the calling function returns right after, as in
+ * 
+ *      CALL f<<3>>
+ *      RETURN g<<2>>
+ * 
+ * possibly with LABELs and GOTOs in between.  The Program marks these when it
+ * is loaded.  The caller's frame is not needed once the call is made, so the
+ * called function's frame replaces it instead of being pushed on top of it. 
+ * 
+ * @author admin
+ */
+public class TailCallByteCode extends CallByteCode{
+    
+    public void execute(VirtualMachine vm){
+        vm.tailCallFunction(targetAddrs);
+    }
+    
+    public boolean isTailCall(){
+        return true;
+    }
+    
+    public CallByteCode toTailCall(){
+        return copyInto(new TailCallByteCode());
+    }
+}
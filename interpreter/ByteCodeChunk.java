@@ -0,0 +1,131 @@
+package interpreter;
+import interpreter.ByteCode.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+/**
+ * A run of whole lines of a .cod file, which the ByteCodeLoader reads into
+ * codes apart from the rest of the file, possibly on a thread of its own.
+ *
+ * Addresses in a chunk count from its first code.  The chunk only notes the
+ * LABELs it has and the codes that go to labels; the loader puts the
+ * chunks together in order and resolves the labels across all of them.  A
+ * line that cannot be loaded ends the chunk, and the problem is kept for
+ * the loader to report once it gets to it.
+ *
+ * @author admin
+ */
+class ByteCodeChunk extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private ByteBuffer bytes;
+    private byte[][] names;
+    private List<Supplier<? extends ByteCode>> makers;
+    int firstLine = 1;
+
+    List<ByteCode> codes = new ArrayList<ByteCode>();
+    // the tokens of each code, if they are wanted
+    List<String[]> tokens;
+    ByteCodeLoadException problem;
+
+    // the LABELs, with the line and column of their label
+    int labelCount;
+    String[] labels = new String[16];
+    int[] labelAddresses = new int[16];
+    int[] labelLines = new int[16];
+    int[] labelColumns = new int[16];
+
+    // the codes that go to a label, with the line they are on
+    int referenceCount;
+    String[] references = new String[16];
+    int[] referenceAddresses = new int[16];
+    int[] referenceLines = new int[16];
+
+    /**
+     * @param bytes the lines, from the buffer's position to its limit
+     * @param names the names of the codes
+     * @param makers what makes the code of each name; null for those that
+     *  are left out
+     */
+    ByteCodeChunk(ByteBuffer bytes, byte[][] names, List<Supplier<? extends ByteCode>> makers){
+        this.bytes = bytes;
+        this.names = names;
+        this.makers = makers;
+    }
+
+    // The number of line ends in the chunk, so that the loader can tell
+    // the chunk after it the line it starts on.
+    int countLines(){
+        int lines = 0;
+        for (int i=bytes.position(); i<bytes.limit(); i++){
+            if (bytes.get(i) == '\n') lines++;
+        }
+        return lines;
+    }
+
+    protected void compute(){
+        ByteCodeTokenizer line = new ByteCodeTokenizer(bytes, firstLine);
+        try {
+            while (line.nextLine()) read(line);
+        } catch (ByteCodeLoadException e) {
+            problem = e;
+        }
+    }
+
+    private void read(ByteCodeTokenizer line){
+        int k = line.match(names);
+        if (k < 0) throw line.error(0, "there is no code " + line.stringAt(0));
+        if (makers.get(k) == null) return;
+
+        ByteCode theByteCode = makers.get(k).get();
+        try {
+            theByteCode.init(line);
+        } catch (ByteCodeLoadException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw line.error(1, line.stringAt(0) + " cannot take these operands");
+        }
+        try {
+            // codes that are understood but invalid reject the program
+            theByteCode = theByteCode.specialize();
+        } catch (ByteCodeLoadException e) {
+            throw line.error(1, e.getMessage());
+        }
+
+        int address = codes.size();
+        codes.add(theByteCode);
+        if (tokens != null) tokens.add(line.toStrings());
+        if (theByteCode instanceof LabelByteCode) {
+            if (labelCount == labels.length) growLabels();
+            labels[labelCount] = ((LabelByteCode)theByteCode).label;
+            labelAddresses[labelCount] = address;
+            labelLines[labelCount] = line.lineNumber();
+            labelColumns[labelCount] = line.columnOf(1);
+            labelCount++;
+        } else if (theByteCode instanceof BranchingByteCode) {
+            if (referenceCount == references.length) growReferences();
+            references[referenceCount] = ((BranchingByteCode)theByteCode).targetLabel();
+            referenceAddresses[referenceCount] = address;
+            referenceLines[referenceCount] = line.lineNumber();
+            referenceCount++;
+        }
+    }
+
+    private void growLabels(){
+        int size = labelCount*2;
+        labels = Arrays.copyOf(labels, size);
+        labelAddresses = Arrays.copyOf(labelAddresses, size);
+        labelLines = Arrays.copyOf(labelLines, size);
+        labelColumns = Arrays.copyOf(labelColumns, size);
+    }
+
+    private void growReferences(){
+        int size = referenceCount*2;
+        references = Arrays.copyOf(references, size);
+        referenceAddresses = Arrays.copyOf(referenceAddresses, size);
+        referenceLines = Arrays.copyOf(referenceLines, size);
+    }
+}
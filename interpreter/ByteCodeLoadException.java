@@ -0,0 +1,24 @@
+package interpreter;
+
+/**
+ * Thrown when a bytecode file contains something that cannot be turned into
+ * a runnable Program, e.g. a BOP with an operator that does not exist.
+ *
+ * @author admin
+ */
+public class ByteCodeLoadException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ByteCodeLoadException(String message){
+        super(message);
+    }
+
+    public ByteCodeLoadException(int lineNumber, String message){
+        super("line " + lineNumber + ": " + message);
+    }
+
+    public ByteCodeLoadException(int lineNumber, int column, String message){
+        super("line " + lineNumber + ":" + column + ": " + message);
+    }
+}
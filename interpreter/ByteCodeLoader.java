@@ -1,40 +1,172 @@
 package interpreter;
 import interpreter.ByteCode.*;
+import interpreter.analysis.Verifier;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
 /**
+ * Loads a Program from a .cod file, or from an .xbc file written by the
+ * BinaryByteCodeWriter, which it tells apart by the file's header.
+ *
+ * A .cod file is mapped into memory and read by a ByteCodeTokenizer, so
+ * loading takes time in proportion to the size of the file and makes no
+ * String of a line.  Each code is made by the loader's InstructionSet, and
+ * gets the tokens of its line as its Arguments.  The codes the set leaves
+ * out are skipped; anything else that cannot be loaded rejects the program
+ * with the line and column of the problem, as does a label with no LABEL
+ * or with two.  Labels are resolved by a LabelTable.
+ *
+ * A file of at least two CHUNK_SIZEs is cut into chunks of whole lines,
+ * which are read at the same time on a ForkJoinPool and then put together
+ * in order.  The Program, and any problem reported, are the same as when
+ * the file is read in one piece.
  *
  * @author admin
  */
 public class ByteCodeLoader {
-    
-    private Scanner byteCodeSource;
-    
-   //initializer
-   // opens up the file and puts in in a scanner to be read into a Program
-   // object. 
+
+    // the least a .cod file is cut into to be read in parallel
+    static final int CHUNK_SIZE = 1 << 20;
+
+    private InstructionSet codes;
+    private ByteBuffer byteCodeSource;
+    private BinaryByteCodeLoader binarySource;
+    // 0 for the common ForkJoinPool
+    private int threads;
+    // the tokens of each code loaded, for the BinaryByteCodeWriter
+    List<String[]> tokens;
+
    public ByteCodeLoader(String file_name) throws IOException{
-       byteCodeSource = new Scanner(new FileReader(file_name));
+       this(file_name, InstructionSet.STANDARD);
    }
-   
+
+   //initializer
+   // maps the file into memory to be read into a Program object of the
+   // codes in the set, or hands it to a BinaryByteCodeLoader if it is a
+   // binary file.
+   public ByteCodeLoader(String file_name, InstructionSet codes) throws IOException{
+       this.codes = codes;
+       if (BinaryFormat.isBinary(file_name)) {
+           binarySource = new BinaryByteCodeLoader(file_name, codes);
+           return;
+       }
+       RandomAccessFile file = new RandomAccessFile(file_name, "r");
+       try {
+           FileChannel channel = file.getChannel();
+           byteCodeSource = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+       } finally {
+           file.close();
+       }
+   }
+
+   /**
+    * Read a large .cod file with this many threads, or 0, the default, to
+    * use the common ForkJoinPool.  With 1 it is read on the calling thread.
+    */
+   public void setThreads(int threads){
+       this.threads = threads;
+   }
+
+   /**
+    * @throws ByteCodeLoadException if a line cannot be loaded, or the
+    *  program does not verify.
+    */
    public Program loadCodes(){
+       if (binarySource != null) return binarySource.loadCodes();
+
+       // the names of the codes, and what makes them; null for the codes
+       // that are left out
+       List<String> names = new ArrayList<String>(codes.names());
+       byte[][] nameBytes = new byte[names.size()][];
+       List<Supplier<? extends ByteCode>> makers = new ArrayList<Supplier<? extends ByteCode>>();
+       for (int k=0; k<names.size(); k++) {
+           nameBytes[k] = names.get(k).getBytes();
+           makers.add(codes.factory(names.get(k)));
+       }
+
+       List<ByteCodeChunk> chunks = split(nameBytes, makers);
+       if (chunks.size() == 1) {
+           chunks.get(0).compute();
+       } else {
+           ForkJoinPool pool = (threads == 0 ? ForkJoinPool.commonPool() : new ForkJoinPool(threads));
+           try {
+               readInParallel(pool, chunks);
+           } finally {
+               if (pool != ForkJoinPool.commonPool()) pool.shutdown();
+           }
+       }
+       return merge(chunks);
+   }
+
+   // Cut the file into chunks of whole lines, enough of them to keep every
+   // thread busy, but none much smaller than CHUNK_SIZE.
+   private List<ByteCodeChunk> split(byte[][] nameBytes, List<Supplier<? extends ByteCode>> makers){
+       int size = byteCodeSource.limit();
+       int parallelism = (threads == 0 ? ForkJoinPool.getCommonPoolParallelism() : threads);
+       int pieces = Math.max(1, Math.min(size/CHUNK_SIZE, parallelism*4));
+       if (threads == 1) pieces = 1;
+
+       List<ByteCodeChunk> chunks = new ArrayList<ByteCodeChunk>();
+       int start = 0;
+       for (int k=1; k<=pieces && start<size; k++) {
+           int end = (k == pieces ? size : Math.max(start, (int)((long)size*k/pieces)));
+           while (end < size && byteCodeSource.get(end) != '\n') end++;
+           end = Math.min(end+1, size);
+           ByteBuffer bytes = byteCodeSource.duplicate();
+           bytes.limit(end).position(start);
+           ByteCodeChunk chunk = new ByteCodeChunk(bytes, nameBytes, makers);
+           if (tokens != null) chunk.tokens = new ArrayList<String[]>();
+           chunks.add(chunk);
+           start = end;
+       }
+       if (chunks.isEmpty()) chunks.add(new ByteCodeChunk(byteCodeSource.duplicate(), nameBytes, makers));
+       return chunks;
+   }
+
+   // Count the lines of every chunk to tell each the line it starts on,
+   // then read them all.
+   private static void readInParallel(ForkJoinPool pool, final List<ByteCodeChunk> chunks){
+       final List<ForkJoinTask<Integer>> counts = new ArrayList<ForkJoinTask<Integer>>();
+       for (final ByteCodeChunk chunk : chunks) {
+           counts.add(ForkJoinTask.adapt(() -> chunk.countLines()));
+       }
+       pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(counts)));
+       for (int k=1; k<chunks.size(); k++) {
+           chunks.get(k).firstLine = chunks.get(k-1).firstLine + counts.get(k-1).join();
+       }
+       pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(chunks)));
+   }
+
+   // Put the chunks together in order, resolving the labels across them.
+   // The problems are reported in the order they are in the file.
+   private Program merge(List<ByteCodeChunk> chunks){
        Program theProgram = new Program();
-       
-       while(byteCodeSource.hasNextLine()){
-           try{
-                String line = byteCodeSource.nextLine(); 
-                String lineTokens[]  = line.split(" ");
-                Class byteCodeClass;
-
-                byteCodeClass = CodeTable.get(lineTokens[0]);
-                
-                ByteCode theByteCode = (ByteCode)byteCodeClass.newInstance();
-                theByteCode.init(lineTokens);
-
-                theProgram.pushByteCode(theByteCode);
-           } catch (Exception e){ }
-       }
-       theProgram.resolveAddresses();
+       LabelTable labels = new LabelTable();
+       for (ByteCodeChunk chunk : chunks) {
+           int base = theProgram.getNumberOfByteCodes();
+           for (ByteCode code : chunk.codes) theProgram.pushByteCode(code);
+           for (int i=0; i<chunk.labelCount; i++) {
+               String label = chunk.labels[i];
+               if (!labels.define(label, base+chunk.labelAddresses[i])) {
+                   throw new ByteCodeLoadException(chunk.labelLines[i], chunk.labelColumns[i],
+                           "LABEL " + label + " is already at code " + labels.addressOf(label));
+               }
+           }
+           for (int i=0; i<chunk.referenceCount; i++) {
+               labels.reference(chunk.references[i], base+chunk.referenceAddresses[i], chunk.referenceLines[i]);
+           }
+           if (chunk.problem != null) throw chunk.problem;
+           if (tokens != null) tokens.addAll(chunk.tokens);
+       }
+       labels.checkDefined(theProgram);
+       labels.resolve(theProgram);
+       theProgram.markTailCalls();
+       // reject malformed programs before anything runs them
+       theProgram.setStackDepth(Verifier.verify(theProgram).getStackDepth());
        return theProgram;
    }
 }
@@ -0,0 +1,208 @@
+package interpreter;
+import interpreter.ByteCode.Arguments;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits the bytes of a .cod file into lines of tokens, without making a
+ * String of each line or token.
+ *
+ * A token is a run of bytes other than spaces, tabs and line ends.  The
+ * tokenizer only remembers where the tokens of the current line start and
+ * end; numbers are read straight from the bytes, and a String is only made
+ * for a token that is asked for as one.  The same text always gives back
+ * the same String, so the many CALLs of a function share its label.
+ *
+ * The tokens of the current line are the Arguments of the code on it, and
+ * errors in them are reported with the line and column they are at.
+ *
+ * @author admin
+ */
+public class ByteCodeTokenizer implements Arguments {
+
+    private ByteBuffer buffer;
+    private int position;
+    private int limit;
+
+    private int line;
+    private int lineStart;
+    private int lineEnd;
+    private int count;
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+
+    // the Strings made so far, hashed by their bytes
+    private byte[][] pooledBytes = new byte[256][];
+    private String[] pooled = new String[256];
+    private int poolSize;
+
+    public ByteCodeTokenizer(ByteBuffer buffer){
+        this(buffer, 1);
+    }
+
+    // For the bytes from the buffer's position to its limit, which start
+    // on the line given of the file.
+    public ByteCodeTokenizer(ByteBuffer buffer, int firstLine){
+        this.buffer = buffer;
+        position = buffer.position();
+        limit = buffer.limit();
+        line = firstLine-1;
+    }
+
+    /**
+     * Move on to the next line that has a token on it.
+     *
+     * @return false once there are no more lines.
+     */
+    public boolean nextLine(){
+        while (position < limit){
+            line++;
+            lineStart = position;
+            count = 0;
+            int i = position;
+            while (i < limit){
+                byte b = buffer.get(i);
+                if (b == '\n') break;
+                if (isSpace(b)){
+                    i++;
+                    continue;
+                }
+                int start = i;
+                while (i < limit && !isSpace(b = buffer.get(i)) && b != '\n') i++;
+                if (count == starts.length){
+                    starts = Arrays.copyOf(starts, count*2);
+                    ends = Arrays.copyOf(ends, count*2);
+                }
+                starts[count] = start;
+                ends[count] = i;
+                count++;
+            }
+            lineEnd = i;
+            position = i+1;
+            if (count > 0) return true;
+        }
+        return false;
+    }
+
+    private static boolean isSpace(byte b){
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    public int lineNumber(){
+        return line;
+    }
+
+    // The column the token at i starts in, counting from 1, or the one
+    // after the end of the line for a token that is missing.
+    public int columnOf(int i){
+        return (i < count ? starts[i] : lineEnd) - lineStart + 1;
+    }
+
+    /**
+     * @return the index of the name the first token of the line is, or -1
+     *  if it is none of them.
+     */
+    public int match(byte[][] names){
+        int length = ends[0] - starts[0];
+        for (int k=0; k<names.length; k++){
+            if (names[k].length == length && equals(starts[0], names[k])) return k;
+        }
+        return -1;
+    }
+
+    private boolean equals(int start, byte[] bytes){
+        for (int j=0; j<bytes.length; j++){
+            if (buffer.get(start+j) != bytes[j]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return an exception for a problem with the token at i, which says
+     *  where the token is.
+     */
+    public ByteCodeLoadException error(int i, String message){
+        return new ByteCodeLoadException(line, columnOf(i), message);
+    }
+
+    // -------- the tokens of the current line, as Arguments --------
+
+    public int size(){
+        return count;
+    }
+
+    public int intAt(int i){
+        require(i);
+        int at = starts[i];
+        boolean negative = (buffer.get(at) == '-');
+        if (negative) at++;
+        if (at == ends[i]) throw error(i, "expected a number instead of " + stringAt(i));
+
+        long value = 0;
+        for (; at<ends[i]; at++){
+            int digit = buffer.get(at) - '0';
+            if (digit < 0 || digit > 9) throw error(i, "expected a number instead of " + stringAt(i));
+            value = value*10 + digit;
+            if (value > Integer.MAX_VALUE + 1L) throw error(i, stringAt(i) + " is too large");
+        }
+        value = (negative ? -value : value);
+        if (value > Integer.MAX_VALUE) throw error(i, stringAt(i) + " is too large");
+        return (int)value;
+    }
+
+    public String stringAt(int i){
+        require(i);
+        int start = starts[i];
+        int length = ends[i] - start;
+        int hash = 0;
+        for (int j=start; j<ends[i]; j++) hash = hash*31 + buffer.get(j);
+
+        int mask = pooled.length-1;
+        int slot = hash & mask;
+        while (pooled[slot] != null){
+            if (pooledBytes[slot].length == length && equals(start, pooledBytes[slot])) return pooled[slot];
+            slot = (slot+1) & mask;
+        }
+
+        byte[] bytes = new byte[length];
+        for (int j=0; j<length; j++) bytes[j] = buffer.get(start+j);
+        String string = new String(bytes, StandardCharsets.UTF_8);
+        pooledBytes[slot] = bytes;
+        pooled[slot] = string;
+        if (++poolSize*2 > pooled.length) growPool();
+        return string;
+    }
+
+    private void growPool(){
+        byte[][] oldBytes = pooledBytes;
+        String[] oldStrings = pooled;
+        pooledBytes = new byte[oldBytes.length*2][];
+        pooled = new String[oldStrings.length*2];
+        int mask = pooled.length-1;
+        for (int k=0; k<oldStrings.length; k++){
+            if (oldStrings[k] == null) continue;
+            int hash = 0;
+            for (byte b : oldBytes[k]) hash = hash*31 + b;
+            int slot = hash & mask;
+            while (pooled[slot] != null) slot = (slot+1) & mask;
+            pooledBytes[slot] = oldBytes[k];
+            pooled[slot] = oldStrings[k];
+        }
+    }
+
+    // labels are resolved once the whole program is loaded
+    public int addressAt(int i){
+        return Program.UNRESOLVED;
+    }
+
+    public String[] toStrings(){
+        String[] strings = new String[count];
+        for (int i=0; i<count; i++) strings[i] = stringAt(i);
+        return strings;
+    }
+
+    private void require(int i){
+        if (i >= count) throw error(i, stringAt(0) + " is missing operand " + i);
+    }
+}
@@ -196,6 +196,11 @@ public class DebuggerConsoleUI {
      *  g(3)    line:9
      *   f(4)    line:3
      * 
+     * A function that was tail called took the place of its caller's frame,
+     * which is shown after it:
+     * 
+     *   f(4)    line:3  [2 collapsed frames]
+     * 
      */
     private void printCallStack(){
         int depthOfStack = vm.sizeOfFunctionCallStack();
@@ -208,7 +213,12 @@ public class DebuggerConsoleUI {
                 indent += " ";
             }
             
-            System.out.println(indent + functionName + "  line:" + startLine);
+            int collapsed = vm.getNthFunctionCollapsedFrames(n);
+            String collapsedFlag = "";
+            if (collapsed == 1) collapsedFlag = "  [1 collapsed frame]";
+            if (collapsed > 1) collapsedFlag = "  [" + collapsed + " collapsed frames]";
+            
+            System.out.println(indent + functionName + "  line:" + startLine + collapsedFlag);
         }
     }
     
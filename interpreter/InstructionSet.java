@@ -0,0 +1,118 @@
+package interpreter;
+import interpreter.ByteCode.*;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * The codes a loader understands, by name, each with what makes a new one.
+ *
+ * An InstructionSet never changes once it is made.  The debugger's set is
+ * the standard set with a few codes laid over it, and a plugin adds its own
+ * codes the same way, so sets for different uses can be loaded from at the
+ * same time, each by its own loader:
+ *
+ *   InstructionSet codes = InstructionSet.STANDARD.with("SQRT", SqrtByteCode::new);
+ *
+ * A code the Verifier does not know has to implement StackEffect.  A name
+ * can also be known but left out, which is how the codes only the debugger
+ * uses are skipped when it is not running.
+ *
+ * @author admin
+ */
+public final class InstructionSet {
+
+    // the factory of each name; null for the names that are left out
+    private final Map<String, Supplier<? extends ByteCode>> factories;
+
+    private InstructionSet(Map<String, Supplier<? extends ByteCode>> factories){
+        this.factories = Collections.unmodifiableMap(factories);
+    }
+
+    public static final InstructionSet EMPTY =
+            new InstructionSet(new LinkedHashMap<String, Supplier<? extends ByteCode>>());
+
+    public static final InstructionSet STANDARD = EMPTY
+            .with("ARGS", ArgsByteCode::new)
+            .with("BOP", BopByteCode::new)
+            .with("CALL", CallByteCode::new)
+            .with("DUMP", DumpByteCode::new)
+            .with("FALSEBRANCH", FalseBranchByteCode::new)
+            .with("GOTO", GoToByteCode::new)
+            .with("HALT", HaltByteCode::new)
+            .with("LOAD", LoadByteCode::new)
+            .with("LABEL", LabelByteCode::new)
+            .with("LIT", LitByteCode::new)
+            .with("POP", PopByteCode::new)
+            .with("READ", ReadByteCode::new)
+            .with("RETURN", ReturnByteCode::new)
+            .with("STORE", StoreByteCode::new)
+            .with("WRITE", WriteByteCode::new)
+            .with("SPAWN", SpawnByteCode::new)
+            .with("JOIN", JoinByteCode::new)
+            .with("SEND", SendByteCode::new)
+            .with("RECV", ReceiveByteCode::new)
+            // these only mean something to the debugger
+            .without("LINE")
+            .without("FUNCTION")
+            .without("FORMAL");
+
+    public static final InstructionSet DEBUG = STANDARD.overlay(EMPTY
+            .with("LINE", LineByteCode::new)
+            .with("FUNCTION", FunctionByteCode::new)
+            .with("FORMAL", FormalByteCode::new)
+            .with("CALL", DebugCallCode::new)
+            .with("LIT", DebugLitCode::new)
+            .with("POP", DebugPopCode::new)
+            .with("RETURN", DebugReturnCode::new));
+
+    /**
+     * @return this set with the code added, or put in place of the code it
+     *  has by the same name.
+     */
+    public InstructionSet with(String name, Supplier<? extends ByteCode> factory){
+        if (factory == null) throw new IllegalArgumentException("no factory for " + name);
+        Map<String, Supplier<? extends ByteCode>> copy =
+                new LinkedHashMap<String, Supplier<? extends ByteCode>>(factories);
+        copy.put(name, factory);
+        return new InstructionSet(copy);
+    }
+
+    /**
+     * @return this set with the name known, but left out of the programs
+     *  loaded with it.
+     */
+    public InstructionSet without(String name){
+        Map<String, Supplier<? extends ByteCode>> copy =
+                new LinkedHashMap<String, Supplier<? extends ByteCode>>(factories);
+        copy.put(name, null);
+        return new InstructionSet(copy);
+    }
+
+    /**
+     * @return this set with every code of the other laid over it, the other's
+     *  winning wherever both have one by the same name.
+     */
+    public InstructionSet overlay(InstructionSet other){
+        Map<String, Supplier<? extends ByteCode>> copy =
+                new LinkedHashMap<String, Supplier<? extends ByteCode>>(factories);
+        copy.putAll(other.factories);
+        return new InstructionSet(copy);
+    }
+
+    // The names this set knows, those left out included.
+    public Set<String> names(){
+        return factories.keySet();
+    }
+
+    public boolean contains(String name){
+        return factories.containsKey(name);
+    }
+
+    /**
+     * @return what makes the code with the name, or null if the code is
+     *  left out or unknown.
+     */
+    public Supplier<? extends ByteCode> factory(String name){
+        return factories.get(name);
+    }
+}
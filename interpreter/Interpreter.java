@@ -1,8 +1,25 @@
 package interpreter;
 
 import interpreter.DebuggerUI.DebuggerConsoleUI.DebuggerConsoleUI;
+import interpreter.analysis.Verifier;
+import interpreter.compiler.AotCompiler;
 import interpreter.debugger.DebuggerVirtualMachine;
+import interpreter.engine.CachingVirtualMachine;
+import interpreter.engine.ClosureVirtualMachine;
+import interpreter.engine.JitVirtualMachine;
+import interpreter.engine.MemoizingVirtualMachine;
+import interpreter.engine.NodeVirtualMachine;
+import interpreter.engine.OpcodeVirtualMachine;
+import interpreter.engine.ParallelVirtualMachine;
+import interpreter.engine.ProfilingVirtualMachine;
+import interpreter.engine.RegisterVirtualMachine;
+import interpreter.engine.TierManager;
+import interpreter.engine.TieredVirtualMachine;
+import interpreter.optimizer.GlobalOptimizer;
+import interpreter.optimizer.Inliner;
+import interpreter.optimizer.PeepholeOptimizer;
 import java.io.*;
+import java.util.Arrays;
 import java.util.Scanner;
 import java.util.Vector;
 
@@ -21,6 +38,58 @@ import java.util.Vector;
  * parameter when calling the interpreter from the command line, like: 
  *  java -jar interpreter.jar -d factorial
  * 
+ * Regular execution can be handed to a different engine with -e, like: 
+ *  java -jar interpreter.jar -e opcode factorial.x.cod
+ * and the bytecodes can be run through the peephole optimizer first with -O:
+ *  java -jar interpreter.jar -O -e opcode factorial.x.cod
+ * or through the global optimizer, which runs the peephole optimizer too, 
+ * with -O2.  -inline replaces calls of small functions with their bodies 
+ * before that. 
+ * The jit engine compiles a function once it has been called -jit-threshold
+ * times (1000 by default):
+ *  java -jar interpreter.jar -e jit -jit-threshold 50 fib.x.cod
+ * and the closure engine compiles the whole program to lambdas up front:
+ *  java -jar interpreter.jar -e closure fib.x.cod
+ * The caching engine is the opcode engine with the top of the stack kept in
+ * a local variable:
+ *  java -jar interpreter.jar -e caching fib.x.cod
+ * The node engine runs it as a graph of self-specializing nodes:
+ *  java -jar interpreter.jar -e node fib.x.cod
+ * and the register engine runs it translated to register form:
+ *  java -jar interpreter.jar -e register fib.x.cod
+ * The tiered engine moves hot functions from the interpreter to closures
+ * (-closure-threshold, 100 by default) and on to the jit (-jit-threshold).
+ * -tier function=interpreter|closure|jit pins a function to one tier:
+ *  java -jar interpreter.jar -e tiered -tier fib=jit fib.x.cod
+ * The memo engine remembers the results of functions that neither read,
+ * write nor halt, keeping up to -memo-size results (4096 by default) for
+ * each, and reports how often they were reused:
+ *  java -jar interpreter.jar -e memo -memo-size 100 fib.x.cod
+ * The parallel engine runs calls like the two in fib(n-2) + fib(n-1) at the
+ * same time, once they execute at least -fork-threshold codes (10000 by
+ * default):
+ *  java -jar interpreter.jar -e parallel fib.x.cod
+ * 
+ * Instead of running a program, -aot compiles it into a jar that runs on 
+ * its own.  A jar built from the same .cod file with the same -O, -O2 and 
+ * -inline options is not rebuilt: 
+ *  java -jar interpreter.jar -aot fib.jar fib.x.cod
+ *  java -jar fib.jar
+ * 
+ * -xbc converts a .cod file to the binary .xbc format instead, which every
+ * option above takes in place of the .cod file and loads much faster: 
+ *  java -jar interpreter.jar -xbc fib.xbc fib.x.cod
+ *  java -jar interpreter.jar -e opcode fib.xbc
+ * 
+ * A large .cod file is read with every core; -load-threads sets how many
+ * threads read it, 1 reading it on one thread as small files are: 
+ *  java -jar interpreter.jar -load-threads 4 big.x.cod
+ * interpreter.LoadBenchmark times loading a file with more and more threads.
+ * 
+ * Every program is verified when it is loaded.  -verify prints what the
+ * verifier found out about each function instead of running the program:
+ *  java -jar interpreter.jar -verify fib.x.cod
+ * 
  * Then the interpreter will look for both factorial.x and factorial.x.cod
  * and send the Program to a DebuggerVirtualMachine. 
  *   
@@ -32,30 +101,143 @@ public class Interpreter {
 	ByteCodeLoader bcl;
         boolean debugging = false;
         String programName,sourceFile, byteCodeFile;
+        String engine = "vm";
+        boolean optimizing = false;
+        boolean optimizingGlobally = false;
+        boolean inlining = false;
+        boolean verifying = false;
+        int jitThreshold = 1000;
+        int closureThreshold = 100;
+        int memoSize = MemoizingVirtualMachine.DEFAULT_CACHE_SIZE;
+        int forkThreshold = ParallelVirtualMachine.DEFAULT_FORK_THRESHOLD;
+        Vector<String> forcedTiers = new Vector<String>();
+        String aotJar;
+        String xbcFile;
+        int loadThreads;
+
+        // the names -e takes, "vm" being the plain VirtualMachine
+        static final String[] ENGINES = {"vm", "opcode", "caching", "node", "super", "closure",
+                "register", "tiered", "jit", "memo", "parallel"};
 
+	/**
+	 * @throws IllegalArgumentException if an option is given a value it 
+	 *  cannot take. 
+	 */
 	public Interpreter(String args[]) {
-            CodeTable.init();
-            if (args[0].equals("-d")) {
-                CodeTable.addDebugCode();
-                //DebuggerCodeTable.init();
+            int arg = 0;
+            // options for regular execution come before the file name
+            while (arg < args.length-1) {
+                if (args[arg].equals("-e")) {
+                    engine = args[arg+1];
+                    if (!Arrays.asList(ENGINES).contains(engine)) {
+                        throw new IllegalArgumentException("there is no engine " + engine
+                                + ", try one of " + String.join(", ", ENGINES));
+                    }
+                    arg += 2;
+                } else if (args[arg].equals("-jit-threshold")) {
+                    jitThreshold = number(args[arg], args[arg+1], 0);
+                    arg += 2;
+                } else if (args[arg].equals("-closure-threshold")) {
+                    closureThreshold = number(args[arg], args[arg+1], 0);
+                    arg += 2;
+                } else if (args[arg].equals("-memo-size")) {
+                    memoSize = number(args[arg], args[arg+1], 1);
+                    arg += 2;
+                } else if (args[arg].equals("-fork-threshold")) {
+                    forkThreshold = number(args[arg], args[arg+1], 0);
+                    arg += 2;
+                } else if (args[arg].equals("-tier")) {
+                    tier(args[arg+1]);
+                    forcedTiers.add(args[arg+1]);
+                    arg += 2;
+                } else if (args[arg].equals("-aot")) {
+                    aotJar = args[arg+1];
+                    arg += 2;
+                } else if (args[arg].equals("-load-threads")) {
+                    loadThreads = number(args[arg], args[arg+1], 0);
+                    arg += 2;
+                } else if (args[arg].equals("-xbc")) {
+                    xbcFile = args[arg+1];
+                    arg += 2;
+                } else if (args[arg].equals("-verify")) {
+                    verifying = true;
+                    arg++;
+                } else if (args[arg].equals("-inline")) {
+                    inlining = true;
+                    arg++;
+                } else if (args[arg].equals("-O2")) {
+                    optimizingGlobally = true;
+                    arg++;
+                } else if (args[arg].equals("-O")) {
+                    optimizing = true;
+                    arg++;
+                } else break;
+            }
+            if (args[arg].equals("-d")) {
                 debugging = true;
-                programName = args[1];
+                programName = args[arg+1];
                 sourceFile = programName +".x";
                 byteCodeFile = programName + ".x.cod";
             }else{
-                byteCodeFile = args[0];
+                byteCodeFile = args[arg];
             }    
 
             try {
                     
-                    bcl = new ByteCodeLoader(byteCodeFile);
+                    bcl = new ByteCodeLoader(byteCodeFile,
+                            debugging ? InstructionSet.DEBUG : InstructionSet.STANDARD);
+                    bcl.setThreads(loadThreads);
             } catch (IOException e) {
                     System.out.println("**** " + e);
             }
 	}
 
+        // The value of a numeric option, which must be at least least. 
+        static int number(String option, String value, int least) {
+                int number;
+                try {
+                    number = Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(option + " takes a number, not " + value);
+                }
+                if (number < least) {
+                    throw new IllegalArgumentException(option + " must be at least " + least);
+                }
+                return number;
+        }
+
+        // The tier of a -tier function=tier option. 
+        static TierManager.Tier tier(String forced) {
+                String[] parts = forced.split("=", -1);
+                if (parts.length == 2 && !parts[0].isEmpty()) {
+                    for (TierManager.Tier tier : TierManager.Tier.values()) {
+                        if (tier.name().equalsIgnoreCase(parts[1])) return tier;
+                    }
+                }
+                throw new IllegalArgumentException("-tier takes function=interpreter|closure|jit, not "
+                        + forced);
+        }
+
 	void run() {
-		Program program = bcl.loadCodes();
+		Program program;
+                if (aotJar != null && !debugging) {
+                    compileAheadOfTime();
+                    return;
+                }
+                if (xbcFile != null && !debugging) {
+                    convertToBinary();
+                    return;
+                }
+                try {
+                    program = bcl.loadCodes();
+                } catch (ByteCodeLoadException e) {
+                    System.out.println("**** " + e.getMessage());
+                    return;
+                }
+                if (verifying) {
+                    System.out.print(Verifier.verify(program).report());
+                    return;
+                }
                 //-------------Debugging Execution -------------
                 if (debugging){
                     Vector<String> sourceFileVector = new Vector<String>();
@@ -70,17 +252,134 @@ public class Interpreter {
                     consoleUI.run();
                 //------------- Regular Exection -------------
                 } else{
-                    VirtualMachine vm = new VirtualMachine(program);
+                    try {
+                        if (inlining) {
+                            int inlined = Inliner.inline(program);
+                            System.err.println("Inliner inlined " + inlined + " calls");
+                        }
+                        if (optimizingGlobally) {
+                            int removed = GlobalOptimizer.optimize(program);
+                            System.err.println("Global optimizer removed " + removed + " bytecodes");
+                        } else if (optimizing) {
+                            int removed = PeepholeOptimizer.optimize(program);
+                            System.err.println("Peephole optimizer removed " + removed + " bytecodes");
+                        }
+                        if (!program.isVerified()) {
+                            // an optimizer rewrote the program, so check what it made of it
+                            program.setStackDepth(Verifier.verify(program).getStackDepth());
+                        }
+                    } catch (ByteCodeLoadException e) {
+                        System.out.println("**** the optimized program is malformed: "
+                                + e.getMessage());
+                        return;
+                    }
+                    VirtualMachine vm = createVirtualMachine(program);
                     vm.executeProgram();
                 }
 	}
 
+        // Regular execution can be handed to one of the alternative engines
+        // with -e <engine>, e.g.  java interpreter.Interpreter -e opcode fib.x.cod
+        VirtualMachine createVirtualMachine(Program program) {
+                if (engine.equals("opcode")) {
+                    return new OpcodeVirtualMachine(program);
+                }
+                if (engine.equals("caching")) {
+                    return new CachingVirtualMachine(program);
+                }
+                if (engine.equals("node")) {
+                    return new NodeVirtualMachine(program);
+                }
+                if (engine.equals("super")) {
+                    return new ProfilingVirtualMachine(program);
+                }
+                if (engine.equals("closure")) {
+                    return new ClosureVirtualMachine(program);
+                }
+                if (engine.equals("register")) {
+                    return new RegisterVirtualMachine(program);
+                }
+                if (engine.equals("tiered")) {
+                    TieredVirtualMachine vm = new TieredVirtualMachine(program,
+                            closureThreshold, jitThreshold);
+                    for (String forced : forcedTiers) {
+                        String name = forced.substring(0, forced.indexOf('='));
+                        if (!vm.getTierManager().forceTier(name, tier(forced))) {
+                            System.err.println("**** no function named " + name);
+                        }
+                    }
+                    return vm;
+                }
+                if (engine.equals("jit")) {
+                    return new JitVirtualMachine(program, jitThreshold);
+                }
+                if (engine.equals("memo")) {
+                    return new MemoizingVirtualMachine(program, memoSize);
+                }
+                if (engine.equals("parallel")) {
+                    return new ParallelVirtualMachine(program, forkThreshold);
+                }
+                return new VirtualMachine(program);
+        }
+
+        // Write the program to xbcFile in the binary format, which loads 
+        // faster than the .cod file. 
+        void convertToBinary() {
+                try {
+                    int codes = BinaryByteCodeWriter.write(byteCodeFile, xbcFile);
+                    System.err.println("wrote " + codes + " bytecodes to " + xbcFile);
+                } catch (ByteCodeLoadException e) {
+                    System.out.println("**** " + e.getMessage());
+                } catch (IOException e) {
+                    System.out.println("**** " + e);
+                }
+        }
+
+        // Compile the program into aotJar, unless the jar is already built
+        // from the same .cod file with the same optimizations. 
+        void compileAheadOfTime() {
+                try {
+                    String options = (inlining ? "-inline " : "")
+                            + (optimizingGlobally ? "-O2" : optimizing ? "-O" : "");
+                    String hash = AotCompiler.hashOf(byteCodeFile, options);
+                    if (AotCompiler.isUpToDate(aotJar, hash)) {
+                        System.err.println(aotJar + " is up to date");
+                        return;
+                    }
+                    Program program = bcl.loadCodes();
+                    if (inlining) {
+                        Inliner.inline(program);
+                    }
+                    if (optimizingGlobally) {
+                        GlobalOptimizer.optimize(program);
+                    } else if (optimizing) {
+                        PeepholeOptimizer.optimize(program);
+                    }
+                    AotCompiler.compile(program, hash, aotJar);
+                    System.err.println("Wrote " + aotJar);
+                } catch (IOException e) {
+                    System.out.println("**** " + e);
+                } catch (ByteCodeLoadException e) {
+                    System.out.println("**** " + e.getMessage());
+                } catch (IllegalArgumentException e) {
+                    System.out.println("**** " + e.getMessage());
+                }
+        }
+
 	public static void main(String args[]) {
 		if (args.length == 0) {
 			System.out.println("***Incorrect usage, try: java interpreter.Interpreter <file>");
 			System.exit(1);
 		}
-		(new Interpreter(args)).run();
+		Interpreter interpreter;
+		try {
+			interpreter = new Interpreter(args);
+		} catch (IllegalArgumentException e) {
+			System.out.println("**** " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+		interpreter.run();
 	}
 }
 
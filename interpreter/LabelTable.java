@@ -0,0 +1,109 @@
+package interpreter;
+import interpreter.ByteCode.BranchingByteCode;
+import java.util.*;
+
+/**
+ * The labels of a Program as it is loaded.  Each label is given a number
+ * the first time it is seen, whether by its LABEL or by a code that goes to
+ * it, and from then on is only handled by that number.  The codes that go
+ * to a label are noted as they are loaded, and are all given its address
+ * in one pass once the whole program is in, so a label may be used before
+ * its LABEL.
+ *
+ * @author admin
+ */
+public class LabelTable {
+
+    private HashMap<String, Integer> ids = new HashMap<String, Integer>();
+    private String[] names = new String[64];
+    // the address of the LABEL of each label, UNRESOLVED until it is seen
+    private int[] addresses = new int[64];
+
+    // the codes that go to a label, with the label and the line they are on
+    private int referenceCount;
+    private int[] referenceAddresses = new int[64];
+    private int[] referenceLabels = new int[64];
+    private int[] referenceLines = new int[64];
+
+    /**
+     * @return the number of the label, given it if it has none yet.
+     */
+    public int intern(String label){
+        Integer id = ids.get(label);
+        if (id != null) return id;
+        int next = ids.size();
+        if (next == names.length){
+            names = Arrays.copyOf(names, next*2);
+            addresses = Arrays.copyOf(addresses, next*2);
+        }
+        names[next] = label;
+        addresses[next] = Program.UNRESOLVED;
+        ids.put(label, next);
+        return next;
+    }
+
+    /**
+     * Note that the LABEL of the label is at address.
+     *
+     * @return false, leaving the label where it was, if it already has a
+     *  LABEL.
+     */
+    public boolean define(String label, int address){
+        int id = intern(label);
+        if (addresses[id] != Program.UNRESOLVED) return false;
+        addresses[id] = address;
+        return true;
+    }
+
+    /**
+     * @return the address of the LABEL of the label, or Program.UNRESOLVED
+     *  if it has none.
+     */
+    public int addressOf(String label){
+        Integer id = ids.get(label);
+        return (id == null ? Program.UNRESOLVED : addresses[id]);
+    }
+
+    // Note that the code at address, on the line given, goes to the label.
+    // A code that was not read from a file is on line 0.
+    public void reference(String label, int address, int line){
+        if (referenceCount == referenceAddresses.length){
+            int size = referenceCount*2;
+            referenceAddresses = Arrays.copyOf(referenceAddresses, size);
+            referenceLabels = Arrays.copyOf(referenceLabels, size);
+            referenceLines = Arrays.copyOf(referenceLines, size);
+        }
+        referenceAddresses[referenceCount] = address;
+        referenceLabels[referenceCount] = intern(label);
+        referenceLines[referenceCount] = line;
+        referenceCount++;
+    }
+
+    /**
+     * Give every code that was noted the address of its label.  A label
+     * with no LABEL leaves its codes UNRESOLVED.
+     */
+    public void resolve(Program program){
+        for (int i=0; i<referenceCount; i++){
+            BranchingByteCode code = (BranchingByteCode)program.getCode(referenceAddresses[i]);
+            code.setTargetAddress(addresses[referenceLabels[i]]);
+        }
+    }
+
+    /**
+     * @throws ByteCodeLoadException for the first code that was noted whose
+     *  label has no LABEL, giving its line, or its address if it is on
+     *  line 0.
+     */
+    public void checkDefined(Program program){
+        for (int i=0; i<referenceCount; i++){
+            if (addresses[referenceLabels[i]] != Program.UNRESOLVED) continue;
+            String problem = program.getCode(referenceAddresses[i])
+                    + ": there is no LABEL " + names[referenceLabels[i]];
+            if (referenceLines[i] == 0){
+                throw new ByteCodeLoadException("code " + referenceAddresses[i] + ": " + problem);
+            }
+            throw new ByteCodeLoadException(referenceLines[i], problem);
+        }
+    }
+}
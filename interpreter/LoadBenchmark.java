@@ -0,0 +1,87 @@
+package interpreter;
+import interpreter.ByteCode.BranchingByteCode;
+import interpreter.ByteCode.ByteCode;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Times loading a .cod file with 1, 2, 4 ... threads up to the number of
+ * cores, or up to the number given, like:
+ *  java -cp interpreter.jar interpreter.LoadBenchmark big.x.cod 8 5
+ * which loads big.x.cod 5 times with each of 1, 2, 4 and 8 threads and
+ * prints the fastest and middle times, and how much faster the middle time
+ * is than with 1 thread.  Every Program loaded is checked to be the same as
+ * the one loaded with 1 thread.  The times include verifying the program,
+ * which is done on one thread whatever the number of threads.
+ *
+ * @author admin
+ */
+public class LoadBenchmark {
+
+    public static void main(String args[]) throws IOException {
+        if (args.length == 0) {
+            System.out.println("usage: LoadBenchmark file.cod [threads] [runs]");
+            return;
+        }
+        String file = args[0];
+        int maxThreads;
+        int runs;
+        try {
+            maxThreads = (args.length > 1 ? Interpreter.number("threads", args[1], 1)
+                    : Runtime.getRuntime().availableProcessors());
+            runs = (args.length > 2 ? Interpreter.number("runs", args[2], 1) : 5);
+        } catch (IllegalArgumentException e) {
+            System.out.println("**** " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        Program expected = load(file, 1);
+        // let the JIT compile the loader before anything is timed
+        for (int i=0; i<3; i++) load(file, maxThreads);
+
+        System.out.println(expected.getNumberOfByteCodes() + " codes, "
+                + Runtime.getRuntime().availableProcessors() + " cores");
+        long baseline = 0;
+        for (int threads=1; ; threads=Math.min(threads*2, maxThreads)) {
+            long[] times = new long[runs];
+            for (int i=0; i<runs; i++) {
+                long start = System.nanoTime();
+                Program program = load(file, threads);
+                times[i] = System.nanoTime() - start;
+                if (i == 0) checkSame(expected, program, threads);
+            }
+            Arrays.sort(times);
+            long median = times[runs/2];
+            if (threads == 1) baseline = median;
+            System.out.printf("%3d threads: %8.1f ms fastest, %8.1f ms middle, %5.2fx%n",
+                    threads, times[0]/1e6, median/1e6, (double)baseline/median);
+            if (threads == maxThreads) break;
+        }
+    }
+
+    private static Program load(String file, int threads) throws IOException {
+        ByteCodeLoader loader = new ByteCodeLoader(file);
+        loader.setThreads(threads);
+        return loader.loadCodes();
+    }
+
+    private static void checkSame(Program expected, Program program, int threads){
+        if (program.getNumberOfByteCodes() != expected.getNumberOfByteCodes()) {
+            throw new IllegalStateException(threads + " threads loaded " + program.getNumberOfByteCodes()
+                    + " codes instead of " + expected.getNumberOfByteCodes());
+        }
+        for (int i=0; i<expected.getNumberOfByteCodes(); i++) {
+            ByteCode a = expected.getCode(i);
+            ByteCode b = program.getCode(i);
+            boolean same = a.getClass() == b.getClass() && a.toString().equals(b.toString());
+            if (same && a instanceof BranchingByteCode) {
+                same = ((BranchingByteCode)a).targetAddress() == ((BranchingByteCode)b).targetAddress();
+            }
+            if (!same) {
+                throw new IllegalStateException(threads + " threads loaded " + b + " at " + i
+                        + " instead of " + a);
+            }
+        }
+    }
+}
@@ -12,7 +12,15 @@ import interpreter.ByteCode.*;
  */
 public class Program {
     
+    // the target of a branch or CALL whose LABEL is not in the program; not
+    // -1, which is the target of a branch to code 0 once a leading LABEL is
+    // optimized away
+    public static final int UNRESOLVED = Integer.MIN_VALUE;
+    
     private Vector<ByteCode> byteCodes = new Vector<ByteCode>();
+    // the deepest the Verifier found the RunTimeStack can get, or -1 if the
+    // program has not been verified
+    private int stackDepth = -1;
     
     public void pushByteCode(ByteCode code){
         byteCodes.add(code);
@@ -22,64 +30,106 @@ public class Program {
         return (ByteCode)byteCodes.get(index);
     }
     
+    // Replace the bytecode at index with one that behaves the same way. 
+    public void setCode(int index, ByteCode code){
+        byteCodes.set(index, code);
+    }
+    
     public int getNumberOfByteCodes(){
         return byteCodes.size();
     }
     
+    // Replace all of the bytecodes at once, e.g. with the output of an 
+    // optimization pass.  Branch targets must already be resolved against 
+    // the new list.  The new codes have not been verified. 
+    public void setByteCodes(List<ByteCode> codes){
+        byteCodes = new Vector<ByteCode>(codes);
+        stackDepth = -1;
+    }
+    
+    // Whether any of the bytecodes is a DUMP.  Engines that keep no 
+    // RunTimeStack to show run such programs like the plain VirtualMachine. 
+    public boolean containsDump(){
+        for (ByteCode code : byteCodes){
+            if (code instanceof DumpByteCode) return true;
+        }
+        return false;
+    }
+    
     // When the bytecodes are loaded into the program, the addresses do 
-    // not yet point to the corresponding bytecodes to be exectued.  
+    // not yet point to the corresponding bytecodes to be exectued.  The 
+    // ByteCodeLoader notes the labels as it goes, and resolves them itself;
+    // this is for a Program that has been put together some other way. 
+    // Throws a ByteCodeLoadException, with the address, for a label with 
+    // two LABELs or a code going to a label with none. 
     public void resolveAddresses(){
-        HashMap<String,Integer> addresses = new java.util.HashMap<String,Integer>();
-        
-        
-        // Map each Name associated with a Label byte code to the address
-        // of that label byte code. 
-        for ( int i=0; i<byteCodes.size(); i++){
-            if (byteCodes.get(i).getClass().getName()=="interpreter.ByteCode.LabelByteCode") {
-                String label = ((LabelByteCode)byteCodes.get(i)).label;
-                addresses.put(label, i);
+        LabelTable labels = new LabelTable();
+        for (int i=0; i<byteCodes.size(); i++){
+            ByteCode code = byteCodes.get(i);
+            if (code instanceof LabelByteCode){
+                String label = ((LabelByteCode)code).label;
+                if (!labels.define(label, i)){
+                    throw new ByteCodeLoadException("code " + i + ": LABEL " + label
+                            + " is already at code " + labels.addressOf(label));
+                }
+            } else if (code instanceof BranchingByteCode){
+                labels.reference(((BranchingByteCode)code).targetLabel(), i, 0);
             }
         }
-        
-        
-        // Run through the ByteCodes a second time to resolve the String targets
-        // of GOTO, CALL, and FALSEBRANCH bytecodes to the integer address
-        // of the corresponding LABEL bytecode. 
-        // NOTE: -->   Currently this loop calls .getClass().getName.equals()
-        // three times on each bytecode that is not a redirecting code.  
-        // this could resulting in very slow loading of larger bytecode files?  
-        for ( int i=0; i<byteCodes.size(); i++){
-            //CALL bytecodes
-            if (byteCodes.get(i).getClass().getName().equals("interpreter.ByteCode.CallByteCode") 
-                    ||byteCodes.get(i).getClass().getName().equals("interpreter.ByteCode.DebugCallCode") ) {
-                CallByteCode callCode = ((CallByteCode)byteCodes.get(i));
-                String label = callCode.func;
-                callCode.targetAddrs = addresses.get(label);
-            }
-            
-            //DebugCallCode
-            if (byteCodes.get(i).getClass().getName().equals("interpreter.ByteCode.DebugCallCode") ) {
-                DebugCallCode debugCallCode = ((DebugCallCode)byteCodes.get(i));
-                String label = debugCallCode.func;
-                debugCallCode.targetAddrs = addresses.get(label);
-            }
-            
-            // GOTO bytecodes
-            if (byteCodes.get(i).getClass().getName().equals("interpreter.ByteCode.GoToByteCode")) {
-                GoToByteCode gotoCode = ((GoToByteCode)byteCodes.get(i));
-                String label = gotoCode.label;
-                gotoCode.targetAddrs = addresses.get(label);
+        labels.checkDefined(this);
+        labels.resolve(this);
+        markTailCalls();
+    }
+    
+    // Set once the Verifier has accepted the program, by the loader and 
+    // again once the program is optimized.  Engines can size their stacks 
+    // by it, and leave out the checks that verified programs cannot fail. 
+    public void setStackDepth(int depth){
+        stackDepth = depth;
+    }
+    
+    public int getStackDepth(){
+        return stackDepth;
+    }
+    
+    public boolean isVerified(){
+        return stackDepth >= 0;
+    }
+    
+    // Make every CALL that its function returns right after a tail call, 
+    // and every other CALL an ordinary one, so that a program that has been
+    // rewritten only has tail calls where they belong.  Branch targets must
+    // already be resolved.  A program that DUMPs keeps ordinary CALLs, so 
+    // that every call shows its own frame in the dump. 
+    public void markTailCalls(){
+        boolean dumps = containsDump();
+        for (int i=0; i<byteCodes.size(); i++){
+            if (!(byteCodes.get(i) instanceof CallByteCode)) continue;
+            CallByteCode callCode = (CallByteCode)byteCodes.get(i);
+            boolean isTailCall = !dumps && returnsAfter(i);
+            if (isTailCall != callCode.isTailCall()){
+                byteCodes.set(i, (isTailCall ? callCode.toTailCall() : callCode.toCall()));
             }
-            
-            // FALSEBRANCH
-            if (byteCodes.get(i).getClass().getName().equals("interpreter.ByteCode.FalseBranchByteCode")) {
-                FalseBranchByteCode branchCode = ((FalseBranchByteCode)byteCodes.get(i));
-                String label =  branchCode.targetLabel;
-                branchCode.targetAddrs = addresses.get(label);
+        }
+    }
+    
+    // Whether the code that runs after the one at address is a RETURN, once
+    // any LABELs and GOTOs on the way are skipped. 
+    private boolean returnsAfter(int address){
+        int next = address+1;
+        // a GOTO loop never gets to a RETURN 
+        for (int steps=0; steps<byteCodes.size() && next<byteCodes.size(); steps++){
+            ByteCode code = byteCodes.get(next);
+            if (code instanceof ReturnByteCode) return true;
+            if (code instanceof GoToByteCode){
+                next = ((GoToByteCode)code).targetAddrs + 1;
+            } else if (code instanceof LabelByteCode){
+                next++;
+            } else {
+                return false;
             }
-            
         }
-        
+        return false;
     }
     
 }
@@ -1,154 +1,236 @@
 
 package interpreter;
-import java.util.*;
 /**
- *  The runtime stack records and processes the stack of active frames for a 
- * VirtualMachine when it is interpreting a program. 
- * 
- * The RunTimeStack is modeled using a Stack Object, and each frame  is a Vector. 
- * 
- * Known Problems:
- *  If a frame of size 0 is created, then the frame pointer points to an entry
- *  that is past the end of the runStack.   
- *  Fortunately runstack.size - framePointers.peek returns the correct size, 
- *  as long as there aren't nested function calls to functions with 0 args. 
- *  This is not guaranteed, and a better solution is necessary. 
+ *  The runtime stack records and processes the stack of active frames for a
+ * VirtualMachine when it is interpreting a program.
+ *
+ * The RunTimeStack is modeled as a growable int array with an index of its
+ * top, and each frame is the run of slots between two frame pointers.  The
+ * frame pointers are kept in a second int array, and a third one running
+ * parallel to it holds the address each frame returns to.  Together those
+ * two arrays are the VM's control stack: ARGS pushes a frame record and CALL
+ * fills in its return address, so a call never allocates anything once the
+ * arrays have grown to the depth of the recursion.
+ *
+ * Popping a frame only moves the top index back to the frame pointer, and
+ * storing into a variable is a single write into the array, so neither
+ * depends on how much is above the frame.  Frames of size 0 are fine; their
+ * frame pointer simply equals the top index.
+ *
+ * A stack for a program the Verifier accepted can start out as deep as the
+ * program needs, and leave out the checks that LOAD and STORE stay inside
+ * the frame and that nothing is popped off an empty stack, which such a
+ * program cannot fail.
  *
  * @author admin
  */
 public class RunTimeStack {
-    
-    private Stack<Integer> framePointers;
-    
-    private Vector<Integer> runStack;
-            
+
+    // a frame whose CALL has not been executed yet.
+    private static final int NO_RETURN_ADDRESS = -1;
+
+    private int[] framePointers;
+    private int[] returnAddrs;
+    private int frameCount;
+
+    private int[] runStack;
+    private int top;
+    private boolean checking;
+
     public RunTimeStack(){
-        framePointers = new Stack<Integer>();
-        framePointers.push(0);
-        runStack = new Vector<Integer>();
+        this(64, true);
     }
-    
+
+    /**
+     * @param capacity how many values the stack holds before it has to grow
+     * @param checking whether to check for pops off the empty stack, and
+     *  for LOADs and STOREs outside of the frame
+     */
+    public RunTimeStack(int capacity, boolean checking){
+        this.checking = checking;
+        framePointers = new int[16];
+        returnAddrs = new int[16];
+        framePointers[0] = 0;
+        returnAddrs[0] = NO_RETURN_ADDRESS;
+        frameCount = 1;
+        runStack = new int[Math.max(capacity, 1)];
+        top = 0;
+    }
+
     // dump the RunTimStack for debugging info
-    // Return a string representation of the runStack to the VM to be dumped
-    // to the console. 
+    // Print each frame of the runStack, bottom frame first, to the console.
     public void dump(){
-        Vector<Integer> stack = (Vector)runStack.clone();
-        Vector<Integer> framePtrs = (Vector)framePointers.clone();
-        
-        Vector frameArray[] = new Vector[framePtrs.size()];
-        
-        for( int i = framePtrs.size(); i >0 ; i-- ){
-            frameArray[i-1] = new Vector<Integer>();
-            int startIndex = framePtrs.get(i-1);
-            int currentSize = stack.size();
-            
-            for (int k=startIndex; k< currentSize; k++){
-                frameArray[i-1].add(stack.remove(startIndex));
+        StringBuilder out = new StringBuilder();
+
+        for ( int i=0; i<frameCount; i++){
+            int end = (i+1<frameCount ? framePointers[i+1] : top);
+            out.append('[');
+            for (int k=framePointers[i]; k<end; k++){
+                if (k>framePointers[i]) out.append(", ");
+                out.append(runStack[k]);
             }
+            out.append(']');
         }
-        for ( int i=0; i<framePtrs.size(); i++){
-            System.out.print(frameArray[i].toString());
-        }
-        System.out.println();
-        
+        System.out.println(out);
+
     }
-    
+
     public int peek(){
-        return runStack.lastElement();
+        if (checking && top == 0) throw new java.util.NoSuchElementException();
+        return runStack[top-1];
     }
     // pop the top item from the runtime stack
     public int pop(){
-        int top = runStack.lastElement();
-        runStack.removeElementAt(runStack.size()-1);
-        return top;
+        if (checking && top == 0) throw new java.util.NoSuchElementException();
+        return runStack[--top];
     }
-    
+
     // Pushes i on the runtime stack
     public int push( int i){
-        runStack.addElement(i);
+        if (top == runStack.length) runStack = java.util.Arrays.copyOf(runStack, top*2);
+        runStack[top++] = i;
         return i;
     }
-    
-    
+
+
 
     /**
-     * 
-     * @param offset indicates the number of slots down from the top of the 
+     *
+     * @param offset indicates the number of slots down from the top of the
      *    runtime stack for startgin the new frame
      */
     public void newFrameOfSize(int offset){
-        int size = runStack.size();
-        framePointers.push(size-offset);
-        
+        newFrameOfSize(offset, NO_RETURN_ADDRESS);
     }
-       
+
     /**
-     * Pop the top frame when we return from a function. Before popping the 
-     * function's return value is at the top of the stack so we'll save the 
-     * value, pop the top frame then push the return value.
+     * Push a complete frame record at once, for engines that execute
+     * ARGS n and the CALL that follows it as a single step.
+     *
+     * @param offset the number of arguments on top of the stack
+     * @param returnAddress the address of the CALL that creates the frame
      */
-   
-    public void popFrame(){
-        int top = this.pop();
-        int currentSize = runStack.size();
-        int startIndex = framePointers.pop();
-        for ( int i=startIndex; i<currentSize; i++){
-            runStack.remove(startIndex);
+    public void newFrameOfSize(int offset, int returnAddress){
+        if (frameCount == framePointers.length){
+            framePointers = java.util.Arrays.copyOf(framePointers, frameCount*2);
+            returnAddrs = java.util.Arrays.copyOf(returnAddrs, frameCount*2);
         }
-        this.push(top);
+        framePointers[frameCount] = top-offset;
+        returnAddrs[frameCount] = returnAddress;
+        frameCount++;
     }
-    
+
     /**
-     * 
-     * @return  an array containing the integers in the top frame. 
+     * Record the address a CALL should return to in the frame that the
+     * preceding ARGS set up.  A CALL that was not preceded by ARGS gets a
+     * frame of size 0.
      */
-    
-    public int[] peekFrame(){
-        int[] frame = new int[sizeOfCurrentFrame()];
-        for(int i=0; i<sizeOfCurrentFrame(); i++){
-            frame[i] = getValueAtOffset(i);
+    public void setReturnAddress(int returnAddress){
+        if (frameCount == 1 || returnAddrs[frameCount-1] != NO_RETURN_ADDRESS){
+            newFrameOfSize(0);
         }
-        
-        return frame;
+        returnAddrs[frameCount-1] = returnAddress;
     }
-            
+
+    /**
+     * Let the frame of a CALL take the place of the frame below it, for a
+     * CALL the current function returns right after.  The arguments the last
+     * ARGS set up are moved down to where the current frame starts, and that
+     * frame keeps its return address, so the called function returns
+     * straight to the current function's caller.
+     *
+     * @return false, leaving the stack alone, when the current frame is the
+     *  main program's, which has nowhere to return to.
+     */
+    public boolean replaceFrame(){
+        boolean hasArguments = frameCount > 1 && returnAddrs[frameCount-1] == NO_RETURN_ADDRESS;
+        int current = (hasArguments ? frameCount-2 : frameCount-1);
+        if (current == 0) return false;
+
+        int first = (hasArguments ? framePointers[frameCount-1] : top);
+        int size = top - first;
+        System.arraycopy(runStack, first, runStack, framePointers[current], size);
+        top = framePointers[current] + size;
+        frameCount = current+1;
+        return true;
+    }
+
+    /**
+     * Pop the top frame when we return from a function. Before popping the
+     * function's return value is at the top of the stack so we'll save the
+     * value, pop the top frame then push the return value.
+     *
+     * @return the address that the popped frame was called from.
+     */
+
+    public int popFrame(){
+        if (frameCount == 1) throw new java.util.EmptyStackException();
+        int returnValue = this.pop();
+        frameCount--;
+        top = framePointers[frameCount];
+        runStack[top++] = returnValue;
+        return returnAddrs[frameCount];
+    }
+
+    /**
+     *
+     * @return  an array containing the integers in the top frame.
+     */
+
+    public int[] peekFrame(){
+        return java.util.Arrays.copyOfRange(runStack, currentFramePointer(), top);
+    }
+
     //Used to store into variables
     public int store(int offset){
-        int top = this.pop();
-        runStack.add(framePointers.peek()+offset, top);
-        runStack.removeElementAt(framePointers.peek()+offset+1);
-        return top;
+        int value = this.pop();
+        int index = currentFramePointer()+offset;
+        if (checking && index >= top) throw new ArrayIndexOutOfBoundsException(index);
+        runStack[index] = value;
+        return value;
+    }
+
+    // Used to store a value that was never pushed, like one an engine kept
+    // in a local variable, into a variable.
+    public void setValueAtOffset(int offset, int value){
+        int index = currentFramePointer()+offset;
+        if (checking && index >= top) throw new ArrayIndexOutOfBoundsException(index);
+        runStack[index] = value;
     }
-    
-    // Used to load variables onto the stack 
+
+    // Used to load variables onto the stack
     // returns the value that is at a given offset from the start of the
-    // current frame. 
+    // current frame.
     public int getValueAtOffset(int offset){
-        
-        return runStack.get(framePointers.peek()+offset);
+        int index = currentFramePointer()+offset;
+        if (checking && index >= top) throw new ArrayIndexOutOfBoundsException(index);
+        return runStack[index];
     }
-    
+
     // Used to load literals onto the stack - e.g. for lit 5 we call push(5)
     public Integer push(Integer i){
-        runStack.addElement(i);
+        push(i.intValue());
         return i;
     }
     /*
      * Returns the difference between the current slot in the runStack and the
      * position of the current frame pointer.
-     * 
+     *
      */
     public int currentOffset(){
-        int offset = (runStack.size()-1) -framePointers.peek();
-        
-        return offset;
+        return (top-1) - currentFramePointer();
     }
-    
+
     public int sizeOfCurrentFrame(){
-        int size;
-        size = runStack.size() - framePointers.peek();
-        return size;
+        return top - currentFramePointer();
+    }
+
+    public int numberOfFrames(){
+        return frameCount;
     }
-    
-    
+
+    private int currentFramePointer(){
+        return framePointers[frameCount-1];
+    }
+
 }
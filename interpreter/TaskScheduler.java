@@ -0,0 +1,104 @@
+package interpreter;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The tasks and channels of a program that SPAWNs functions.
+ *
+ * Every task runs its function on a VirtualMachine and RunTimeStack of its
+ * own, on a virtual thread where the JVM has them, and on a thread of a
+ * pool that grows as needed where it does not, so a task waiting in JOIN
+ * or RECV never keeps another one from running.  All of the tasks share
+ * the Program, which nothing changes while it runs, and this scheduler.
+ *
+ * Tasks are known by int handles, and channels by whatever int the program
+ * uses for them; a channel is a queue that is created the first time it is
+ * used.
+ *
+ * @author admin
+ */
+public class TaskScheduler {
+
+    private Program program;
+    private ExecutorService executor = newExecutor();
+    private AtomicInteger lastHandle = new AtomicInteger();
+    private ConcurrentHashMap<Integer, Future<Integer>> tasks = new ConcurrentHashMap<Integer, Future<Integer>>();
+    private ConcurrentHashMap<Integer, BlockingQueue<Integer>> channels = new ConcurrentHashMap<Integer, BlockingQueue<Integer>>();
+
+    public TaskScheduler(Program program){
+        this.program = program;
+    }
+
+    /**
+     * Start running the function whose LABEL is at entry.
+     *
+     * @return the handle of the task.
+     */
+    public int spawn(final int entry, final int[] arguments){
+        int handle = lastHandle.incrementAndGet();
+        tasks.put(handle, executor.submit(() -> {
+            VirtualMachine vm = new VirtualMachine(program);
+            vm.scheduler = this;
+            return vm.runFunction(entry, arguments);
+        }));
+        return handle;
+    }
+
+    /**
+     * Wait for a task to finish.  A task can be joined more than once.
+     *
+     * @return the return value of the task's function.
+     */
+    public int join(int handle){
+        Future<Integer> task = tasks.get(handle);
+        if (task == null) throw new IllegalArgumentException("there is no task " + handle);
+        try {
+            return task.get();
+        } catch (ExecutionException e){
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void send(int channel, int value){
+        channelNumbered(channel).add(value);
+    }
+
+    // Wait for a value to be sent on the channel, unless there is one.
+    public int receive(int channel){
+        try {
+            return channelNumbered(channel).take();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private BlockingQueue<Integer> channelNumbered(int channel){
+        BlockingQueue<Integer> queue = channels.get(channel);
+        if (queue == null){
+            channels.putIfAbsent(channel, new LinkedBlockingQueue<Integer>());
+            queue = channels.get(channel);
+        }
+        return queue;
+    }
+
+    // Virtual threads are looked up reflectively, so that the interpreter
+    // still builds and runs on JVMs from before them.  The threads of the
+    // pool do not keep the JVM from exiting once the program halts.
+    private static ExecutorService newExecutor(){
+        try {
+            return (ExecutorService)Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e){
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
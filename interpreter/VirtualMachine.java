@@ -9,12 +9,13 @@ import java.lang.reflect.Array;
 public class VirtualMachine {
     
     protected int pc;
-    protected Stack<Integer> returnAddrs;
     protected RunTimeStack runStack;
     protected boolean isRunning;
     protected Program program;
     public boolean dumping = false;
     boolean haltReached=false;
+    // shared with the tasks the program SPAWNs, once it SPAWNs one
+    TaskScheduler scheduler;
            
             
     public VirtualMachine(Program prog){
@@ -24,32 +25,48 @@ public class VirtualMachine {
     
     
     // Each time a function is entered in the Program, the address the VM should
-    // return to once the Program returns from the function is pushed onto the
-    // returnAddrs stack. 
+    // return to once the Program returns from the function is recorded with
+    // the function's frame on the RunTimeStack. 
     // Every ByteCode object should have an exectute( VirtualMacine ) method. 
     // 
     public void executeProgram(){
         pc = 0;
-        runStack = new RunTimeStack();
-        returnAddrs = new Stack();
+        runStack = newRunTimeStack();
         isRunning = true;
-        BinaryOpTable.init();
         
         // VM should be responsible for dumping to Console. 
         
         while (isRunning){
-            ByteCode code = program.getCode(pc);
-            code.execute(this);
-            // only dump if the current code is not DUMP and dumping is set. 
-            if (!code.getClass().getName().equals("interpreter.ByteCode.DumpByteCode")
-                    && dumping){
-                System.out.println(code.toString());
-                runStack.dump();
-            }
-            pc++;
+            step();
         }
     }
     
+    // A stack as deep as the Verifier found the program needs, without the
+    // checks the program cannot fail once it has been verified. 
+    protected RunTimeStack newRunTimeStack(){
+        if (program.isVerified()){
+            return new RunTimeStack(program.getStackDepth(), false);
+        }
+        return new RunTimeStack();
+    }
+    
+    // Execute the ByteCode at pc and advance to the next one. 
+    protected void step(){
+        ByteCode code = program.getCode(pc);
+        code.execute(this);
+        // only dump if the current code is not DUMP and dumping is set. 
+        if (dumping && !(code instanceof DumpByteCode)){
+            dump(code);
+        }
+        pc++;
+    }
+    
+    // Print code and the state of the RunTimeStack after executing it. 
+    public void dump(ByteCode code){
+        System.out.println(code.toString());
+        runStack.dump();
+    }
+    
     public void incrementPc(){
         pc++;
     }
@@ -62,11 +79,102 @@ public class VirtualMachine {
         return pc;
     }
     
-    public void pushReturnAddrs(int n){
-        returnAddrs.push(n);
+    // Transfer control to the function whose LABEL is at address.  The 
+    // current pc is where the function returns to. 
+    public void callFunction(int address){
+        setReturnAddrs(pc);
+        pc = address;
     }
-    public int popReturnAddrs(){
-        return returnAddrs.pop();
+    
+    /**
+     * Transfer control to the function whose LABEL is at address from a CALL
+     * that the current function returns right after.  The function's frame
+     * takes the place of the current one and returns where the current one
+     * would have, so tail recursion runs in constant stack space.
+     *
+     * @return whether the current frame was reused.  The main program's
+     *  never is, and such a CALL is executed like any other.
+     */
+    public boolean tailCallFunction(int address){
+        if (!runStack.replaceFrame()){
+            setReturnAddrs(pc);
+            pc = address;
+            return false;
+        }
+        pc = address;
+        return true;
+    }
+
+    /**
+     * Run the function whose LABEL is at entry to completion, as if 
+     * ARGS numArgs and CALL had been executed, and pop its result.  This lets 
+     * code that runs outside of the VM's loop, like compiled functions, call 
+     * back into the program.  The numArgs arguments must be on top of the 
+     * stack. 
+     * 
+     * @return the function's return value. 
+     */
+    public int invokeFunction(int entry, int numArgs){
+        int savedPc = pc;
+        int frames = runStack.numberOfFrames();
+        runStack.newFrameOfSize(numArgs, savedPc);
+        // like after a CALL, the VM moves past the LABEL before executing
+        pc = entry + 1;
+        while (isRunning && runStack.numberOfFrames() > frames){
+            step();
+        }
+        pc = savedPc;
+        return runStack.pop();
+    }
+    
+    /**
+     * Run the function whose LABEL is at entry to completion on a 
+     * RunTimeStack of this VM's own, like a task does.  A HALT in the 
+     * function only ends the task. 
+     * 
+     * @return the function's return value. 
+     */
+    public int runFunction(int entry, int[] arguments){
+        pc = 0;
+        runStack = newRunTimeStack();
+        isRunning = true;
+        for (int argument : arguments) runStack.push(argument);
+        return invokeFunction(entry, arguments.length);
+    }
+    
+    // Start the function whose LABEL is at address as a task, with the 
+    // numArgs values on top of the stack as its arguments, and replace them 
+    // with the task's handle. 
+    public void spawnFunction(int address, int numArgs){
+        int[] arguments = new int[numArgs];
+        for (int i=numArgs-1; i>=0; i--) arguments[i] = runStack.pop();
+        runStack.push(scheduler().spawn(address, arguments));
+    }
+    
+    // Replace the handle of a task on top of the stack with its result. 
+    public void joinTask(){
+        runStack.push(scheduler().join(runStack.pop()));
+    }
+    
+    // Send the value on top of the stack on the channel below it. 
+    public void sendValue(){
+        int value = runStack.pop();
+        scheduler().send(runStack.pop(), value);
+    }
+    
+    // Replace the channel on top of the stack with a value received on it. 
+    public void receiveValue(){
+        runStack.push(scheduler().receive(runStack.pop()));
+    }
+    
+    private TaskScheduler scheduler(){
+        if (scheduler == null) scheduler = new TaskScheduler(program);
+        return scheduler;
+    }
+    
+    // Record n as the return address of the frame set up by the last ARGS.
+    public void setReturnAddrs(int n){
+        runStack.setReturnAddress(n);
     }
     
    
@@ -95,8 +203,9 @@ public class VirtualMachine {
         return runStack.getValueAtOffset(n);
     }
     
-    public void popRunStackFrame(){
-        runStack.popFrame();
+    // Pops the current frame and returns the address it was called from. 
+    public int popRunStackFrame(){
+        return runStack.popFrame();
     }
     
     public int storeRunStack(int offset){
@@ -119,5 +228,11 @@ public class VirtualMachine {
     public int getCurrentOffset(){
         return runStack.currentOffset();
     }
+    
+    // For codes that do the work of several others at once, like the 
+    // superinstructions, to work on the stack without going through the VM. 
+    public RunTimeStack getRunStack(){
+        return runStack;
+    }
 
 }
@@ -0,0 +1,121 @@
+package interpreter.analysis;
+
+/**
+ * What the FunctionAnalyzer found out about one function of a Program: where
+ * it starts, how many arguments it takes, which codes belong to it and how
+ * deep its part of the stack is in front of each of them.
+ *
+ * A function is entered through a CALL to the LABEL at its entry address and
+ * starts executing at the code after it.  The main program is the function
+ * with entry MAIN, which starts at address 0 and takes no arguments.
+ *
+ * Depths are counted from the function's frame pointer, so the arguments
+ * are at depths 0 .. arity-1 and a LOAD n reads the slot at depth n.
+ *
+ * @author admin
+ */
+public class Function {
+
+    public static final int MAIN = -1;
+
+    int entry;
+    String name;
+    int arity = -1;
+    int[] codes;
+    // the depth in front of each of the codes
+    int[] depthBefore;
+    int maxDepth;
+    int frameSize;
+    String problem;
+
+    Function(int entry, String name){
+        this.entry = entry;
+        this.name = name;
+    }
+
+    /**
+     * @return the address of the function's LABEL, or MAIN.
+     */
+    public int getEntry(){
+        return entry;
+    }
+
+    public boolean isMain(){
+        return entry == MAIN;
+    }
+
+    /**
+     * @return the address of the first code the function executes.
+     */
+    public int getStart(){
+        return entry + 1;
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    /**
+     * @return the number of arguments every CALL passes to the function, or
+     *  -1 if the call sites disagree.
+     */
+    public int getArity(){
+        return arity;
+    }
+
+    /**
+     * @return the addresses of the codes the function can reach without
+     *  following a CALL, in increasing order.
+     */
+    public int[] getCodes(){
+        return codes;
+    }
+
+    public boolean contains(int address){
+        return java.util.Arrays.binarySearch(codes, address) >= 0;
+    }
+
+    /**
+     * @return the depth of the function's frame in front of the code at
+     *  address, or -1 if the function never reaches it.
+     */
+    public int getDepthBefore(int address){
+        int i = java.util.Arrays.binarySearch(codes, address);
+        return (i >= 0 ? depthBefore[i] : -1);
+    }
+
+    /**
+     * @return the deepest the function's frame gets, arguments included.
+     */
+    public int getMaxDepth(){
+        return maxDepth;
+    }
+
+    /**
+     * @return the number of slots the function's arguments and variables
+     *  take at the bottom of its frame: the arity, or more when LOAD or STORE
+     *  use slots above the arguments.
+     */
+    public int getFrameSize(){
+        return frameSize;
+    }
+
+    /**
+     * @return whether the depth of the frame is known in front of every code,
+     *  which is what anything that compiles the function relies on.
+     */
+    public boolean isWellFormed(){
+        return problem == null;
+    }
+
+    /**
+     * @return why the function is not well formed, or null if it is.
+     */
+    public String getProblem(){
+        return problem;
+    }
+
+    public String toString(){
+        return name + "/" + arity;
+    }
+}
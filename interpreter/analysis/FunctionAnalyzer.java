@@ -0,0 +1,396 @@
+package interpreter.analysis;
+import interpreter.Program;
+import interpreter.ByteCode.*;
+import java.util.*;
+
+/**
+ * Splits a resolved Program into its functions.  Every CALL and SPAWN target
+ * is the entry of a function, and so is address 0 for the main program.
+ *
+ * For each function it follows the codes reachable from the function's
+ * start, without following CALLs, and works out the depth of the function's
+ * frame in front of each of them.  ARGS n; CALL f leaves the n arguments
+ * replaced by the result of f.  Functions whose depths do not add up, or
+ * that use codes the analysis does not know the stack effect of, are marked
+ * as not well formed.
+ *
+ * @author admin
+ */
+public class FunctionAnalyzer {
+
+    /**
+     * @return the functions of the program keyed by entry address, the main
+     *  program first and the others in the order of their entries.
+     */
+    public static Map<Integer, Function> analyze(Program program){
+        int size = program.getNumberOfByteCodes();
+        TreeMap<Integer, Function> called = new TreeMap<Integer, Function>();
+
+        for (int i=0; i<size; i++){
+            ByteCode code = program.getCode(i);
+            int entry, arity;
+            if (code instanceof CallByteCode){
+                entry = ((CallByteCode)code).targetAddrs;
+                arity = argumentsPassedBy(program, i);
+            } else if (code instanceof SpawnByteCode){
+                entry = ((SpawnByteCode)code).targetAddrs;
+                arity = ((SpawnByteCode)code).numArguments();
+            } else continue;
+
+            Function function = called.get(entry);
+            if (function == null){
+                function = new Function(entry, nameOf(program, entry));
+                function.arity = arity;
+                called.put(entry, function);
+            } else if (function.arity != arity){
+                function.problem = "called with " + function.arity + " and with "
+                        + arity + " arguments";
+            }
+        }
+
+        Map<Integer, Function> functions = new LinkedHashMap<Integer, Function>();
+        Function main = new Function(Function.MAIN, "main");
+        main.arity = 0;
+        functions.put(Function.MAIN, main);
+        functions.putAll(called);
+
+        // the depths in front of the codes, for one function at a time
+        int[] depths = new int[size];
+        Arrays.fill(depths, -1);
+        for (Function function : functions.values()){
+            if (function.entry < Function.MAIN || function.entry >= size){
+                function.problem = "entry " + function.entry + " is outside the program";
+                function.codes = new int[0];
+                function.depthBefore = new int[0];
+                continue;
+            }
+            followCodes(program, function, depths);
+        }
+        return functions;
+    }
+
+    /**
+     * @return the number of arguments set up by the ARGS in front of the
+     *  CALL at address, 0 if there is none.
+     */
+    public static int argumentsPassedBy(Program program, int address){
+        if (!hasArgs(program, address)) return 0;
+        return ((ArgsByteCode)program.getCode(skipDumps(program, address-1, -1))).numArguments();
+    }
+
+    /**
+     * @return whether an ARGS sets up the frame of the CALL at address.  A
+     *  CALL without one runs the function in an empty frame of its own.
+     */
+    public static boolean hasArgs(Program program, int address){
+        int args = skipDumps(program, address-1, -1);
+        return args >= 0 && program.getCode(args) instanceof ArgsByteCode;
+    }
+
+    // DUMP ON and DUMP OFF can sit between an ARGS and its CALL.
+    // @return the first address from address on, going in direction step,
+    //  that is not a DUMP
+    private static int skipDumps(Program program, int address, int step){
+        while (address >= 0 && address < program.getNumberOfByteCodes()
+                && program.getCode(address) instanceof DumpByteCode){
+            address += step;
+        }
+        return address;
+    }
+
+    private static String nameOf(Program program, int entry){
+        if (entry >= 0 && entry < program.getNumberOfByteCodes()
+                && program.getCode(entry) instanceof LabelByteCode){
+            return ((LabelByteCode)program.getCode(entry)).label;
+        }
+        return "@" + entry;
+    }
+
+    // Follow the function's codes with depths, which is -1 everywhere, and
+    // leave it that way for the next function.
+    private static void followCodes(Program program, Function function, int[] depths){
+        int size = program.getNumberOfByteCodes();
+        // the codes reached, in the order they were reached
+        int[] reached = new int[16];
+        int count = 0;
+
+        Stack<Integer> pending = new Stack<Integer>();
+        int start = function.getStart();
+        int initialDepth = Math.max(function.arity, 0);
+        if (start < size){
+            depths[start] = initialDepth;
+            reached[count++] = start;
+            pending.push(start);
+        }
+        function.maxDepth = initialDepth;
+
+        while (!pending.empty() && function.problem == null){
+            int i = pending.pop();
+            ByteCode code = program.getCode(i);
+            int depth = depths[i];
+            int after = depthAfter(program, i, depth);
+
+            if (after < 0){
+                function.problem = "cannot execute " + describe(code) + " at " + i
+                        + " with " + depth + " values in the frame";
+                break;
+            }
+            // the main program has no frame to return from
+            if (function.isMain() && code instanceof ReturnByteCode){
+                function.problem = describe(code) + " at " + i + " is not in a function";
+                break;
+            }
+            function.maxDepth = Math.max(function.maxDepth, after);
+
+            for (int next : successors(program, i)){
+                if (next < 0 || next >= size){
+                    function.problem = describe(code) + " at " + i + " runs past the end of the program";
+                } else if (depths[next] == -1){
+                    depths[next] = after;
+                    if (count == reached.length) reached = Arrays.copyOf(reached, count*2);
+                    reached[count++] = next;
+                    pending.push(next);
+                } else if (depths[next] != after){
+                    function.problem = "the frame holds " + depths[next] + " and " + after
+                            + " values in front of " + describe(program.getCode(next)) + " at " + next;
+                }
+            }
+        }
+
+        function.codes = Arrays.copyOf(reached, count);
+        Arrays.sort(function.codes);
+        function.depthBefore = new int[count];
+        for (int i=0; i<count; i++){
+            function.depthBefore[i] = depths[function.codes[i]];
+            depths[function.codes[i]] = -1;
+        }
+
+        function.frameSize = initialDepth;
+        for (int address : function.codes){
+            ByteCode code = program.getCode(address);
+            int offset = -1;
+            if (code instanceof LoadByteCode) offset = ((LoadByteCode)code).offset();
+            else if (code instanceof StoreByteCode) offset = ((StoreByteCode)code).offset();
+            function.frameSize = Math.max(function.frameSize, offset+1);
+        }
+    }
+
+    /**
+     * @return the depth of the frame after the code at address runs with
+     *  depth values in it, or -1 if the code cannot run with that depth or
+     *  its effect on the stack is unknown.
+     */
+    public static int depthAfter(Program program, int address, int depth){
+        ByteCode code = program.getCode(address);
+        if (code instanceof LitByteCode || code instanceof ReadByteCode) return depth+1;
+        if (code instanceof LoadByteCode){
+            int offset = ((LoadByteCode)code).offset();
+            return (offset >= 0 && offset < depth ? depth+1 : -1);
+        }
+        if (code instanceof StoreByteCode){
+            int offset = ((StoreByteCode)code).offset();
+            return (offset >= 0 && offset < depth-1 ? depth-1 : -1);
+        }
+        if (code instanceof PopByteCode){
+            int levels = ((PopByteCode)code).numLevels();
+            return (levels >= 0 && levels <= depth ? depth-levels : -1);
+        }
+        if (code instanceof BopByteCode) return (depth >= 2 ? depth-1 : -1);
+        if (code instanceof FalseBranchByteCode) return (depth >= 1 ? depth-1 : -1);
+        if (code instanceof WriteByteCode || code instanceof ReturnByteCode) {
+            return (depth >= 1 ? depth : -1);
+        }
+        if (code instanceof ArgsByteCode){
+            int arguments = ((ArgsByteCode)code).numArguments();
+            int call = skipDumps(program, address+1, 1);
+            boolean called = call < program.getNumberOfByteCodes()
+                    && program.getCode(call) instanceof CallByteCode;
+            return (called && arguments >= 0 && arguments <= depth ? depth : -1);
+        }
+        if (code instanceof CallByteCode){
+            int arguments = argumentsPassedBy(program, address);
+            return (arguments <= depth ? depth-arguments+1 : -1);
+        }
+        if (code instanceof SpawnByteCode){
+            int arguments = ((SpawnByteCode)code).numArguments();
+            return (arguments >= 0 && arguments <= depth ? depth-arguments+1 : -1);
+        }
+        if (code instanceof JoinByteCode || code instanceof ReceiveByteCode){
+            return (depth >= 1 ? depth : -1);
+        }
+        if (code instanceof SendByteCode) return (depth >= 2 ? depth-2 : -1);
+        if (code instanceof GoToByteCode || code instanceof LabelByteCode
+                || code instanceof HaltByteCode || code instanceof DumpByteCode
+                || code instanceof LineByteCode || code instanceof FunctionByteCode
+                || code instanceof FormalByteCode){
+            return depth;
+        }
+        if (code instanceof StackEffect) return ((StackEffect)code).depthAfter(depth);
+        return -1;
+    }
+
+    /**
+     * @return the addresses of the codes that can run next after the code
+     *  at address, without following CALLs into the function they call.
+     *  The VM moves past the target of a branch before running anything, so
+     *  a branch to t continues at t+1.
+     */
+    public static int[] successors(Program program, int address){
+        ByteCode code = program.getCode(address);
+        if (code instanceof GoToByteCode) return new int[]{((GoToByteCode)code).targetAddrs+1};
+        if (code instanceof FalseBranchByteCode){
+            return new int[]{address+1, ((FalseBranchByteCode)code).targetAddrs+1};
+        }
+        if (code instanceof ReturnByteCode || code instanceof HaltByteCode) return new int[0];
+        return new int[]{address+1};
+    }
+
+    /**
+     * @return whether the function is well formed and only uses the codes of
+     *  a plain program run without the debugger or DUMP, which is what the
+     *  compilers can translate.
+     */
+    public static boolean isCompilable(Program program, Function function){
+        if (!function.isWellFormed() || function.arity < 0) return false;
+
+        for (int address : function.codes){
+            ByteCode code = program.getCode(address);
+            boolean plain = code instanceof LitByteCode || code instanceof LoadByteCode
+                    || code instanceof StoreByteCode || code instanceof PopByteCode
+                    || code instanceof BopByteCode || code instanceof ArgsByteCode
+                    || code instanceof CallByteCode || code instanceof ReturnByteCode
+                    || code instanceof GoToByteCode || code instanceof FalseBranchByteCode
+                    || code instanceof LabelByteCode || code instanceof ReadByteCode
+                    || code instanceof WriteByteCode || code instanceof HaltByteCode;
+            if (!plain || code instanceof DebugCallCode) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the entries of the functions that contain a HALT, or call a
+     *  function that may execute one.  Functions that are not well formed are
+     *  included, since not all of their codes are known.
+     */
+    public static Set<Integer> functionsThatMayHalt(Program program, Map<Integer, Function> functions){
+        Set<Integer> halting = new HashSet<Integer>();
+        boolean changed = true;
+        while (changed){
+            changed = false;
+            for (Function function : functions.values()){
+                if (halting.contains(function.entry)) continue;
+                if (!function.isWellFormed()){
+                    halting.add(function.entry);
+                    changed = true;
+                    continue;
+                }
+                for (int address : function.codes){
+                    ByteCode code = program.getCode(address);
+                    if (code instanceof HaltByteCode || (code instanceof CallByteCode
+                            && halting.contains(((CallByteCode)code).targetAddrs))){
+                        halting.add(function.entry);
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return halting;
+    }
+
+    /**
+     * @return the entries of the functions whose result only depends on
+     *  their arguments: well formed functions other than the main program
+     *  that do not READ, WRITE, HALT or DUMP, and only call functions that
+     *  are pure themselves.  A well formed function's LOADs and STOREs stay
+     *  inside its own frame, so it cannot touch anything else.
+     */
+    public static Set<Integer> pureFunctions(Program program, Map<Integer, Function> functions){
+        Set<Integer> pure = new HashSet<Integer>();
+        for (Function function : functions.values()){
+            if (!function.isMain() && isCompilable(program, function)) pure.add(function.entry);
+        }
+        // start from every candidate and drop the impure ones until nothing
+        // changes, so that recursive functions can be pure
+        boolean changed = true;
+        while (changed){
+            changed = false;
+            for (Function function : functions.values()){
+                if (!pure.contains(function.entry)) continue;
+                for (int address : function.codes){
+                    ByteCode code = program.getCode(address);
+                    boolean impure = code instanceof ReadByteCode || code instanceof WriteByteCode
+                            || code instanceof HaltByteCode || (code instanceof CallByteCode
+                            && !pure.contains(((CallByteCode)code).targetAddrs));
+                    if (impure){
+                        pure.remove(function.entry);
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return pure;
+    }
+
+    /**
+     * Find the CALLs of pure functions whose result is only used as the
+     * first operand of a BOP whose second operand is the result of another
+     * CALL, like the first CALL in  fib(n-2) + fib(n-1).  In between only
+     * LIT, LOAD, BOP, ARGS and CALL may run, and none of them may use the
+     * first result, so the first CALL can run at the same time as the code
+     * up to the BOP.
+     *
+     * @param pure the entries of the pure functions
+     * @return the address of the BOP that needs the result of each such
+     *  CALL, keyed by the address of the CALL.
+     */
+    public static Map<Integer, Integer> independentCalls(Program program, Set<Integer> pure){
+        Map<Integer, Integer> joins = new TreeMap<Integer, Integer>();
+        int size = program.getNumberOfByteCodes();
+        for (int i=1; i<size; i++){
+            ByteCode code = program.getCode(i);
+            if (!(code instanceof CallByteCode) || ((CallByteCode)code).isTailCall()
+                    || !pure.contains(((CallByteCode)code).targetAddrs)
+                    || !(program.getCode(i-1) instanceof ArgsByteCode)){
+                continue;
+            }
+            int join = operandOfBop(program, i+1);
+            if (join >= 0) joins.put(i, join);
+        }
+        return joins;
+    }
+
+    // Follow the codes from address on while the value below them is left
+    // alone.  @return the address of the BOP that takes that value as its
+    // first operand and the result of a CALL as its second, or -1.
+    private static int operandOfBop(Program program, int address){
+        int above = 0;
+        int arguments = -1;
+        for (int i=address; i<program.getNumberOfByteCodes(); i++){
+            ByteCode code = program.getCode(i);
+            if (arguments >= 0 && !(code instanceof CallByteCode)) return -1;
+            if (code instanceof LitByteCode || code instanceof LoadByteCode){
+                above++;
+            } else if (code instanceof BopByteCode){
+                if (above == 1) return (program.getCode(i-1) instanceof CallByteCode ? i : -1);
+                if (above < 1) return -1;
+                above--;
+            } else if (code instanceof ArgsByteCode){
+                arguments = ((ArgsByteCode)code).numArguments();
+                if (arguments < 0 || arguments > above) return -1;
+            } else if (code instanceof CallByteCode && !((CallByteCode)code).isTailCall()){
+                above = above - Math.max(arguments, 0) + 1;
+                arguments = -1;
+            } else {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static String describe(ByteCode code){
+        String text = code.toString().trim();
+        return (text.length() > 0 ? text : code.getClass().getSimpleName());
+    }
+}
@@ -0,0 +1,121 @@
+package interpreter.analysis;
+import interpreter.ByteCodeLoadException;
+import interpreter.Program;
+import interpreter.ByteCode.*;
+import java.util.*;
+
+/**
+ * Checks a resolved Program before it runs, so that a malformed program is
+ * rejected with the address of what is wrong with it instead of failing
+ * somewhere deep in the RunTimeStack.
+ *
+ * The program is verified when
+ *   - it has a code at address 0 to start with,
+ *   - every CALL, SPAWN, GOTO and FALSEBRANCH goes to an existing LABEL,
+ *   - the main program never runs a RETURN, having no caller to return to,
+ *     and
+ *   - every function, the main program included, is well formed as far as
+ *     the FunctionAnalyzer is concerned: each code runs with the same number
+ *     of values in the frame however it is reached, no code takes more
+ *     values off the frame than there are, and no LOAD or STORE reaches
+ *     outside of it.
+ *
+ * The frame size and deepest frame of every function are kept, along with
+ * the deepest the whole stack gets through calls that do not recurse.
+ *
+ * @author admin
+ */
+public class Verifier {
+
+    private Program program;
+    private Map<Integer, Function> functions;
+    private int stackDepth;
+
+    private Verifier(Program program){
+        this.program = program;
+    }
+
+    /**
+     * @return the Verifier's findings about the program.
+     * @throws ByteCodeLoadException describing the first problem found.
+     */
+    public static Verifier verify(Program program){
+        if (program.getNumberOfByteCodes() == 0){
+            throw new ByteCodeLoadException("there is no code at address 0 to start with");
+        }
+        Verifier verifier = new Verifier(program);
+        verifier.checkTargets();
+        verifier.functions = FunctionAnalyzer.analyze(program);
+        for (Function function : verifier.functions.values()){
+            if (!function.isWellFormed()){
+                throw new ByteCodeLoadException("function " + function.getName() + ": "
+                        + function.getProblem());
+            }
+        }
+        verifier.stackDepth = verifier.stackDepthOf(verifier.functions.get(Function.MAIN),
+                new HashMap<Integer, Integer>(), new HashSet<Integer>());
+        return verifier;
+    }
+
+    private void checkTargets(){
+        for (int i=0; i<program.getNumberOfByteCodes(); i++){
+            ByteCode code = program.getCode(i);
+            if (!(code instanceof BranchingByteCode)) continue;
+            BranchingByteCode branch = (BranchingByteCode)code;
+            if (branch.targetAddress() == Program.UNRESOLVED){
+                throw new ByteCodeLoadException(code + " at " + i + ": there is no LABEL " + branch.targetLabel());
+            }
+        }
+    }
+
+    // The deepest the stack gets while the function runs, counted from its
+    // frame pointer.  A function that is already being looked at is a
+    // recursive call, which only adds its own frame.
+    private int stackDepthOf(Function function, HashMap<Integer, Integer> known, Set<Integer> active){
+        Integer depth = known.get(function.getEntry());
+        if (depth != null) return depth;
+        if (!active.add(function.getEntry())) return function.getMaxDepth();
+
+        int deepest = function.getMaxDepth();
+        for (int address : function.getCodes()){
+            ByteCode code = program.getCode(address);
+            if (!(code instanceof CallByteCode)) continue;
+            Function callee = functions.get(((CallByteCode)code).targetAddrs);
+            int base = function.getDepthBefore(address) - FunctionAnalyzer.argumentsPassedBy(program, address);
+            deepest = Math.max(deepest, base + stackDepthOf(callee, known, active));
+        }
+        active.remove(function.getEntry());
+        known.put(function.getEntry(), deepest);
+        return deepest;
+    }
+
+    /**
+     * @return the functions of the program, as the FunctionAnalyzer found
+     *  them.
+     */
+    public Map<Integer, Function> getFunctions(){
+        return functions;
+    }
+
+    /**
+     * @return the deepest the RunTimeStack gets, not counting recursive
+     *  calls, which can take it deeper.
+     */
+    public int getStackDepth(){
+        return stackDepth;
+    }
+
+    /**
+     * @return a line per function with its arity, frame size and deepest
+     *  frame, and a last line with the depth of the whole stack.
+     */
+    public String report(){
+        StringBuilder out = new StringBuilder();
+        for (Function function : functions.values()){
+            out.append(function).append(": frame size ").append(function.getFrameSize())
+               .append(", max depth ").append(function.getMaxDepth()).append('\n');
+        }
+        out.append("stack depth ").append(stackDepth).append(" without recursion\n");
+        return out.toString();
+    }
+}
@@ -0,0 +1,163 @@
+package interpreter.compiler;
+import interpreter.Program;
+import interpreter.analysis.Function;
+import interpreter.analysis.FunctionAnalyzer;
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.jar.*;
+import javax.tools.*;
+
+/**
+ * Compiles a whole X program ahead of time into a jar that runs on its own:
+ *  java -jar fib.jar
+ * behaves like running fib.x.cod on the VirtualMachine, without loading or
+ * interpreting anything.
+ *
+ * A function's calls of itself right before it returns are loops in the
+ * jar, as they are on the VM.  Other calls are Java calls up to
+ * AotSourceGenerator.MAX_DEPTH deep; deeper ones run in frames on the heap,
+ * as on the VM, so the Java stack stays bounded.
+ *
+ * The manifest of the jar records the SHA-256 of the .cod file it was built
+ * from and of the optimizations it was built with, so that isUpToDate() can
+ * tell when neither has changed since its jar was built.
+ *
+ * @author admin
+ */
+public class AotCompiler {
+
+    public static final String CLASS_NAME = "XProgram";
+    public static final Attributes.Name SOURCE_HASH = new Attributes.Name("X-Program-SHA-256");
+
+    /**
+     * @return the SHA-256 of the file's contents, in hex.
+     */
+    public static String hashOf(String fileName) throws IOException {
+        return hashOf(fileName, "");
+    }
+
+    /**
+     * @param options the optimizations the program is compiled with, like
+     *  "-inline -O2"
+     * @return the SHA-256 of the file's contents followed by the options,
+     *  in hex.
+     */
+    public static String hashOf(String fileName, String options) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e){
+            throw new IOException(e);
+        }
+        InputStream in = new FileInputStream(fileName);
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0){
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        digest.update(options.getBytes("UTF-8"));
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()){
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @return whether jarName exists and was built from a program whose
+     *  hash is sourceHash.
+     */
+    public static boolean isUpToDate(String jarName, String sourceHash){
+        if (!new File(jarName).isFile()) return false;
+        try {
+            JarFile jar = new JarFile(jarName);
+            try {
+                Manifest manifest = jar.getManifest();
+                return manifest != null
+                        && sourceHash.equals(manifest.getMainAttributes().get(SOURCE_HASH));
+            } finally {
+                jar.close();
+            }
+        } catch (IOException e){
+            return false;
+        }
+    }
+
+    /**
+     * Compile the program into jarName.
+     *
+     * @throws IllegalArgumentException if the program cannot be compiled.
+     */
+    public static void compile(Program program, String sourceHash, String jarName) throws IOException {
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if (javac == null){
+            throw new IllegalArgumentException("no Java compiler is available, run on a JDK");
+        }
+
+        String source = generateClass(program, sourceHash);
+        StringWriter errors = new StringWriter();
+        byte[] classFile = JitCompiler.compileSource(javac, CLASS_NAME, source, errors);
+        if (classFile == null){
+            throw new IllegalArgumentException("the generated class does not compile: " + errors);
+        }
+
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.put(Attributes.Name.MAIN_CLASS, CLASS_NAME);
+        attributes.put(SOURCE_HASH, sourceHash);
+
+        JarOutputStream jar = new JarOutputStream(new FileOutputStream(jarName), manifest);
+        try {
+            jar.putNextEntry(new JarEntry(CLASS_NAME + ".class"));
+            jar.write(classFile);
+            jar.closeEntry();
+        } finally {
+            jar.close();
+        }
+    }
+
+    /**
+     * @return the source of the class the program compiles to.
+     */
+    public static String generateClass(Program program, String sourceHash){
+        Map<Integer, Function> functions = FunctionAnalyzer.analyze(program);
+        AotSourceGenerator generator = new AotSourceGenerator(program, functions);
+        for (Function function : functions.values()){
+            if (!function.isWellFormed()){
+                throw new IllegalArgumentException("cannot compile " + function.getName()
+                        + ": " + function.getProblem());
+            }
+            if (!generator.canCompile(function)){
+                throw new IllegalArgumentException("cannot compile " + function.getName()
+                        + ": it uses codes that only the VirtualMachine can run");
+            }
+        }
+
+        StringBuilder source = new StringBuilder();
+        source.append("// Compiled ahead of time from an X program with SHA-256 ")
+              .append(sourceHash).append("\n");
+        source.append("public class ").append(CLASS_NAME).append(" {\n\n");
+        source.append("    public static void main(String[] args) {\n");
+        source.append("        run(0);\n");
+        source.append("    }\n\n");
+        source.append("    static int read() {\n");
+        source.append("        System.out.print(\"Enter an integer: \");\n");
+        source.append("        return new java.util.Scanner(System.in).nextInt();\n");
+        source.append("    }\n\n");
+        for (Function function : functions.values()){
+            generator.generateMethod(source, function, AotSourceGenerator.methodName(function));
+            source.append("\n");
+        }
+        generator.generateFrames(source);
+        source.append("}\n");
+        return source.toString();
+    }
+}
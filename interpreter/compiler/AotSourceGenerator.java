@@ -0,0 +1,224 @@
+package interpreter.compiler;
+import interpreter.Program;
+import interpreter.analysis.Function;
+import interpreter.analysis.FunctionAnalyzer;
+import interpreter.ByteCode.*;
+import java.util.*;
+
+/**
+ * The JavaSourceGenerator used by the AotCompiler.  The whole program becomes
+ * one class that needs nothing but the JDK: every function is a static
+ * method, every CALL a direct call of one, READ goes to a method of the class
+ * that prompts and reads like ReadByteCode does, and HALT stops the JVM.
+ *
+ * Every method takes the number of calls under it, and makes its CALLs
+ * directly only while that is below MAX_DEPTH.  A deeper call goes to the
+ * class's invoke method, which runs the program's codes the way the VM does,
+ * with its frames in an array instead of on the Java stack, so the program
+ * recurses as deep as it does on the VM.
+ *
+ * @author admin
+ */
+public class AotSourceGenerator extends JavaSourceGenerator {
+
+    // the most compiled methods running inside one another
+    public static final int MAX_DEPTH = 512;
+
+    // what invoke does with each code, and the BOP operators by number
+    private static final int NOP = 0, LIT = 1, LOAD = 2, STORE = 3, POP = 4, BOP = 5,
+            ARGS = 6, CALL = 7, TAIL_CALL = 8, RETURN = 9, GOTO = 10, FALSEBRANCH = 11,
+            READ = 12, WRITE = 13, HALT = 14, BARE_CALL = 15, BARE_TAIL_CALL = 16;
+    private static final String[] OPERATORS = {"+", "-", "*", "/", "==", "!=", "<", "<=",
+            ">", ">=", "|", "&"};
+    // the longest string literal the codes are written in
+    private static final int CHUNK = 8192;
+
+    public AotSourceGenerator(Program program, Map<Integer, Function> functions){
+        super(program, functions);
+    }
+
+    /**
+     * @return the name of the method the function is compiled to.
+     */
+    public static String methodName(Function function){
+        return (function.isMain() ? "run" : "f" + function.getEntry());
+    }
+
+    protected String parameters(Function function){
+        StringBuilder parameters = new StringBuilder("int depth");
+        for (int slot=0; slot<function.getArity(); slot++){
+            parameters.append(", int s").append(slot);
+        }
+        return parameters.toString();
+    }
+
+    protected void generateCall(StringBuilder out, Function caller, String name,
+            int entry, int firstSlot, int numArgs){
+        out.append("if (depth < ").append(MAX_DEPTH).append(") s").append(firstSlot).append(" = ")
+           .append(methodName(functions.get(entry))).append("(depth+1");
+        for (int slot=firstSlot; slot<firstSlot+numArgs; slot++){
+            out.append(", s").append(slot);
+        }
+        out.append("); else { ");
+        for (int slot=firstSlot; slot<firstSlot+numArgs; slot++){
+            out.append("push(s").append(slot).append("); ");
+        }
+        out.append("s").append(firstSlot).append(" = invoke(")
+           .append(entry).append(", ").append(numArgs).append("); }");
+    }
+
+    /**
+     * Append the invoke method, which runs the calls made deeper than
+     * MAX_DEPTH, and the codes of the compiled functions it runs, two ints
+     * per address: what to do and its operand.
+     */
+    public void generateFrames(StringBuilder out){
+        int[] codes = new int[2*program.getNumberOfByteCodes()];
+        for (Function function : functions.values()){
+            for (int address : function.getCodes()){
+                encode(program, address, codes);
+            }
+        }
+        StringBuilder text = new StringBuilder();
+        for (int value : codes) text.append(value).append(' ');
+
+        out.append("    // the codes of the program, two ints per address\n");
+        out.append("    static final int[] CODES = decode(new String[]{\n");
+        for (int start=0; start<text.length(); ){
+            int end = Math.min(start+CHUNK, text.length());
+            while (end < text.length() && text.charAt(end-1) != ' ') end++;
+            out.append("        \"").append(text, start, end).append("\",\n");
+            start = end;
+        }
+        out.append("    });\n\n");
+        out.append("    static int[] decode(String[] chunks) {\n");
+        out.append("        String[] values = String.join(\"\", chunks).trim().split(\" \");\n");
+        out.append("        int[] codes = new int[values.length];\n");
+        out.append("        for (int i=0; i<values.length; i++) codes[i] = Integer.parseInt(values[i]);\n");
+        out.append("        return codes;\n");
+        out.append("    }\n\n");
+
+        out.append("    // the values of the calls invoke runs, and two ints per call: the\n");
+        out.append("    // caller's frame pointer and the address it returns to\n");
+        out.append("    static int[] stack = new int[1024];\n");
+        out.append("    static int sp;\n");
+        out.append("    static int[] frames = new int[256];\n");
+        out.append("    static int fc;\n\n");
+        out.append("    static void push(int value) {\n");
+        out.append("        if (sp == stack.length) stack = java.util.Arrays.copyOf(stack, 2*sp);\n");
+        out.append("        stack[sp++] = value;\n");
+        out.append("    }\n\n");
+        out.append("    static void pushFrame(int value) {\n");
+        out.append("        if (fc == frames.length) frames = java.util.Arrays.copyOf(frames, 2*fc);\n");
+        out.append("        frames[fc++] = value;\n");
+        out.append("    }\n\n");
+        out.append("    // Run the function at entry on the numArgs values pushed last, the way\n");
+        out.append("    // the VM does, and return its result.\n");
+        out.append("    static int invoke(int entry, int numArgs) {\n");
+        out.append("        int fp = sp - numArgs;\n");
+        out.append("        int bottom = fc;\n");
+        out.append("        int pc = entry;\n");
+        out.append("        while (true) {\n");
+        out.append("            int operand = CODES[2*pc+1];\n");
+        out.append("            switch (CODES[2*pc]) {\n");
+        out.append("            case ").append(LIT).append(": push(operand); break;\n");
+        out.append("            case ").append(LOAD).append(": push(stack[fp+operand]); break;\n");
+        out.append("            case ").append(STORE).append(": stack[fp+operand] = stack[--sp]; break;\n");
+        out.append("            case ").append(POP).append(": sp -= operand; break;\n");
+        out.append("            case ").append(BOP).append(": {\n");
+        out.append("                int b = stack[--sp], a = stack[sp-1];\n");
+        out.append("                switch (operand) {\n");
+        for (int i=0; i<OPERATORS.length; i++){
+            out.append("                case ").append(i).append(": stack[sp-1] = ")
+               .append(operation(OPERATORS[i], "a", "b")).append("; break;\n");
+        }
+        out.append("                }\n");
+        out.append("                break;\n");
+        out.append("            }\n");
+        out.append("            case ").append(ARGS).append(": pushFrame(fp); fp = sp - operand; break;\n");
+        out.append("            case ").append(CALL).append(": pushFrame(pc); pc = operand; break;\n");
+        out.append("            // a CALL with no ARGS in front of it, in an empty frame of its own\n");
+        out.append("            case ").append(BARE_CALL).append(": pushFrame(fp); fp = sp; pushFrame(pc); pc = operand; break;\n");
+        out.append("            case ").append(BARE_TAIL_CALL).append(": sp = fp; pc = operand; break;\n");
+        out.append("            case ").append(TAIL_CALL).append(": {\n");
+        out.append("                // the new frame takes the place of the caller's\n");
+        out.append("                int callerFp = frames[--fc];\n");
+        out.append("                int size = sp - fp;\n");
+        out.append("                System.arraycopy(stack, fp, stack, callerFp, size);\n");
+        out.append("                fp = callerFp;\n");
+        out.append("                sp = fp + size;\n");
+        out.append("                pc = operand;\n");
+        out.append("                break;\n");
+        out.append("            }\n");
+        out.append("            case ").append(RETURN).append(": {\n");
+        out.append("                int result = stack[--sp];\n");
+        out.append("                sp = fp;\n");
+        out.append("                if (fc == bottom) return result;\n");
+        out.append("                pc = frames[--fc];\n");
+        out.append("                fp = frames[--fc];\n");
+        out.append("                push(result);\n");
+        out.append("                break;\n");
+        out.append("            }\n");
+        out.append("            case ").append(GOTO).append(": pc = operand; break;\n");
+        out.append("            case ").append(FALSEBRANCH).append(": if (stack[--sp] == 0) pc = operand; break;\n");
+        out.append("            case ").append(READ).append(": push(read()); break;\n");
+        out.append("            case ").append(WRITE).append(": System.out.println(stack[sp-1]); break;\n");
+        out.append("            case ").append(HALT).append(": System.out.flush(); System.exit(0); break;\n");
+        out.append("            }\n");
+        out.append("            pc++;\n");
+        out.append("        }\n");
+        out.append("    }\n");
+    }
+
+    // Put what invoke does with the code at address, and its operand, in codes.
+    private static void encode(Program program, int address, int[] codes){
+        ByteCode code = program.getCode(address);
+        int op = NOP, operand = 0;
+        if (code instanceof LitByteCode){
+            op = LIT; operand = ((LitByteCode)code).value();
+        } else if (code instanceof LoadByteCode){
+            op = LOAD; operand = ((LoadByteCode)code).offset();
+        } else if (code instanceof StoreByteCode){
+            op = STORE; operand = ((StoreByteCode)code).offset();
+        } else if (code instanceof PopByteCode){
+            op = POP; operand = ((PopByteCode)code).numLevels();
+        } else if (code instanceof BopByteCode){
+            op = BOP; operand = Arrays.asList(OPERATORS).indexOf(((BopByteCode)code).operator());
+        } else if (code instanceof ArgsByteCode){
+            op = ARGS; operand = ((ArgsByteCode)code).numArguments();
+        } else if (code instanceof CallByteCode){
+            op = (((CallByteCode)code).isTailCall() ? TAIL_CALL : CALL);
+            if (!FunctionAnalyzer.hasArgs(program, address)){
+                op = (op == TAIL_CALL ? BARE_TAIL_CALL : BARE_CALL);
+            }
+            operand = ((CallByteCode)code).targetAddrs;
+        } else if (code instanceof ReturnByteCode){
+            op = RETURN;
+        } else if (code instanceof GoToByteCode){
+            op = GOTO; operand = ((GoToByteCode)code).targetAddrs;
+        } else if (code instanceof FalseBranchByteCode){
+            op = FALSEBRANCH; operand = ((FalseBranchByteCode)code).targetAddrs;
+        } else if (code instanceof ReadByteCode){
+            op = READ;
+        } else if (code instanceof WriteByteCode){
+            op = WRITE;
+        } else if (code instanceof HaltByteCode){
+            op = HALT;
+        }
+        codes[2*address] = op;
+        codes[2*address+1] = operand;
+    }
+
+    protected String readExpression(){
+        return "read()";
+    }
+
+    protected boolean canHalt(Function function){
+        return true;
+    }
+
+    protected String haltStatement(Function function){
+        if (function.isMain()) return "return 0;";
+        return "System.out.flush(); System.exit(0); return 0;";
+    }
+}
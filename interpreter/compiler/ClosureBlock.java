@@ -0,0 +1,34 @@
+package interpreter.compiler;
+
+/**
+ * A basic block compiled by the ClosureCompiler: the statements that run one
+ * after the other, then the transfer that picks the block to run next.
+ *
+ * A block that ends in a CALL has no block to run next; its ClosureFunction
+ * calls the callee on the arguments instead, puts the result in slot result
+ * and goes on with the block after.
+ *
+ * @author admin
+ */
+public class ClosureBlock {
+
+    ClosureCompiler.Statement[] statements;
+    ClosureCompiler.Transfer transfer;
+
+    ClosureFunction callee;
+    ClosureCompiler.Expression[] arguments;
+    int result;
+    boolean isTailCall;
+    ClosureBlock after;
+
+    /**
+     * @return the block to run next, or null once the function returned or
+     *  has a call to make.
+     */
+    public ClosureBlock run(int[] frame){
+        for (ClosureCompiler.Statement statement : statements){
+            statement.run(frame);
+        }
+        return transfer.next(frame);
+    }
+}
@@ -0,0 +1,318 @@
+package interpreter.compiler;
+import interpreter.Program;
+import interpreter.analysis.Function;
+import interpreter.analysis.FunctionAnalyzer;
+import interpreter.ByteCode.*;
+import java.util.*;
+
+/**
+ * Compiles the functions of an X program into closures.
+ *
+ * Each basic block of a function becomes a ClosureBlock.  The values a block
+ * computes with LIT, LOAD and BOP are not pushed anywhere: they are kept as a
+ * tree of Expressions, so  LOAD 0; LIT 1; BOP +  becomes one lambda that
+ * adds 1 to slot 0 of the frame.  A value is only written to its slot in the
+ * frame when a STORE, READ, WRITE, CALL or the end of the block needs it
+ * there.  Branches and calls hold the ClosureBlock or ClosureFunction they go
+ * to, so nothing is looked up while the program runs.
+ *
+ * A CALL ends its block, and the ClosureFunction running the caller makes the
+ * call itself, keeping the caller's frame on a stack of its own rather than on
+ * the Java stack, so recursion can go as deep as it can on the VM.  A tail
+ * call does not keep the caller's frame at all.
+ *
+ * Nothing here generates classes, so compiling is cheap enough to do for a
+ * whole program before running it.
+ *
+ * @author admin
+ */
+public class ClosureCompiler {
+
+    public interface Expression {
+        int eval(int[] frame);
+    }
+
+    public interface Statement {
+        void run(int[] frame);
+    }
+
+    /**
+     * Ends a ClosureBlock: returns the block to run next, or null when the
+     * function returns.
+     */
+    public interface Transfer {
+        ClosureBlock next(int[] frame);
+    }
+
+    /**
+     * Thrown by HALT to stop the program from however deep in the calls it is.
+     */
+    public static class Halt extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Halt(){
+            super(null, null, false, false);
+        }
+    }
+
+    protected Program program;
+    protected Map<Integer, Function> functions;
+    private HashMap<Integer, ClosureFunction> compiled = new HashMap<Integer, ClosureFunction>();
+
+    public ClosureCompiler(Program program, Map<Integer, Function> functions){
+        this.program = program;
+        this.functions = functions;
+    }
+
+    /**
+     * Compile the main program and every function it calls.
+     *
+     * @return the main program, or null if one of the functions cannot be
+     *  compiled.
+     */
+    public ClosureFunction compileProgram(){
+        for (Function function : functions.values()){
+            if (!canCompile(function)) return null;
+        }
+        return compile(functions.get(Function.MAIN));
+    }
+
+    /**
+     * @return whether every code of the function can be compiled.
+     */
+    public boolean canCompile(Function function){
+        return FunctionAnalyzer.isCompilable(program, function);
+    }
+
+    /**
+     * @return the compiled function.  A function is compiled once; calls to
+     *  it, recursive ones included, all share the same ClosureFunction.
+     */
+    public ClosureFunction compile(Function function){
+        ClosureFunction closure = compiled.get(function.getEntry());
+        if (closure != null) return closure;
+
+        closure = new ClosureFunction(function.getName(), function.getArity(),
+                Math.max(function.getMaxDepth(), 1));
+        compiled.put(function.getEntry(), closure);
+        compileBlocks(function, closure);
+        return closure;
+    }
+
+    private void compileBlocks(Function function, ClosureFunction closure){
+        int[] codes = function.getCodes();
+
+        // a block starts at the function's start, at every code a branch
+        // continues at, after every code that ends a block, and at every code
+        // that is only reached by jumping to it
+        HashMap<Integer, ClosureBlock> blocks = new HashMap<Integer, ClosureBlock>();
+        blocks.put(function.getStart(), new ClosureBlock());
+        for (int i=0; i<codes.length; i++){
+            ByteCode code = program.getCode(codes[i]);
+            if (code instanceof GoToByteCode){
+                blocks.put(((GoToByteCode)code).targetAddrs+1, new ClosureBlock());
+            } else if (code instanceof FalseBranchByteCode){
+                blocks.put(((FalseBranchByteCode)code).targetAddrs+1, new ClosureBlock());
+            }
+            if (endsBlock(code) && function.contains(codes[i]+1)){
+                blocks.put(codes[i]+1, new ClosureBlock());
+            }
+            if (i > 0 && codes[i-1] != codes[i]-1 && !blocks.containsKey(codes[i])){
+                blocks.put(codes[i], new ClosureBlock());
+            }
+        }
+        closure.start = blocks.get(function.getStart());
+
+        ClosureBlock block = null;
+        List<Statement> statements = new ArrayList<Statement>();
+        // pending[d] computes the value at depth d when it is not in the frame yet
+        Expression[] pending = new Expression[closure.frameSize+1];
+
+        for (int address : codes){
+            ByteCode code = program.getCode(address);
+            int depth = function.getDepthBefore(address);
+
+            if (blocks.containsKey(address)){
+                if (block != null){
+                    flush(statements, pending, depth);
+                    finish(block, statements, jump(blocks.get(address)));
+                }
+                block = blocks.get(address);
+                statements.clear();
+                Arrays.fill(pending, null);
+            }
+
+            if (code instanceof LitByteCode){
+                pending[depth] = constant(((LitByteCode)code).value());
+            } else if (code instanceof LoadByteCode){
+                int offset = ((LoadByteCode)code).offset();
+                // a pending value may read its own slot, which a flush
+                // writes before it would compute the copy, so the slot is
+                // put in the frame first
+                if (pending[offset] != null) flush(statements, pending, offset+1);
+                pending[depth] = operand(pending, offset);
+            } else if (code instanceof StoreByteCode){
+                Expression value = operand(pending, depth-1);
+                pending[depth-1] = null;
+                flush(statements, pending, depth-1);
+                statements.add(assign(((StoreByteCode)code).offset(), value));
+            } else if (code instanceof PopByteCode){
+                flush(statements, pending, depth);
+            } else if (code instanceof BopByteCode){
+                pending[depth-2] = operation(((BopByteCode)code).operator(),
+                        operand(pending, depth-2), operand(pending, depth-1));
+                pending[depth-1] = null;
+            } else if (code instanceof CallByteCode){
+                int numArgs = FunctionAnalyzer.argumentsPassedBy(program, address);
+                int first = depth - numArgs;
+                Expression[] arguments = new Expression[numArgs];
+                for (int i=0; i<numArgs; i++){
+                    arguments[i] = operand(pending, first+i);
+                    pending[first+i] = null;
+                }
+                flush(statements, pending, first);
+                CallByteCode callCode = (CallByteCode)code;
+                Statement call = call(callCode.targetAddrs, first, arguments);
+                if (call != null){
+                    statements.add(call);
+                } else {
+                    finish(block, statements, calling());
+                    block.callee = compile(functions.get(callCode.targetAddrs));
+                    block.arguments = arguments;
+                    block.result = first;
+                    block.isTailCall = callCode.isTailCall();
+                    block.after = blocks.get(address+1);
+                    block = null;
+                }
+            } else if (code instanceof ReadByteCode){
+                flush(statements, pending, depth);
+                statements.add(read(depth));
+            } else if (code instanceof WriteByteCode){
+                flush(statements, pending, depth);
+                statements.add(write(depth-1));
+            } else if (code instanceof FalseBranchByteCode){
+                Expression condition = operand(pending, depth-1);
+                pending[depth-1] = null;
+                flush(statements, pending, depth-1);
+                ClosureBlock taken = blocks.get(((FalseBranchByteCode)code).targetAddrs+1);
+                finish(block, statements, branch(condition, taken, blocks.get(address+1)));
+                block = null;
+            } else if (code instanceof GoToByteCode){
+                flush(statements, pending, depth);
+                finish(block, statements, jump(blocks.get(((GoToByteCode)code).targetAddrs+1)));
+                block = null;
+            } else if (code instanceof ReturnByteCode){
+                Expression value = operand(pending, depth-1);
+                pending[depth-1] = null;
+                flush(statements, pending, depth-1);
+                finish(block, statements, giveBack(value));
+                block = null;
+            } else if (code instanceof HaltByteCode){
+                flush(statements, pending, depth);
+                finish(block, statements, halt());
+                block = null;
+            }
+            // LABEL and ARGS do nothing once the depths are known
+        }
+    }
+
+    private static boolean endsBlock(ByteCode code){
+        return code instanceof GoToByteCode || code instanceof FalseBranchByteCode
+                || code instanceof ReturnByteCode || code instanceof HaltByteCode
+                || code instanceof CallByteCode;
+    }
+
+    private static void finish(ClosureBlock block, List<Statement> statements, Transfer transfer){
+        block.statements = statements.toArray(new Statement[statements.size()]);
+        block.transfer = transfer;
+        statements.clear();
+    }
+
+    // Write every pending value below depth to its slot, lowest first, which
+    // is the order the VM would have computed them in.
+    private static void flush(List<Statement> statements, Expression[] pending, int depth){
+        for (int slot=0; slot<depth; slot++){
+            if (pending[slot] != null){
+                statements.add(assign(slot, pending[slot]));
+                pending[slot] = null;
+            }
+        }
+    }
+
+    // The value at depth slot, whether it is still pending or in the frame.
+    private static Expression operand(Expression[] pending, int slot){
+        if (pending[slot] != null) return pending[slot];
+        return frame -> frame[slot];
+    }
+
+    private static Expression constant(int value){
+        return frame -> value;
+    }
+
+    private static Statement assign(int slot, Expression value){
+        return frame -> frame[slot] = value.eval(frame);
+    }
+
+    private static Statement read(int slot){
+        return frame -> frame[slot] = ReadByteCode.readInteger();
+    }
+
+    private static Statement write(int slot){
+        return frame -> System.out.println(frame[slot]);
+    }
+
+    private static Transfer jump(ClosureBlock target){
+        return frame -> target;
+    }
+
+    private static Transfer branch(Expression condition, ClosureBlock taken, ClosureBlock notTaken){
+        return frame -> (condition.eval(frame) == 0 ? taken : notTaken);
+    }
+
+    private static Transfer giveBack(Expression value){
+        return frame -> {
+            frame[0] = value.eval(frame);
+            return null;
+        };
+    }
+
+    // Ends a block that calls: the ClosureFunction makes the call.
+    private static Transfer calling(){
+        return frame -> null;
+    }
+
+    private static Transfer halt(){
+        return frame -> {
+            throw new Halt();
+        };
+    }
+
+    /**
+     * @return the Expression for BOP op applied to first and second.
+     */
+    public static Expression operation(String op, Expression first, Expression second){
+        if (op.equals("+")) return frame -> first.eval(frame) + second.eval(frame);
+        if (op.equals("-")) return frame -> first.eval(frame) - second.eval(frame);
+        if (op.equals("*")) return frame -> first.eval(frame) * second.eval(frame);
+        if (op.equals("/")) return frame -> first.eval(frame) / second.eval(frame);
+        if (op.equals("==")) return frame -> (first.eval(frame) == second.eval(frame) ? 1 : 0);
+        if (op.equals("!=")) return frame -> (first.eval(frame) != second.eval(frame) ? 1 : 0);
+        if (op.equals("<=")) return frame -> (first.eval(frame) <= second.eval(frame) ? 1 : 0);
+        if (op.equals(">=")) return frame -> (first.eval(frame) >= second.eval(frame) ? 1 : 0);
+        if (op.equals("<")) return frame -> (first.eval(frame) < second.eval(frame) ? 1 : 0);
+        if (op.equals(">")) return frame -> (first.eval(frame) > second.eval(frame) ? 1 : 0);
+        if (op.equals("|")) return frame -> ((first.eval(frame) == 1) | (second.eval(frame) == 1) ? 1 : 0);
+        if (op.equals("&")) return frame -> ((first.eval(frame) == 1) & (second.eval(frame) == 1) ? 1 : 0);
+        BopByteCode bop = BopByteCode.forOperator(op);
+        return frame -> bop.apply(first.eval(frame), second.eval(frame));
+    }
+
+    /**
+     * @return the Statement for a CALL of the function at entry, which
+     *  runs the function on the arguments and puts its result in slot first;
+     *  or null, the default, to have the ClosureFunction make the call.
+     */
+    protected Statement call(int entry, int first, Expression[] arguments){
+        return null;
+    }
+}
@@ -0,0 +1,93 @@
+package interpreter.compiler;
+import java.util.Arrays;
+
+/**
+ * A function of an X program compiled by the ClosureCompiler: a graph of
+ * ClosureBlocks that all work on one frame, an int[] holding the function's
+ * part of the stack.
+ *
+ * The functions it calls run in the same loop, with the frames of the calls
+ * in progress kept on a stack of their own, so a call uses no Java stack.
+ *
+ * @author admin
+ */
+public class ClosureFunction {
+
+    String name;
+    int arity;
+    int frameSize;
+    ClosureBlock start;
+
+    ClosureFunction(String name, int arity, int frameSize){
+        this.name = name;
+        this.arity = arity;
+        this.frameSize = frameSize;
+    }
+
+    /**
+     * @return a frame for one call of the function, the arguments go in
+     *  slots 0 .. arity-1.
+     */
+    public int[] newFrame(){
+        return new int[frameSize];
+    }
+
+    /**
+     * Run the function on frame until it returns.
+     *
+     * @return the function's return value.
+     */
+    public int run(int[] frame){
+        // the frames of the callers still to return to, and the blocks they
+        // called from
+        int[][] frames = null;
+        ClosureBlock[] callers = null;
+        int calls = 0;
+
+        ClosureBlock block = start;
+        while (true){
+            ClosureBlock next = block.run(frame);
+            if (next != null){
+                block = next;
+            } else if (block.callee != null){
+                int[] calleeFrame = block.callee.newFrame();
+                for (int i=0; i<block.arguments.length; i++){
+                    calleeFrame[i] = block.arguments[i].eval(frame);
+                }
+                if (!block.isTailCall){
+                    if (frames == null){
+                        frames = new int[16][];
+                        callers = new ClosureBlock[16];
+                    } else if (calls == frames.length){
+                        frames = Arrays.copyOf(frames, calls*2);
+                        callers = Arrays.copyOf(callers, calls*2);
+                    }
+                    frames[calls] = frame;
+                    callers[calls] = block;
+                    calls++;
+                }
+                frame = calleeFrame;
+                block = block.callee.start;
+            } else if (calls > 0){
+                // RETURN leaves its value in slot 0
+                int value = frame[0];
+                calls--;
+                frame = frames[calls];
+                block = callers[calls];
+                frames[calls] = null;
+                frame[block.result] = value;
+                block = block.after;
+            } else {
+                return frame[0];
+            }
+        }
+    }
+
+    public int getArity(){
+        return arity;
+    }
+
+    public String toString(){
+        return name + "/" + arity;
+    }
+}
@@ -0,0 +1,16 @@
+package interpreter.compiler;
+import interpreter.VirtualMachine;
+
+/**
+ * A function of an X program that has been compiled to JVM bytecode.
+ *
+ * invoke() is called in place of interpreting the function's body: the
+ * arguments are in the current frame of the VM's RunTimeStack, as ARGS left
+ * them, and the function returns its result without touching that frame.
+ *
+ * @author admin
+ */
+public interface CompiledFunction {
+
+    int invoke(VirtualMachine vm);
+}
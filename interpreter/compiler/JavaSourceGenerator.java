@@ -0,0 +1,224 @@
+package interpreter.compiler;
+import interpreter.Program;
+import interpreter.analysis.Function;
+import interpreter.analysis.FunctionAnalyzer;
+import interpreter.ByteCode.*;
+import java.util.*;
+
+/**
+ * Translates a function of an X program into the source of a static Java
+ * method that computes the same thing.
+ *
+ * The function's frame becomes local variables: the slot at depth n is the
+ * variable sN, and the FunctionAnalyzer knows the depth in front of every
+ * code, so a LOAD, STORE or BOP turns into a plain assignment between those
+ * variables.  Branches become a switch inside a loop, with one case for the
+ * function's start and one for every code a branch continues at.
+ *
+ * A CALL a function makes of itself right before it returns, which the VM
+ * runs in the caller's frame, becomes a jump back to the function's start
+ * with the arguments in its parameters, so tail recursion runs in constant
+ * space here too.  Other calls of the function itself call its method
+ * directly, up to MAX_DEPTH of them at a time; deeper calls go back through
+ * the VM, which runs them in its own frames.
+ *
+ * READ and WRITE prompt, read and print exactly as their bytecodes do, in
+ * the same order.  How a CALL to another function and a READ are written
+ * depends on where the code will run, so subclasses can change those parts.
+ *
+ * @author admin
+ */
+public class JavaSourceGenerator {
+
+    // the most calls a method makes of itself on the Java stack before it
+    // leaves the rest of the recursion to the VM
+    public static final int MAX_DEPTH = 32;
+
+    protected Program program;
+    protected Map<Integer, Function> functions;
+
+    public JavaSourceGenerator(Program program, Map<Integer, Function> functions){
+        this.program = program;
+        this.functions = functions;
+    }
+
+    /**
+     * @return whether every code of the function can be translated.
+     */
+    public boolean canCompile(Function function){
+        if (!FunctionAnalyzer.isCompilable(program, function)) return false;
+
+        for (int address : function.getCodes()){
+            if (program.getCode(address) instanceof HaltByteCode && !canHalt(function)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Append  static int name(parameters){ ... }  for the function to out.
+     */
+    public void generateMethod(StringBuilder out, Function function, String name){
+        int arity = function.getArity();
+        int[] codes = function.getCodes();
+
+        Set<Integer> caseAddresses = new TreeSet<Integer>();
+        caseAddresses.add(function.getStart());
+        for (int address : codes){
+            ByteCode code = program.getCode(address);
+            if (code instanceof GoToByteCode){
+                caseAddresses.add(((GoToByteCode)code).targetAddrs+1);
+            } else if (code instanceof FalseBranchByteCode){
+                caseAddresses.add(((FalseBranchByteCode)code).targetAddrs+1);
+            }
+        }
+
+        out.append("    // ").append(function.getName()).append("\n");
+        out.append("    static int ").append(name).append("(").append(parameters(function)).append(") {\n");
+        for (int slot=arity; slot<function.getMaxDepth(); slot++){
+            out.append("        int s").append(slot).append(" = 0;\n");
+        }
+        out.append("        int next = ").append(function.getStart()).append(";\n");
+        out.append("        while (true) {\n");
+        out.append("            switch (next) {\n");
+
+        // the codes after a jump, up to the next case, never run and would
+        // not compile
+        boolean reachable = true;
+        for (int address : codes){
+            if (caseAddresses.contains(address)){
+                out.append("            case ").append(address).append(":\n");
+                reachable = true;
+            }
+            if (reachable) reachable = generateCode(out, function, name, address);
+        }
+
+        out.append("            }\n");
+        out.append("        }\n");
+        out.append("    }\n");
+    }
+
+    // @return whether the code can go on to the one after it
+    private boolean generateCode(StringBuilder out, Function function, String name, int address){
+        ByteCode code = program.getCode(address);
+        int depth = function.getDepthBefore(address);
+        String top = "s" + (depth-1);
+        out.append("                ");
+
+        if (code instanceof LitByteCode){
+            out.append("s").append(depth).append(" = ").append(((LitByteCode)code).value()).append(";");
+        } else if (code instanceof LoadByteCode){
+            out.append("s").append(depth).append(" = s").append(((LoadByteCode)code).offset()).append(";");
+        } else if (code instanceof StoreByteCode){
+            out.append("s").append(((StoreByteCode)code).offset()).append(" = ").append(top).append(";");
+        } else if (code instanceof BopByteCode){
+            String first = "s" + (depth-2);
+            out.append(first).append(" = ")
+               .append(operation(((BopByteCode)code).operator(), first, top)).append(";");
+        } else if (code instanceof FalseBranchByteCode){
+            out.append("if (").append(top).append(" == 0) { next = ")
+               .append(((FalseBranchByteCode)code).targetAddrs+1).append("; continue; }");
+        } else if (code instanceof GoToByteCode){
+            out.append("next = ").append(((GoToByteCode)code).targetAddrs+1).append("; continue;");
+        } else if (code instanceof CallByteCode){
+            int entry = ((CallByteCode)code).targetAddrs;
+            int numArgs = functions.get(entry).getArity();
+            if (entry == function.getEntry() && ((CallByteCode)code).isTailCall()){
+                generateSelfTailCall(out, function, depth-numArgs, numArgs);
+                out.append("\n");
+                return false;
+            } else {
+                generateCall(out, function, name, entry, depth-numArgs, numArgs);
+            }
+        } else if (code instanceof ReturnByteCode){
+            out.append("return ").append(top).append(";");
+        } else if (code instanceof ReadByteCode){
+            out.append("s").append(depth).append(" = ").append(readExpression()).append(";");
+        } else if (code instanceof WriteByteCode){
+            out.append("System.out.println(").append(top).append(");");
+        } else if (code instanceof HaltByteCode){
+            out.append(haltStatement(function));
+        } else {
+            // LABEL, ARGS and POP only change what the analysis already knows
+            out.append("// ").append(code.toString().trim());
+        }
+        out.append("\n");
+        return true;
+    }
+
+    /**
+     * @return the Java expression for BOP op applied to first and second.
+     */
+    public static String operation(String op, String first, String second){
+        if (op.equals("|")) return "((" + first + "==1)|(" + second + "==1) ? 1 : 0)";
+        if (op.equals("&")) return "((" + first + "==1)&(" + second + "==1) ? 1 : 0)";
+        if (op.equals("+") || op.equals("-") || op.equals("*") || op.equals("/")){
+            return first + " " + op + " " + second;
+        }
+        return "(" + first + " " + op + " " + second + " ? 1 : 0)";
+    }
+
+    // A tail call of the function itself: the arguments, in the slots from
+    // firstSlot on, become the parameters and the function starts over.
+    private void generateSelfTailCall(StringBuilder out, Function function, int firstSlot, int numArgs){
+        out.append("{ ");
+        for (int i=0; i<numArgs; i++){
+            out.append("int t").append(i).append(" = s").append(firstSlot+i).append("; ");
+        }
+        for (int i=0; i<numArgs; i++){
+            out.append("s").append(i).append(" = t").append(i).append("; ");
+        }
+        out.append("} next = ").append(function.getStart()).append("; continue;");
+    }
+
+    /**
+     * @return the parameter list of the generated method: the VM to call
+     *  back into, the number of calls of the method itself under this one,
+     *  then one int per argument.
+     */
+    protected String parameters(Function function){
+        StringBuilder parameters = new StringBuilder("VirtualMachine vm, int depth");
+        for (int slot=0; slot<function.getArity(); slot++){
+            parameters.append(", int s").append(slot);
+        }
+        return parameters.toString();
+    }
+
+    /**
+     * Append a CALL of the function at entry, whose numArgs arguments are in
+     * the slots from firstSlot on.  The result goes into firstSlot.  A
+     * function calling itself calls its own method directly, unless it is
+     * already MAX_DEPTH calls deep; anything else is called through the VM.
+     */
+    protected void generateCall(StringBuilder out, Function caller, String name,
+            int entry, int firstSlot, int numArgs){
+        boolean self = (entry == caller.getEntry());
+        if (self){
+            out.append("if (depth < ").append(MAX_DEPTH).append(") { s").append(firstSlot)
+               .append(" = ").append(name).append("(vm, depth+1");
+            for (int slot=firstSlot; slot<firstSlot+numArgs; slot++) out.append(", s").append(slot);
+            out.append("); } else { ");
+        }
+        for (int slot=firstSlot; slot<firstSlot+numArgs; slot++){
+            out.append("vm.pushRunStack(s").append(slot).append("); ");
+        }
+        out.append("s").append(firstSlot).append(" = vm.invokeFunction(")
+           .append(entry).append(", ").append(numArgs).append(");");
+        if (self) out.append(" }");
+    }
+
+    protected String readExpression(){
+        return "interpreter.ByteCode.ReadByteCode.readInteger()";
+    }
+
+    /**
+     * @return whether HALT may appear in the function; only a main program
+     *  compiled on its own can stop the VM.
+     */
+    protected boolean canHalt(Function function){
+        return false;
+    }
+
+    protected String haltStatement(Function function){
+        return "return 0;";
+    }
+}
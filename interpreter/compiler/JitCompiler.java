@@ -0,0 +1,116 @@
+package interpreter.compiler;
+import interpreter.Program;
+import interpreter.analysis.Function;
+import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.util.*;
+import javax.tools.*;
+
+/**
+ * Compiles functions of an X program to JVM bytecode while the program runs.
+ *
+ * The JavaSourceGenerator writes each function as a Java class, the system
+ * Java compiler turns it into a class file in memory, and the class is
+ * defined as a hidden class next to this one, so nothing is written to disk
+ * and a compiled function can be unloaded with the VM that uses it.
+ *
+ * Compiling fails quietly: compile() returns null and the VM keeps
+ * interpreting the function.
+ *
+ * @author admin
+ */
+public class JitCompiler {
+
+    private static final String PACKAGE = "interpreter.compiler";
+
+    private JavaSourceGenerator generator;
+    private JavaCompiler javac;
+
+    public JitCompiler(Program program, Map<Integer, Function> functions){
+        generator = new JavaSourceGenerator(program, functions);
+        javac = ToolProvider.getSystemJavaCompiler();
+    }
+
+    /**
+     * @return whether the running JVM comes with a Java compiler.
+     */
+    public boolean isAvailable(){
+        return javac != null;
+    }
+
+    /**
+     * @return the compiled function, or null if it cannot be compiled.
+     */
+    public CompiledFunction compile(Function function){
+        if (javac == null || !generator.canCompile(function)) return null;
+
+        String className = "Jit_" + (function.isMain() ? "main" : "" + function.getEntry());
+        byte[] classFile = compileSource(javac, className,
+                generateClass(className, function), new StringWriter());
+        if (classFile == null) return null;
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+            return (CompiledFunction)lookup.findConstructor(lookup.lookupClass(),
+                    MethodType.methodType(void.class)).invoke();
+        } catch (Throwable e){
+            return null;
+        }
+    }
+
+    private String generateClass(String className, Function function){
+        StringBuilder source = new StringBuilder();
+        source.append("package ").append(PACKAGE).append(";\n");
+        source.append("import interpreter.VirtualMachine;\n\n");
+        source.append("public class ").append(className).append(" implements CompiledFunction {\n\n");
+        source.append("    public int invoke(VirtualMachine vm) {\n");
+        source.append("        return run(vm, 0");
+        for (int i=0; i<function.getArity(); i++){
+            source.append(", vm.getValueAtOffset(").append(i).append(")");
+        }
+        source.append(");\n");
+        source.append("    }\n\n");
+        generator.generateMethod(source, function, "run");
+        source.append("}\n");
+        return source.toString();
+    }
+
+    /**
+     * Compile the source of a single class without touching the disk.
+     * javac's error messages go to errors.
+     *
+     * @return the class file javac produced for the source, or null if it
+     *  did not compile.
+     */
+    static byte[] compileSource(JavaCompiler javac, String className, final String source,
+            Writer errors){
+        JavaFileObject sourceFile = new SimpleJavaFileObject(
+                URI.create("string:///" + className + JavaFileObject.Kind.SOURCE.extension),
+                JavaFileObject.Kind.SOURCE){
+            public CharSequence getCharContent(boolean ignoreEncodingErrors){
+                return source;
+            }
+        };
+
+        final ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+        JavaFileManager fileManager = new ForwardingJavaFileManager<StandardJavaFileManager>(
+                javac.getStandardFileManager(null, null, null)){
+            public JavaFileObject getJavaFileForOutput(Location location, String name,
+                    JavaFileObject.Kind kind, FileObject sibling){
+                return new SimpleJavaFileObject(URI.create("bytes:///" + name + kind.extension), kind){
+                    public OutputStream openOutputStream(){
+                        return classBytes;
+                    }
+                };
+            }
+        };
+
+        List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"),
+                "-g:none", "-nowarn");
+        Boolean compiled = javac.getTask(errors, fileManager, null, options, null,
+                Collections.singletonList(sourceFile)).call();
+        return (compiled ? classBytes.toByteArray() : null);
+    }
+}
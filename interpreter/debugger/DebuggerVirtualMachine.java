@@ -56,6 +56,10 @@ public class DebuggerVirtualMachine extends VirtualMachine{
     private boolean watingToStepOver;
     private int lineToStepOver;
     private boolean watingToStepInto;
+    // tail calls replace the current record instead of pushing one, so the
+    // stack does not grow when stepping into them
+    private int tailCalls;
+    private int tailCallsWhenSteppingInto;
     boolean stackTraceFlag;
     
     
@@ -72,7 +76,6 @@ public class DebuggerVirtualMachine extends VirtualMachine{
     public void initialize(){
         pc = 0;
         runStack = new RunTimeStack();
-        returnAddrs = new Stack();
         isRunning = true;
         watingToStepOut =false;
         stepOutLevels = new Stack<Integer>();
@@ -81,7 +84,6 @@ public class DebuggerVirtualMachine extends VirtualMachine{
         beginScope();
         validBreakPoints = new Stack<Integer>();
         inventoryValidBreakPoints();
-        BinaryOpTable.init();
     }
     
     /**
@@ -171,6 +173,7 @@ public class DebuggerVirtualMachine extends VirtualMachine{
     
     public void setStepIntoFlag(){
         watingToStepInto = true;
+        tailCallsWhenSteppingInto = tailCalls;
         stepOutLevels.push(sizeOfFunctionCallStack());
     }
     
@@ -180,7 +183,9 @@ public class DebuggerVirtualMachine extends VirtualMachine{
             return true;
         }
         //Check that the FUNCTION code and all FORMALS have been reached. 
-        if (stepOutLevels.peek() < sizeOfFunctionCallStack()
+        boolean enteredFunction = stepOutLevels.peek() < sizeOfFunctionCallStack()
+                || tailCallsWhenSteppingInto != tailCalls;
+        if (enteredFunction
                 && (this.getCurrentFunctionName()!=null)
                 && (classOfLastByteCodeExecuted!= FormalByteCode.class)) {
             stepOutLevels.pop();
@@ -307,6 +312,16 @@ public class DebuggerVirtualMachine extends VirtualMachine{
         } catch (Exception e){ return null;}
     }
     
+    /**
+     * @return the number of frames the nth function's record took the place
+     *  of by being tail called, 0 for a record that was pushed by a CALL.
+     */
+    public int getNthFunctionCollapsedFrames(int n) {
+        try{
+            return EnvironmentRecordStack.get(n).getCollapsedFrames();
+        }catch (Exception e){ return 0;}
+    }
+    
     public int getNthFunctionStartLine(int n) {
         try{
             return EnvironmentRecordStack.get(n).getStartLine();
@@ -334,6 +349,16 @@ public class DebuggerVirtualMachine extends VirtualMachine{
         EnvironmentRecordStack.push(newRecord);
     }
     
+    /*
+     * Replaces the current record with a new, empty one, when a tail CALL
+     * reuses the current frame instead of pushing one. 
+     */
+    public void collapseScope(){
+        FunctionEnvironmentRecord oldRecord = EnvironmentRecordStack.pop();
+        EnvironmentRecordStack.push(oldRecord.collapse());
+        tailCalls++;
+    }
+    
     public void loadLiteral(String varname){
         FunctionEnvironmentRecord currentRecord = EnvironmentRecordStack.peek();
         currentRecord.enter(varname, getCurrentOffset());
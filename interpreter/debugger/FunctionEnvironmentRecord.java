@@ -11,6 +11,8 @@ public class FunctionEnvironmentRecord {
     private Integer startLine;
     private Integer endLine;
     private Integer currentLine;
+    // the number of frames whose place this record took through tail calls
+    private int collapsedFrames;
     
     
     public static void main(String args[]){
@@ -55,6 +57,21 @@ public class FunctionEnvironmentRecord {
         return (currentLine==null ? 0 : currentLine);
     }
     
+    public int getCollapsedFrames(){
+        return collapsedFrames;
+    }
+    
+    /*
+     * A record for the function that a tail call from the function of this
+     * record goes to, which takes this record's place on the stack. 
+     */
+    public FunctionEnvironmentRecord collapse(){
+        FunctionEnvironmentRecord record = new FunctionEnvironmentRecord();
+        record.collapsedFrames = collapsedFrames+1;
+        record.beginScope();
+        return record;
+    }
+    
     public String getFunctionName(){
         return functName;
     }
@@ -0,0 +1,274 @@
+package interpreter.engine;
+import interpreter.*;
+
+/**
+ * An OpcodeVirtualMachine that keeps the value on top of the stack in a
+ * local variable of its dispatch loop instead of in the RunTimeStack.
+ *
+ * While the top is cached, LIT and LOAD write the cached value through to
+ * the stack and cache their own, and BOP, STORE, FALSEBRANCH and WRITE take
+ * their last operand straight from the cache, so  LOAD 0; LIT 1; BOP +
+ * pushes and pops one value instead of three.  Whether the top is cached
+ * depends on the path taken to a code, so it is tracked as the loop runs
+ * rather than worked out in advance.
+ *
+ * Everything that looks at the stack from outside the loop sees the same
+ * frames as in the other engines: the cached value is written through
+ * before ARGS, CALL, RETURN and HALT, and before any code the loop hands to
+ * execute(), which includes DUMP and, while dumping, every code.
+ *
+ * Select this engine with:  java interpreter.Interpreter -e caching file.x.cod
+ *
+ * @author admin
+ */
+public class CachingVirtualMachine extends OpcodeVirtualMachine {
+
+    // added to an opcode to dispatch on whether the top is cached; larger
+    // than every opcode
+    private static final int EMPTY = 0;
+    private static final int CACHED = 32;
+
+    public CachingVirtualMachine(Program prog){
+        super(prog);
+    }
+
+    public void executeProgram(){
+        pc = 0;
+        runStack = newRunTimeStack();
+        isRunning = true;
+
+        while (isRunning){
+            if (dumping) step();
+            else runUntilDumping();
+        }
+    }
+
+    /**
+     * The dispatch loop.  Runs until the program halts or a DUMP ON is
+     * executed, with nothing left in the cache either way.
+     *
+     * It dispatches on the opcode plus the state of the cache, so no code
+     * has to test whether the top is cached.  Every case ends in a break, so
+     * the EMPTY and CACHED cases of a code each do all of its work.
+     */
+    private void runUntilDumping(){
+        final int[] opcode = this.opcode;
+        final int[] operand = this.operand;
+        final RunTimeStack stack = runStack;
+        int pc = this.pc;
+        // tos is the top of the stack whenever state is CACHED
+        int tos = 0;
+        int state = EMPTY;
+        int a;
+
+        while (true){
+            switch (opcode[pc] + state){
+                case NOP:
+                case NOP+CACHED:
+                    break;
+                case GOTO:
+                case GOTO+CACHED:
+                    pc = operand[pc];
+                    break;
+                case LIT:
+                    tos = operand[pc];
+                    state = CACHED;
+                    break;
+                case LIT+CACHED:
+                    stack.push(tos);
+                    tos = operand[pc];
+                    break;
+                case LOAD:
+                    tos = stack.getValueAtOffset(operand[pc]);
+                    state = CACHED;
+                    break;
+                case LOAD+CACHED:
+                    stack.push(tos);
+                    tos = stack.getValueAtOffset(operand[pc]);
+                    break;
+                case STORE:
+                    stack.store(operand[pc]);
+                    break;
+                case STORE+CACHED:
+                    stack.setValueAtOffset(operand[pc], tos);
+                    state = EMPTY;
+                    break;
+                case POP+CACHED:
+                    if (operand[pc] == 0) break;
+                    state = EMPTY;
+                    for (a=operand[pc]-1; a>0; a--) stack.pop();
+                    break;
+                case POP:
+                    for (a=operand[pc]; a>0; a--) stack.pop();
+                    break;
+                case ARGS+CACHED:
+                    stack.push(tos);
+                    state = EMPTY;
+                    stack.newFrameOfSize(operand[pc]);
+                    break;
+                case ARGS:
+                    stack.newFrameOfSize(operand[pc]);
+                    break;
+                case ARGS_CALL+CACHED:
+                    stack.push(tos);
+                    state = EMPTY;
+                    stack.newFrameOfSize(operand[pc], pc+1);
+                    pc = operand[pc+1];
+                    break;
+                case ARGS_CALL:
+                    stack.newFrameOfSize(operand[pc], pc+1);
+                    pc = operand[pc+1];
+                    break;
+                case CALL+CACHED:
+                    stack.push(tos);
+                    state = EMPTY;
+                    stack.setReturnAddress(pc);
+                    pc = operand[pc];
+                    break;
+                case CALL:
+                    stack.setReturnAddress(pc);
+                    pc = operand[pc];
+                    break;
+                case RETURN+CACHED:
+                    stack.push(tos);
+                    state = EMPTY;
+                    pc = stack.popFrame();
+                    break;
+                case RETURN:
+                    pc = stack.popFrame();
+                    break;
+                case FALSEBRANCH:
+                    if (stack.pop()==0) pc = operand[pc];
+                    break;
+                case FALSEBRANCH+CACHED:
+                    state = EMPTY;
+                    if (tos==0) pc = operand[pc];
+                    break;
+                case WRITE:
+                    System.out.println(stack.peek());
+                    break;
+                case WRITE+CACHED:
+                    System.out.println(tos);
+                    break;
+                case HALT+CACHED:
+                    stack.push(tos);
+                    this.pc = pc + 1;
+                    turnOffVm();
+                    return;
+                case HALT:
+                    this.pc = pc + 1;
+                    turnOffVm();
+                    return;
+                // the second operand of a BOP is the top, the first is below it
+                case ADD:
+                    a = stack.pop();
+                    tos = stack.pop() + a;
+                    state = CACHED;
+                    break;
+                case ADD+CACHED:
+                    tos = stack.pop() + tos;
+                    break;
+                case SUB:
+                    a = stack.pop();
+                    tos = stack.pop() - a;
+                    state = CACHED;
+                    break;
+                case SUB+CACHED:
+                    tos = stack.pop() - tos;
+                    break;
+                case MUL:
+                    a = stack.pop();
+                    tos = stack.pop() * a;
+                    state = CACHED;
+                    break;
+                case MUL+CACHED:
+                    tos = stack.pop() * tos;
+                    break;
+                case DIV:
+                    a = stack.pop();
+                    tos = stack.pop() / a;
+                    state = CACHED;
+                    break;
+                case DIV+CACHED:
+                    tos = stack.pop() / tos;
+                    break;
+                case EQ:
+                    a = stack.pop();
+                    tos = (stack.pop() == a ? 1 : 0);
+                    state = CACHED;
+                    break;
+                case EQ+CACHED:
+                    tos = (stack.pop() == tos ? 1 : 0);
+                    break;
+                case NE:
+                    a = stack.pop();
+                    tos = (stack.pop() != a ? 1 : 0);
+                    state = CACHED;
+                    break;
+                case NE+CACHED:
+                    tos = (stack.pop() != tos ? 1 : 0);
+                    break;
+                case LE:
+                    a = stack.pop();
+                    tos = (stack.pop() <= a ? 1 : 0);
+                    state = CACHED;
+                    break;
+                case LE+CACHED:
+                    tos = (stack.pop() <= tos ? 1 : 0);
+                    break;
+                case GE:
+                    a = stack.pop();
+                    tos = (stack.pop() >= a ? 1 : 0);
+                    state = CACHED;
+                    break;
+                case GE+CACHED:
+                    tos = (stack.pop() >= tos ? 1 : 0);
+                    break;
+                case LT:
+                    a = stack.pop();
+                    tos = (stack.pop() < a ? 1 : 0);
+                    state = CACHED;
+                    break;
+                case LT+CACHED:
+                    tos = (stack.pop() < tos ? 1 : 0);
+                    break;
+                case GT:
+                    a = stack.pop();
+                    tos = (stack.pop() > a ? 1 : 0);
+                    state = CACHED;
+                    break;
+                case GT+CACHED:
+                    tos = (stack.pop() > tos ? 1 : 0);
+                    break;
+                case OR:
+                    a = stack.pop();
+                    tos = ((stack.pop()==1)|(a==1) ? 1 : 0);
+                    state = CACHED;
+                    break;
+                case OR+CACHED:
+                    tos = ((stack.pop()==1)|(tos==1) ? 1 : 0);
+                    break;
+                case AND:
+                    a = stack.pop();
+                    tos = ((stack.pop()==1)&(a==1) ? 1 : 0);
+                    state = CACHED;
+                    break;
+                case AND+CACHED:
+                    tos = ((stack.pop()==1)&(tos==1) ? 1 : 0);
+                    break;
+                default:
+                    // EXEC: let the ByteCode run itself against the VM state.
+                    if (state == CACHED) stack.push(tos);
+                    state = EMPTY;
+                    this.pc = pc;
+                    codes[pc].execute(this);
+                    pc = this.pc;
+                    if (!isRunning || dumping){
+                        this.pc = pc + 1;
+                        return;
+                    }
+            }
+            pc++;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package interpreter.engine;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A call of a pure function that a ParallelVirtualMachine forked off.  The
+ * call runs on a ParallelVirtualMachine of its own, with its own
+ * RunTimeStack, which may fork calls of its own in turn.
+ *
+ * @author admin
+ */
+public class CallTask extends RecursiveTask<Integer> {
+
+    private static final long serialVersionUID = 1L;
+
+    private ParallelVirtualMachine parent;
+    private int entry;
+    private int[] arguments;
+    private int depth;
+    private long steps;
+
+    /**
+     * @param entry the address of the function's LABEL
+     * @param arguments the values of the function's arguments
+     * @param depth the number of frames under the call's frame in the VM
+     *  that forked it
+     */
+    public CallTask(ParallelVirtualMachine parent, int entry, int[] arguments, int depth){
+        this.parent = parent;
+        this.entry = entry;
+        this.arguments = arguments;
+        this.depth = depth;
+    }
+
+    protected Integer compute(){
+        ParallelVirtualMachine vm = new ParallelVirtualMachine(parent, depth);
+        int value = vm.runFunction(entry, arguments);
+        steps = vm.getSteps();
+        return value;
+    }
+
+    /**
+     * @return the number of codes the call executed, counting those of the
+     *  calls it forked.  Only known once the task has been joined.
+     */
+    public long getSteps(){
+        return steps;
+    }
+}
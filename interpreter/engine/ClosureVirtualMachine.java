@@ -0,0 +1,44 @@
+package interpreter.engine;
+import interpreter.*;
+import interpreter.analysis.FunctionAnalyzer;
+import interpreter.compiler.ClosureCompiler;
+import interpreter.compiler.ClosureFunction;
+
+/**
+ * A VirtualMachine that compiles the whole program with the ClosureCompiler
+ * before running it, and then runs the closures instead of the bytecodes.
+ *
+ * Programs that DUMP, or that have a function the ClosureCompiler cannot
+ * compile, run like they would on the plain VirtualMachine.
+ *
+ * Select this engine with:  java interpreter.Interpreter -e closure file.x.cod
+ *
+ * @author admin
+ */
+public class ClosureVirtualMachine extends VirtualMachine {
+
+    public ClosureVirtualMachine(Program prog){
+        super(prog);
+    }
+
+    public void executeProgram(){
+        ClosureFunction main = null;
+        if (!program.containsDump()){
+            main = new ClosureCompiler(program, FunctionAnalyzer.analyze(program)).compileProgram();
+        }
+        if (main == null){
+            super.executeProgram();
+            return;
+        }
+
+        pc = 0;
+        runStack = newRunTimeStack();
+        isRunning = true;
+        try {
+            main.run(main.newFrame());
+        } catch (ClosureCompiler.Halt e){
+            // the program executed HALT
+        }
+        turnOffVm();
+    }
+}
@@ -0,0 +1,138 @@
+package interpreter.engine;
+import interpreter.*;
+import interpreter.analysis.Function;
+import interpreter.analysis.FunctionAnalyzer;
+import interpreter.compiler.CompiledFunction;
+import interpreter.compiler.JitCompiler;
+import java.util.*;
+
+/**
+ * A VirtualMachine that compiles hot functions to JVM bytecode.
+ *
+ * Every CALL of a function is counted, and once a function has been called
+ * threshold times the JitCompiler compiles it.  From then on a CALL of the
+ * function runs the compiled code instead of interpreting the function, and
+ * the result ends up on the stack exactly where RETURN would have left it.
+ *
+ * Compiled code runs on the Java stack, so at most MAX_COMPILED_DEPTH
+ * compiled functions run inside one another, and each makes at most
+ * JavaSourceGenerator.MAX_DEPTH calls of itself on the Java stack.  Calls
+ * any deeper than that are interpreted, in the VM's own frames, so a
+ * program recurses as deep here as it does on the plain VM.
+ *
+ * Nothing is compiled for programs that DUMP, since compiled code has no
+ * RunTimeStack to show, or for functions that may end up executing a HALT.
+ *
+ * Select this engine with:  java interpreter.Interpreter -e jit file.x.cod
+ *
+ * @author admin
+ */
+public class JitVirtualMachine extends VirtualMachine {
+
+    // the most compiled functions running inside one another
+    public static final int MAX_COMPILED_DEPTH = 32;
+
+    private int threshold;
+    private JitCompiler compiler;
+    private Map<Integer, Function> functions;
+    private Set<Integer> mayHalt;
+    // by the address of the function's LABEL
+    private CompiledFunction[] compiled;
+    private int[] callCounts;
+    private int compiledCount;
+    // the compiled functions running right now
+    private int compiledDepth;
+
+    public JitVirtualMachine(Program prog){
+        this(prog, 1000);
+    }
+
+    /**
+     * @param threshold the number of calls after which a function is compiled
+     */
+    public JitVirtualMachine(Program prog, int threshold){
+        super(prog);
+        this.threshold = threshold;
+        functions = FunctionAnalyzer.analyze(prog);
+        mayHalt = FunctionAnalyzer.functionsThatMayHalt(prog, functions);
+        compiled = new CompiledFunction[prog.getNumberOfByteCodes()];
+        callCounts = new int[prog.getNumberOfByteCodes()];
+        compiler = new JitCompiler(prog, functions);
+        if (!compiler.isAvailable() || prog.containsDump()){
+            compiler = null;
+        }
+    }
+
+    public void callFunction(int address){
+        CompiledFunction function = compiledFunctionAt(address);
+        if (function == null || compiledDepth >= MAX_COMPILED_DEPTH){
+            super.callFunction(address);
+            return;
+        }
+        invokeCompiled(function);
+    }
+
+    // Compiled code runs on the Java stack, so there is no frame to reuse
+    // when it is tail called; it returns before the next call is made, and
+    // a function that tail calls itself does so in a loop of its own.
+    public boolean tailCallFunction(int address){
+        CompiledFunction function = compiledFunctionAt(address);
+        if (function == null || compiledDepth >= MAX_COMPILED_DEPTH){
+            return super.tailCallFunction(address);
+        }
+        invokeCompiled(function);
+        return false;
+    }
+
+    private void invokeCompiled(CompiledFunction function){
+        // make sure the call has a frame of its own, even without ARGS
+        setReturnAddrs(pc);
+        pushRunStack(invoke(function));
+        popRunStackFrame();
+    }
+
+    private int invoke(CompiledFunction function){
+        compiledDepth++;
+        try {
+            return function.invoke(this);
+        } finally {
+            compiledDepth--;
+        }
+    }
+
+    public int invokeFunction(int entry, int numArgs){
+        CompiledFunction function = compiledFunctionAt(entry);
+        if (function == null || compiledDepth >= MAX_COMPILED_DEPTH){
+            return super.invokeFunction(entry, numArgs);
+        }
+        newFrameOnRunTimeStackAt(numArgs);
+        pushRunStack(invoke(function));
+        popRunStackFrame();
+        return popRunStack();
+    }
+
+    /**
+     * @return the compiled code of the function at entry, or null if it
+     *  should still be interpreted.
+     */
+    private CompiledFunction compiledFunctionAt(int entry){
+        CompiledFunction function = compiled[entry];
+        if (function != null || compiler == null) return function;
+
+        if (++callCounts[entry] == threshold && !mayHalt.contains(entry)){
+            function = compiler.compile(functions.get(entry));
+            if (function != null){
+                compiled[entry] = function;
+                compiledCount++;
+            }
+        }
+        return function;
+    }
+
+    /**
+     * @return the number of functions compiled so far.
+     */
+    public int getCompiledCount(){
+        return compiledCount;
+    }
+}
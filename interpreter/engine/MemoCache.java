@@ -0,0 +1,172 @@
+package interpreter.engine;
+
+/**
+ * The results of one pure function, keyed by its arguments, for the
+ * MemoizingVirtualMachine.
+ *
+ * The cache holds at most capacity results.  Once it is full, the result
+ * that was used least recently makes room for the new one.  Everything is
+ * kept in int arrays: the arguments of entry e are
+ * keys[e*arity .. e*arity+arity-1], the entries of a hash bucket are chained
+ * through chain[], and older[] and newer[] link the entries from the least
+ * to the most recently used.  Nothing is boxed or allocated once the cache
+ * exists.
+ *
+ * @author admin
+ */
+public class MemoCache {
+
+    private static final int NONE = -1;
+
+    private int arity;
+    private int capacity;
+    private int size;
+    private int[] keys;
+    private int[] values;
+    private int[] buckets;
+    private int[] chain;
+    private int[] older;
+    private int[] newer;
+    private int oldest = NONE;
+    private int newest = NONE;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * @param arity the number of arguments of the function
+     * @param capacity the most results to keep
+     */
+    public MemoCache(int arity, int capacity){
+        this.arity = arity;
+        this.capacity = Math.max(capacity, 1);
+        keys = new int[this.capacity*arity];
+        values = new int[this.capacity];
+        chain = new int[this.capacity];
+        older = new int[this.capacity];
+        newer = new int[this.capacity];
+        int buckets = 1;
+        while (buckets < this.capacity*2) buckets *= 2;
+        this.buckets = new int[buckets];
+        java.util.Arrays.fill(this.buckets, NONE);
+    }
+
+    /**
+     * Look up the result for arguments, and count the hit or miss.
+     *
+     * @return the entry holding the result, or -1 if there is none.  Read
+     *  the result with valueAt.
+     */
+    public int find(int[] arguments){
+        for (int entry = buckets[bucketOf(arguments, 0)]; entry != NONE; entry = chain[entry]){
+            if (matches(entry, arguments)){
+                hits++;
+                touch(entry);
+                return entry;
+            }
+        }
+        misses++;
+        return NONE;
+    }
+
+    public int valueAt(int entry){
+        return values[entry];
+    }
+
+    /**
+     * Remember value as the result for arguments, in place of the least
+     * recently used result if the cache is full.
+     */
+    public void put(int[] arguments, int value){
+        int bucket = bucketOf(arguments, 0);
+        for (int entry = buckets[bucket]; entry != NONE; entry = chain[entry]){
+            if (matches(entry, arguments)){
+                values[entry] = value;
+                touch(entry);
+                return;
+            }
+        }
+
+        int entry;
+        if (size < capacity){
+            entry = size++;
+        } else {
+            entry = oldest;
+            unlink(entry);
+            removeFromBucket(entry);
+        }
+        System.arraycopy(arguments, 0, keys, entry*arity, arity);
+        values[entry] = value;
+        chain[entry] = buckets[bucket];
+        buckets[bucket] = entry;
+        linkAsNewest(entry);
+    }
+
+    public long getHits(){
+        return hits;
+    }
+
+    public long getMisses(){
+        return misses;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public int getCapacity(){
+        return capacity;
+    }
+
+    // The bucket of the arity arguments starting at from.
+    private int bucketOf(int[] arguments, int from){
+        int hash = 0;
+        for (int i=0; i<arity; i++) hash = hash*31 + arguments[from+i];
+        hash ^= (hash >>> 16);
+        return hash & (buckets.length-1);
+    }
+
+    private boolean matches(int entry, int[] arguments){
+        int base = entry*arity;
+        for (int i=0; i<arity; i++){
+            if (keys[base+i] != arguments[i]) return false;
+        }
+        return true;
+    }
+
+    private void removeFromBucket(int entry){
+        int bucket = bucketOf(keys, entry*arity);
+        if (buckets[bucket] == entry){
+            buckets[bucket] = chain[entry];
+            return;
+        }
+        for (int e = buckets[bucket]; e != NONE; e = chain[e]){
+            if (chain[e] == entry){
+                chain[e] = chain[entry];
+                return;
+            }
+        }
+    }
+
+    // Make entry the most recently used.
+    private void touch(int entry){
+        if (entry == newest) return;
+        unlink(entry);
+        linkAsNewest(entry);
+    }
+
+    private void unlink(int entry){
+        if (older[entry] != NONE) newer[older[entry]] = newer[entry];
+        else oldest = newer[entry];
+        if (newer[entry] != NONE) older[newer[entry]] = older[entry];
+        else newest = older[entry];
+    }
+
+    private void linkAsNewest(int entry){
+        older[entry] = newest;
+        newer[entry] = NONE;
+        if (newest != NONE) newer[newest] = entry;
+        else oldest = entry;
+        newest = entry;
+    }
+}
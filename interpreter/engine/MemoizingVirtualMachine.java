@@ -0,0 +1,154 @@
+package interpreter.engine;
+import interpreter.*;
+import interpreter.analysis.Function;
+import interpreter.analysis.FunctionAnalyzer;
+import java.util.*;
+
+/**
+ * A VirtualMachine that remembers the results of pure functions.
+ *
+ * A CALL of a function that FunctionAnalyzer.pureFunctions found to be pure
+ * first looks its arguments up in the function's MemoCache.  On a hit the
+ * arguments are replaced by the result right away, exactly where RETURN
+ * would have left it, and the function does not run.  On a miss the call
+ * runs as usual, and the result is stored when the call's frame is popped.
+ * A tail call shares its caller's frame and returns the same result, so
+ * both results are stored when that frame is popped.  The results of a frame
+ * are stored innermost call first, so a cache would only keep those of the
+ * first calls in a chain of tail calls; at most a cache's capacity of them
+ * are remembered, and a tail recursive loop runs in constant space.
+ *
+ * When the program is done, the hits and misses of every cache are reported
+ * on stderr.  Programs that DUMP are run without the caches, so that the
+ * dump shows every call.
+ *
+ * Select this engine with:  java interpreter.Interpreter -e memo file.x.cod
+ *
+ * @author admin
+ */
+public class MemoizingVirtualMachine extends VirtualMachine {
+
+    public static final int DEFAULT_CACHE_SIZE = 4096;
+
+    // the cache of the function whose LABEL is at an address, if it is pure
+    private MemoCache[] cacheAt;
+    private Map<Integer, Function> functions;
+
+    // the calls that missed and are still running, with the depth of the
+    // RunTimeStack while they run and how many of the calls up to each one
+    // run in the same frame
+    private int[] pendingDepths = new int[16];
+    private int[] pendingRuns = new int[16];
+    private int[][] pendingArguments = new int[16][];
+    private MemoCache[] pendingCaches = new MemoCache[16];
+    private int pending;
+
+    public MemoizingVirtualMachine(Program prog){
+        this(prog, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param cacheSize the most results to keep for each function
+     */
+    public MemoizingVirtualMachine(Program prog, int cacheSize){
+        super(prog);
+        cacheAt = new MemoCache[prog.getNumberOfByteCodes()];
+        if (prog.containsDump()) return;
+
+        functions = FunctionAnalyzer.analyze(prog);
+        for (int entry : FunctionAnalyzer.pureFunctions(prog, functions)){
+            cacheAt[entry] = new MemoCache(functions.get(entry).getArity(), cacheSize);
+        }
+    }
+
+    public void executeProgram(){
+        super.executeProgram();
+        if (functions == null) return;
+        for (Function function : functions.values()){
+            if (!function.isMain() && cacheAt[function.getEntry()] != null){
+                System.err.println(report(function.getName(), cacheAt[function.getEntry()]));
+            }
+        }
+    }
+
+    private static String report(String name, MemoCache cache){
+        long calls = cache.getHits() + cache.getMisses();
+        long rate = (calls == 0 ? 0 : Math.round(100.0*cache.getHits()/calls));
+        return "memo: " + name + " " + cache.getHits() + " hits, " + cache.getMisses()
+                + " misses (" + rate + "% hit rate), " + cache.size() + " of "
+                + cache.getCapacity() + " entries";
+    }
+
+    public void callFunction(int address){
+        MemoCache cache = cacheAt[address];
+        if (cache == null){
+            super.callFunction(address);
+            return;
+        }
+        int[] arguments = getCurrentFrame();
+        if (!returnCached(cache, arguments)){
+            super.callFunction(address);
+            remember(cache, arguments);
+        }
+    }
+
+    public boolean tailCallFunction(int address){
+        MemoCache cache = cacheAt[address];
+        if (cache == null){
+            return super.tailCallFunction(address);
+        }
+        int[] arguments = getCurrentFrame();
+        if (returnCached(cache, arguments)) return false;
+        boolean reused = super.tailCallFunction(address);
+        remember(cache, arguments);
+        return reused;
+    }
+
+    // Pops the current frame, and stores the result of every call that
+    // missed its cache and ran in that frame.
+    public int popRunStackFrame(){
+        int depth = runStack.numberOfFrames();
+        int returnAddress = super.popRunStackFrame();
+        while (pending > 0 && pendingDepths[pending-1] >= depth){
+            pending--;
+            pendingCaches[pending].put(pendingArguments[pending], runStack.peek());
+            pendingArguments[pending] = null;
+        }
+        return returnAddress;
+    }
+
+    // If the result for the arguments of the frame the last ARGS set up is
+    // in the cache, put it where RETURN would have.
+    private boolean returnCached(MemoCache cache, int[] arguments){
+        int entry = cache.find(arguments);
+        if (entry < 0) return false;
+        // make sure the call has a frame of its own, even without ARGS
+        setReturnAddrs(pc);
+        pushRunStack(cache.valueAt(entry));
+        popRunStackFrame();
+        return true;
+    }
+
+    // Store the result of the call just made when its frame is popped,
+    // unless its frame already has as many results to store as the cache
+    // would keep.
+    private void remember(MemoCache cache, int[] arguments){
+        int depth = runStack.numberOfFrames();
+        int run = 1;
+        if (pending > 0 && pendingDepths[pending-1] == depth){
+            run = pendingRuns[pending-1] + 1;
+            if (run > cache.getCapacity()) return;
+        }
+        if (pending == pendingDepths.length){
+            pendingDepths = Arrays.copyOf(pendingDepths, pending*2);
+            pendingRuns = Arrays.copyOf(pendingRuns, pending*2);
+            pendingArguments = Arrays.copyOf(pendingArguments, pending*2);
+            pendingCaches = Arrays.copyOf(pendingCaches, pending*2);
+        }
+        pendingDepths[pending] = depth;
+        pendingRuns[pending] = run;
+        pendingArguments[pending] = arguments;
+        pendingCaches[pending] = cache;
+        pending++;
+    }
+}
@@ -0,0 +1,42 @@
+package interpreter.engine;
+import interpreter.*;
+import interpreter.node.Node;
+import interpreter.node.NodeGraph;
+
+/**
+ * A VirtualMachine that runs the program as a NodeGraph.  Each node returns
+ * the node to run next, so the loop keeps no pc, and the nodes specialize
+ * themselves as they run: a LIT feeding a BOP becomes one node, a BOP
+ * feeding a FALSEBRANCH becomes one node that branches on the result, and a
+ * FALSEBRANCH that always goes the same way becomes a BiasedBranchNode.
+ *
+ * Programs that DUMP run like they would on the plain VirtualMachine.
+ *
+ * Select this engine with:  java interpreter.Interpreter -e node file.x.cod
+ *
+ * @author admin
+ */
+public class NodeVirtualMachine extends VirtualMachine {
+
+    public NodeVirtualMachine(Program prog){
+        super(prog);
+    }
+
+    public void executeProgram(){
+        if (program.containsDump()){
+            super.executeProgram();
+            return;
+        }
+        NodeGraph graph = new NodeGraph(program);
+        pc = 0;
+        runStack = newRunTimeStack();
+        isRunning = true;
+
+        final RunTimeStack stack = runStack;
+        Node node = graph.getStart();
+        while (node != null){
+            node = node.execute(stack, this);
+        }
+        isRunning = false;
+    }
+}
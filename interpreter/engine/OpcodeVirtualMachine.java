@@ -0,0 +1,264 @@
+package interpreter.engine;
+import interpreter.*;
+import interpreter.ByteCode.*;
+
+/**
+ * A VirtualMachine that lowers its Program into two flat arrays, opcode[] and
+ * operand[], and runs them in one switch loop instead of fetching ByteCode
+ * objects and calling execute() on each of them.
+ *
+ * The ByteCodes are kept alongside the arrays.  Codes that have no opcode of
+ * their own (READ, the debugger codes, ...) are lowered to EXEC, which simply
+ * hands the original ByteCode to execute().  While dumping is on the VM also
+ * falls back to executing the ByteCodes one at a time so that the dump looks
+ * exactly as it does in the plain VirtualMachine.
+ *
+ * An ARGS n that is immediately followed by CALL f is lowered to ARGS_CALL,
+ * which sets up the frame and its return address with a single push.
+ *
+ * Select this engine with:  java interpreter.Interpreter -e opcode file.x.cod
+ *
+ * @author admin
+ */
+public class OpcodeVirtualMachine extends VirtualMachine {
+
+    static final int EXEC = 0;
+    static final int NOP = 1;
+    static final int LIT = 2;
+    static final int LOAD = 3;
+    static final int STORE = 4;
+    static final int POP = 5;
+    static final int ARGS = 6;
+    static final int CALL = 7;
+    static final int RETURN = 8;
+    static final int GOTO = 9;
+    static final int FALSEBRANCH = 10;
+    static final int WRITE = 11;
+    static final int HALT = 12;
+    static final int ADD = 13;
+    static final int SUB = 14;
+    static final int MUL = 15;
+    static final int DIV = 16;
+    static final int EQ = 17;
+    static final int NE = 18;
+    static final int LE = 19;
+    static final int GE = 20;
+    static final int LT = 21;
+    static final int GT = 22;
+    static final int OR = 23;
+    static final int AND = 24;
+    static final int ARGS_CALL = 25;
+
+    protected ByteCode[] codes;
+    protected int[] opcode;
+    protected int[] operand;
+
+    public OpcodeVirtualMachine(Program prog){
+        super(prog);
+        lower();
+    }
+
+    /**
+     * Translate every ByteCode in the program into an opcode and its single
+     * integer operand.
+     */
+    private void lower(){
+        int size = program.getNumberOfByteCodes();
+        codes = new ByteCode[size];
+        opcode = new int[size];
+        operand = new int[size];
+
+        for (int i=0; i<size; i++){
+            ByteCode code = program.getCode(i);
+            codes[i] = code;
+
+            if (code instanceof LitByteCode){
+                opcode[i] = LIT;
+                operand[i] = ((LitByteCode)code).value();
+            } else if (code instanceof LoadByteCode){
+                opcode[i] = LOAD;
+                operand[i] = ((LoadByteCode)code).offset();
+            } else if (code instanceof StoreByteCode){
+                opcode[i] = STORE;
+                operand[i] = ((StoreByteCode)code).offset();
+            } else if (code instanceof PopByteCode){
+                opcode[i] = POP;
+                operand[i] = ((PopByteCode)code).numLevels();
+            } else if (code instanceof ArgsByteCode){
+                opcode[i] = ARGS;
+                operand[i] = ((ArgsByteCode)code).numArguments();
+            } else if (code instanceof CallByteCode){
+                opcode[i] = CALL;
+                operand[i] = ((CallByteCode)code).targetAddrs;
+            } else if (code instanceof ReturnByteCode){
+                opcode[i] = RETURN;
+            } else if (code instanceof GoToByteCode){
+                opcode[i] = GOTO;
+                operand[i] = ((GoToByteCode)code).targetAddrs;
+            } else if (code instanceof FalseBranchByteCode){
+                opcode[i] = FALSEBRANCH;
+                operand[i] = ((FalseBranchByteCode)code).targetAddrs;
+            } else if (code instanceof LabelByteCode){
+                opcode[i] = NOP;
+            } else if (code instanceof WriteByteCode){
+                opcode[i] = WRITE;
+            } else if (code instanceof HaltByteCode){
+                opcode[i] = HALT;
+            } else if (code instanceof BopByteCode){
+                opcode[i] = lowerOperator(((BopByteCode)code).operator());
+            } else {
+                opcode[i] = EXEC;
+            }
+        }
+
+        // ARGS n directly followed by CALL f pushes the whole frame record
+        // in one step.  The CALL keeps its own opcode for anything that
+        // branches to it.
+        for (int i=0; i+1<size; i++){
+            if (opcode[i] == ARGS && opcode[i+1] == CALL) opcode[i] = ARGS_CALL;
+        }
+    }
+
+    private static int lowerOperator(String op){
+        if (op.equals("+")) return ADD;
+        if (op.equals("-")) return SUB;
+        if (op.equals("*")) return MUL;
+        if (op.equals("/")) return DIV;
+        if (op.equals("==")) return EQ;
+        if (op.equals("!=")) return NE;
+        if (op.equals("<=")) return LE;
+        if (op.equals(">=")) return GE;
+        if (op.equals("<")) return LT;
+        if (op.equals(">")) return GT;
+        if (op.equals("|")) return OR;
+        if (op.equals("&")) return AND;
+        return EXEC;
+    }
+
+    public void executeProgram(){
+        pc = 0;
+        runStack = newRunTimeStack();
+        isRunning = true;
+
+        while (isRunning){
+            if (dumping) step();
+            else runUntilDumping();
+        }
+    }
+
+    /**
+     * The dispatch loop.  Runs until the program halts or a DUMP ON is
+     * executed, at which point the caller takes over with step().
+     */
+    private void runUntilDumping(){
+        final int[] opcode = this.opcode;
+        final int[] operand = this.operand;
+        final RunTimeStack stack = runStack;
+        int pc = this.pc;
+        int a, b;
+
+        while (true){
+            switch (opcode[pc]){
+                case NOP:
+                    break;
+                case LIT:
+                    stack.push(operand[pc]);
+                    break;
+                case LOAD:
+                    stack.push(stack.getValueAtOffset(operand[pc]));
+                    break;
+                case STORE:
+                    stack.store(operand[pc]);
+                    break;
+                case POP:
+                    for (int i=operand[pc]; i>0; i--) stack.pop();
+                    break;
+                case ARGS:
+                    stack.newFrameOfSize(operand[pc]);
+                    break;
+                case ARGS_CALL:
+                    stack.newFrameOfSize(operand[pc], pc+1);
+                    pc = operand[pc+1];
+                    break;
+                case CALL:
+                    stack.setReturnAddress(pc);
+                    pc = operand[pc];
+                    break;
+                case RETURN:
+                    pc = stack.popFrame();
+                    break;
+                case GOTO:
+                    pc = operand[pc];
+                    break;
+                case FALSEBRANCH:
+                    if (stack.pop()==0) pc = operand[pc];
+                    break;
+                case WRITE:
+                    System.out.println(stack.peek());
+                    break;
+                case HALT:
+                    this.pc = pc + 1;
+                    turnOffVm();
+                    return;
+                case ADD:
+                    b = stack.pop(); a = stack.pop();
+                    stack.push(a + b);
+                    break;
+                case SUB:
+                    b = stack.pop(); a = stack.pop();
+                    stack.push(a - b);
+                    break;
+                case MUL:
+                    b = stack.pop(); a = stack.pop();
+                    stack.push(a * b);
+                    break;
+                case DIV:
+                    b = stack.pop(); a = stack.pop();
+                    stack.push(a / b);
+                    break;
+                case EQ:
+                    b = stack.pop(); a = stack.pop();
+                    stack.push(a == b ? 1 : 0);
+                    break;
+                case NE:
+                    b = stack.pop(); a = stack.pop();
+                    stack.push(a != b ? 1 : 0);
+                    break;
+                case LE:
+                    b = stack.pop(); a = stack.pop();
+                    stack.push(a <= b ? 1 : 0);
+                    break;
+                case GE:
+                    b = stack.pop(); a = stack.pop();
+                    stack.push(a >= b ? 1 : 0);
+                    break;
+                case LT:
+                    b = stack.pop(); a = stack.pop();
+                    stack.push(a < b ? 1 : 0);
+                    break;
+                case GT:
+                    b = stack.pop(); a = stack.pop();
+                    stack.push(a > b ? 1 : 0);
+                    break;
+                case OR:
+                    b = stack.pop(); a = stack.pop();
+                    stack.push((a==1)|(b==1) ? 1 : 0);
+                    break;
+                case AND:
+                    b = stack.pop(); a = stack.pop();
+                    stack.push((a==1)&(b==1) ? 1 : 0);
+                    break;
+                default:
+                    // EXEC: let the ByteCode run itself against the VM state.
+                    this.pc = pc;
+                    codes[pc].execute(this);
+                    pc = this.pc;
+                    if (!isRunning || dumping){
+                        this.pc = pc + 1;
+                        return;
+                    }
+            }
+            pc++;
+        }
+    }
+}
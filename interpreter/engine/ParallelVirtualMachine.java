@@ -0,0 +1,217 @@
+package interpreter.engine;
+import interpreter.*;
+import interpreter.analysis.Function;
+import interpreter.analysis.FunctionAnalyzer;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * A VirtualMachine that runs independent calls of pure functions at the
+ * same time on a ForkJoinPool.
+ *
+ * In  fib(n-2) + fib(n-1)  nothing needs the result of the first CALL
+ * before the BOP, and a pure function cannot be told apart from its result,
+ * so the first CALL can be handed to a CallTask while the VM goes on with
+ * the second one.  The arguments of the first CALL are replaced by a place
+ * holder right away, and the task's result is joined into it when the VM
+ * gets to the BOP.  FunctionAnalyzer.independentCalls finds these CALLs.
+ *
+ * Forking only pays off for calls that run long enough, so for every such
+ * CALL the VM learns how many codes its calls execute at each depth of the
+ * stack, counting the codes of the calls they fork, and only forks at the
+ * depths where that is at least the fork threshold.  Calls are forked at
+ * depths it has not seen yet.  The numbers are shared by all the VMs of the
+ * program without locking; a lost update only makes a guess a little worse.
+ *
+ * Programs that DUMP run one call at a time.
+ *
+ * Select this engine with:  java interpreter.Interpreter -e parallel file.x.cod
+ *
+ * @author admin
+ */
+public class ParallelVirtualMachine extends VirtualMachine {
+
+    public static final int DEFAULT_FORK_THRESHOLD = 10000;
+
+    // the depths the sizes of calls are told apart at; deeper calls count
+    // as being at the last one
+    private static final int DEPTHS = 64;
+
+    // shared by all the VMs of the program
+    private ForkJoinPool pool;
+    private int forkThreshold;
+    // the number of each independent CALL by address, -1 for other codes
+    private int[] forkAt;
+    // the address of the BOP each independent CALL is joined at
+    private int[] joinAt;
+    // the codes a call at an independent CALL executes, by the number of
+    // the CALL times DEPTHS plus the depth; 0 until one has run
+    private int[] sizes;
+
+    // the number of frames of the VM that forked this one below its frames
+    private int baseDepth;
+    private long steps;
+
+    // the forked calls this VM has not joined yet
+    private CallTask[] tasks = new CallTask[16];
+    private int[] joinFrames = new int[16];
+    private int[] joinSlots = new int[16];
+    private int[] joinForks = new int[16];
+    private int joins;
+
+    // the calls at independent CALLs that run in this VM and are measured
+    private int[] measuredFrames = new int[16];
+    private long[] measuredSteps = new long[16];
+    private int[] measuredForks = new int[16];
+    private int measured;
+
+    public ParallelVirtualMachine(Program prog){
+        this(prog, DEFAULT_FORK_THRESHOLD);
+    }
+
+    /**
+     * @param forkThreshold the least number of codes a call has to execute
+     *  for it to be worth forking
+     */
+    public ParallelVirtualMachine(Program prog, int forkThreshold){
+        super(prog);
+        this.forkThreshold = forkThreshold;
+        forkAt = new int[prog.getNumberOfByteCodes()];
+        Arrays.fill(forkAt, -1);
+        if (prog.containsDump()){
+            joinAt = new int[0];
+            return;
+        }
+
+        Map<Integer, Function> functions = FunctionAnalyzer.analyze(prog);
+        Map<Integer, Integer> joins = FunctionAnalyzer.independentCalls(prog,
+                FunctionAnalyzer.pureFunctions(prog, functions));
+        joinAt = new int[joins.size()];
+        int fork = 0;
+        for (Map.Entry<Integer, Integer> call : joins.entrySet()){
+            forkAt[call.getKey()] = fork;
+            joinAt[fork] = call.getValue();
+            fork++;
+        }
+        sizes = new int[joinAt.length*DEPTHS];
+    }
+
+    // A VM for a call that parent forked at depth.
+    ParallelVirtualMachine(ParallelVirtualMachine parent, int depth){
+        super(parent.program);
+        pool = parent.pool;
+        forkThreshold = parent.forkThreshold;
+        forkAt = parent.forkAt;
+        joinAt = parent.joinAt;
+        sizes = parent.sizes;
+        // the call's frame is the second one, above the main program's
+        baseDepth = depth - 2;
+    }
+
+    public void executeProgram(){
+        if (joinAt.length == 0){
+            super.executeProgram();
+            return;
+        }
+        // run on the pool, so that joining a task helps run the others
+        pool = new ForkJoinPool();
+        pool.invoke(ForkJoinTask.adapt(() -> super.executeProgram()));
+        pool.shutdown();
+    }
+
+    long getSteps(){
+        return steps;
+    }
+
+    protected void step(){
+        if (joins > 0 && pc == joinAt[joinForks[joins-1]]
+                && runStack.numberOfFrames() == joinFrames[joins-1]){
+            join();
+        }
+        super.step();
+        steps++;
+    }
+
+    public void callFunction(int address){
+        int fork = forkAt[pc];
+        if (fork < 0){
+            super.callFunction(address);
+            return;
+        }
+        // the call's frame is the one the ARGS in front of the CALL set up
+        int depth = Math.min(baseDepth + runStack.numberOfFrames(), DEPTHS-1);
+        int size = sizes[fork*DEPTHS + depth];
+        if (size != 0 && size < forkThreshold){
+            super.callFunction(address);
+            measure(fork);
+            return;
+        }
+
+        int[] arguments = getCurrentFrame();
+        // leave a place holder for the result where RETURN would have
+        runStack.setReturnAddress(pc);
+        runStack.push(0);
+        runStack.popFrame();
+        CallTask task = new CallTask(this, address, arguments, baseDepth + runStack.numberOfFrames() + 1);
+        task.fork();
+
+        if (joins == tasks.length){
+            tasks = Arrays.copyOf(tasks, joins*2);
+            joinFrames = Arrays.copyOf(joinFrames, joins*2);
+            joinSlots = Arrays.copyOf(joinSlots, joins*2);
+            joinForks = Arrays.copyOf(joinForks, joins*2);
+        }
+        tasks[joins] = task;
+        joinFrames[joins] = runStack.numberOfFrames();
+        joinSlots[joins] = runStack.currentOffset();
+        joinForks[joins] = fork;
+        joins++;
+    }
+
+    // Pops the current frame, and learns the size of every measured call
+    // that ran in that frame.
+    public int popRunStackFrame(){
+        int frames = runStack.numberOfFrames();
+        int returnAddress = super.popRunStackFrame();
+        while (measured > 0 && measuredFrames[measured-1] >= frames){
+            measured--;
+            learn(measuredForks[measured], measuredFrames[measured],
+                    steps - measuredSteps[measured]);
+        }
+        return returnAddress;
+    }
+
+    // Put the result of the last forked call in its place holder.
+    private void join(){
+        joins--;
+        CallTask task = tasks[joins];
+        tasks[joins] = null;
+        runStack.setValueAtOffset(joinSlots[joins], task.join());
+        steps += task.getSteps();
+        learn(joinForks[joins], joinFrames[joins] + 1, task.getSteps());
+    }
+
+    // Measure the call just made at the independent CALL fork.
+    private void measure(int fork){
+        if (measured == measuredFrames.length){
+            measuredFrames = Arrays.copyOf(measuredFrames, measured*2);
+            measuredSteps = Arrays.copyOf(measuredSteps, measured*2);
+            measuredForks = Arrays.copyOf(measuredForks, measured*2);
+        }
+        measuredFrames[measured] = runStack.numberOfFrames();
+        measuredSteps[measured] = steps;
+        measuredForks[measured] = fork;
+        measured++;
+    }
+
+    // Learn that a call at the independent CALL fork whose frame was the
+    // frames-th of this VM executed size codes.
+    private void learn(int fork, int frames, long size){
+        int depth = Math.min(baseDepth + frames, DEPTHS-1);
+        int known = sizes[fork*DEPTHS + depth];
+        int seen = (int)Math.max(Math.min(size, Integer.MAX_VALUE/2), 1);
+        // follow the recent calls, so that a few odd ones do not decide
+        sizes[fork*DEPTHS + depth] = (known == 0 ? seen : (int)(((long)known*3 + seen)/4));
+    }
+}
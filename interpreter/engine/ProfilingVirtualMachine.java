@@ -0,0 +1,78 @@
+package interpreter.engine;
+import interpreter.*;
+import interpreter.optimizer.SuperInstructionFuser;
+
+/**
+ * A VirtualMachine that counts how often each pair and triple of consecutive
+ * bytecodes runs back to back.  After the first profileLength dispatches it
+ * hands the counts to the SuperInstructionFuser, which replaces the hottest
+ * sequences with superinstructions, and then keeps running the fused program.
+ *
+ * Fusing only replaces codes in the Program and never moves them, so it is
+ * safe to do in the middle of a run.
+ *
+ * Select this engine with:  java interpreter.Interpreter -e super file.x.cod
+ *
+ * @author admin
+ */
+public class ProfilingVirtualMachine extends VirtualMachine {
+
+    private int profileLength;
+    private int minCount;
+    private int maxFusions;
+    private int fusedCount;
+
+    public ProfilingVirtualMachine(Program prog){
+        this(prog, 100000, 100, 32);
+    }
+
+    /**
+     * @param profileLength the number of dispatches to profile before fusing
+     * @param minCount the fewest runs for a sequence to be worth fusing
+     * @param maxFusions the most superinstructions to create
+     */
+    public ProfilingVirtualMachine(Program prog, int profileLength, int minCount, int maxFusions){
+        super(prog);
+        this.profileLength = profileLength;
+        this.minCount = minCount;
+        this.maxFusions = maxFusions;
+    }
+
+    public void executeProgram(){
+        pc = 0;
+        runStack = newRunTimeStack();
+        isRunning = true;
+
+        int size = program.getNumberOfByteCodes();
+        int[] pairCounts = new int[size];
+        int[] tripleCounts = new int[size];
+        // addresses of the two codes that ran before the current one
+        int previous = -2, beforePrevious = -2;
+
+        for (int dispatches=0; isRunning && dispatches<profileLength; dispatches++){
+            int current = pc;
+            if (current == previous+1){
+                pairCounts[previous]++;
+                if (previous == beforePrevious+1) tripleCounts[beforePrevious]++;
+            }
+            beforePrevious = previous;
+            previous = current;
+            step();
+        }
+
+        if (isRunning){
+            fusedCount = SuperInstructionFuser.fuse(program, pairCounts, tripleCounts,
+                    minCount, maxFusions);
+        }
+        while (isRunning){
+            step();
+        }
+    }
+
+    /**
+     * @return how many superinstructions were created during the run.
+     */
+    public int getFusedCount(){
+        return fusedCount;
+    }
+}
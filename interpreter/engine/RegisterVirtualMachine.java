@@ -0,0 +1,136 @@
+package interpreter.engine;
+import interpreter.*;
+import interpreter.ByteCode.ReadByteCode;
+import interpreter.register.RegisterProgram;
+import interpreter.register.RegisterTranslator;
+import java.util.Arrays;
+
+/**
+ * A VirtualMachine that translates the program to register form with the
+ * RegisterTranslator and runs the RegisterProgram.
+ *
+ * All registers live in one array.  A call slides the window of registers
+ * up to the callee's arguments, like Lua does, so passing the arguments and
+ * the result moves nothing.
+ *
+ * Programs that DUMP, or that the RegisterTranslator cannot translate, run
+ * like they would on the plain VirtualMachine.
+ *
+ * Select this engine with:  java interpreter.Interpreter -e register file.x.cod
+ *
+ * @author admin
+ */
+public class RegisterVirtualMachine extends VirtualMachine {
+
+    private RegisterProgram code;
+
+    public RegisterVirtualMachine(Program prog){
+        super(prog);
+    }
+
+    /**
+     * @return the translated program, or null if it was run by the plain
+     *  VirtualMachine.
+     */
+    public RegisterProgram getRegisterProgram(){
+        return code;
+    }
+
+    public void executeProgram(){
+        code = (program.containsDump() ? null : RegisterTranslator.translate(program));
+        if (code == null){
+            super.executeProgram();
+            return;
+        }
+        pc = 0;
+        runStack = newRunTimeStack();
+        isRunning = true;
+        run(code.getOpcodes(), code.getA(), code.getB(), code.getC(), code.getConstants());
+        turnOffVm();
+    }
+
+    private void run(int[] opcode, int[] a, int[] b, int[] c, int[] constants){
+        int[] registers = new int[Math.max(256, code.getRegisters(0))];
+        int base = 0;
+        // the pc to go back to and the base of the caller, for every call
+        int[] returnPcs = new int[64];
+        int[] bases = new int[64];
+        int calls = 0;
+        int pc = code.getStart(0);
+
+        while (true){
+            int i = pc++;
+            int x, y;
+            switch (opcode[i]){
+                case RegisterProgram.MOVE:
+                    x = b[i];
+                    registers[base+a[i]] = (x >= 0 ? registers[base+x] : constants[~x]);
+                    break;
+                case RegisterProgram.READ:
+                    registers[base+a[i]] = ReadByteCode.readInteger();
+                    break;
+                case RegisterProgram.WRITE:
+                    x = b[i];
+                    System.out.println(x >= 0 ? registers[base+x] : constants[~x]);
+                    break;
+                case RegisterProgram.JUMP:
+                    pc = c[i];
+                    break;
+                case RegisterProgram.JUMPF:
+                    x = b[i];
+                    if ((x >= 0 ? registers[base+x] : constants[~x]) == 0) pc = c[i];
+                    break;
+                case RegisterProgram.CALL:
+                    if (calls == returnPcs.length){
+                        returnPcs = Arrays.copyOf(returnPcs, calls*2);
+                        bases = Arrays.copyOf(bases, calls*2);
+                    }
+                    returnPcs[calls] = pc;
+                    bases[calls] = base;
+                    calls++;
+                    base += a[i];
+                    int needed = base + code.getRegisters(b[i]);
+                    if (needed > registers.length){
+                        registers = Arrays.copyOf(registers, Math.max(needed, registers.length*2));
+                    }
+                    pc = code.getStart(b[i]);
+                    break;
+                case RegisterProgram.RET:
+                    x = b[i];
+                    int result = (x >= 0 ? registers[base+x] : constants[~x]);
+                    if (calls == 0) return;
+                    // the callee's r0 is where the caller expects the result
+                    registers[base] = result;
+                    calls--;
+                    pc = returnPcs[calls];
+                    base = bases[calls];
+                    break;
+                case RegisterProgram.HALT:
+                    return;
+                default:
+                    x = b[i];
+                    y = c[i];
+                    int first = (x >= 0 ? registers[base+x] : constants[~x]);
+                    int second = (y >= 0 ? registers[base+y] : constants[~y]);
+                    registers[base+a[i]] = apply(opcode[i], first, second);
+            }
+        }
+    }
+
+    private static int apply(int op, int first, int second){
+        switch (op){
+            case RegisterProgram.ADD: return first + second;
+            case RegisterProgram.SUB: return first - second;
+            case RegisterProgram.MUL: return first * second;
+            case RegisterProgram.DIV: return first / second;
+            case RegisterProgram.EQ: return (first == second ? 1 : 0);
+            case RegisterProgram.NE: return (first != second ? 1 : 0);
+            case RegisterProgram.LE: return (first <= second ? 1 : 0);
+            case RegisterProgram.GE: return (first >= second ? 1 : 0);
+            case RegisterProgram.LT: return (first < second ? 1 : 0);
+            case RegisterProgram.GT: return (first > second ? 1 : 0);
+            case RegisterProgram.OR: return ((first == 1) | (second == 1) ? 1 : 0);
+            default: return ((first == 1) & (second == 1) ? 1 : 0);
+        }
+    }
+}
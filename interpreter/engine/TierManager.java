@@ -0,0 +1,183 @@
+package interpreter.engine;
+import interpreter.Program;
+import interpreter.analysis.Function;
+import interpreter.analysis.FunctionAnalyzer;
+import interpreter.compiler.ClosureCompiler;
+import interpreter.compiler.ClosureFunction;
+import interpreter.compiler.CompiledFunction;
+import interpreter.compiler.JitCompiler;
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * Decides which tier runs each function of a program.
+ *
+ * Every function starts out interpreted.  The TieredVirtualMachine reports
+ * each call of a function and each backward branch taken inside it, and the
+ * sum of the two is how hot the function is.  Once it reaches
+ * closureThreshold the function is compiled by the ClosureCompiler, and once
+ * it reaches jitThreshold by the JitCompiler.  A function that cannot be
+ * compiled for a tier stays where it is.  Promotions are logged.
+ *
+ * A tier can be forced for a function, which then gets that tier on its first
+ * call and keeps it.
+ *
+ * Functions that may execute a HALT stay interpreted, and so does everything
+ * in a program that DUMPs.  The main program is never called, so it is never
+ * promoted either.
+ *
+ * @author admin
+ */
+public class TierManager {
+
+    public enum Tier { INTERPRETER, CLOSURE, JIT }
+
+    // What the manager knows about one function.
+    static class Profile {
+        Function function;
+        int invocations;
+        int backwardBranches;
+        Tier tier = Tier.INTERPRETER;
+        Tier forced;
+        // the highest tier the function could be compiled for
+        Tier limit = Tier.JIT;
+        ClosureFunction closure;
+        CompiledFunction compiled;
+
+        Profile(Function function){
+            this.function = function;
+        }
+
+        int heat(){
+            return invocations + backwardBranches;
+        }
+    }
+
+    private int closureThreshold;
+    private int jitThreshold;
+    private HashMap<Integer, Profile> profiles = new HashMap<Integer, Profile>();
+    // the entry of the function each address belongs to
+    private int[] owners;
+    private ClosureCompiler closureCompiler;
+    private JitCompiler jitCompiler;
+    private PrintStream log = System.err;
+
+    /**
+     * @param closureCompiler compiles functions for the CLOSURE tier; its calls
+     *  must go through the VM, so that the callee runs in its own tier
+     */
+    public TierManager(Program program, Map<Integer, Function> functions,
+            ClosureCompiler closureCompiler, int closureThreshold, int jitThreshold){
+        this.closureCompiler = closureCompiler;
+        this.closureThreshold = closureThreshold;
+        this.jitThreshold = jitThreshold;
+        jitCompiler = new JitCompiler(program, functions);
+
+        Set<Integer> mayHalt = FunctionAnalyzer.functionsThatMayHalt(program, functions);
+        owners = new int[program.getNumberOfByteCodes()];
+        Arrays.fill(owners, Function.MAIN);
+        for (Function function : functions.values()){
+            Profile profile = new Profile(function);
+            if (function.isMain() || mayHalt.contains(function.getEntry()) || program.containsDump()){
+                profile.limit = Tier.INTERPRETER;
+            }
+            profiles.put(function.getEntry(), profile);
+            if (function.isMain()) continue;
+            for (int address : function.getCodes()){
+                owners[address] = function.getEntry();
+            }
+        }
+    }
+
+    /**
+     * Run the function at entry in tier from its first call on.
+     *
+     * @param name the function's label, with or without its <<n>> suffix
+     * @return false if the program has no function of that name.
+     */
+    public boolean forceTier(String name, Tier tier){
+        boolean found = false;
+        for (Profile profile : profiles.values()){
+            String label = profile.function.getName();
+            if (label.equals(name) || label.startsWith(name + "<<")){
+                profile.forced = tier;
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Count a call of the function at entry and promote it if it got hot.
+     *
+     * @return the function's profile, which says how to run this call.
+     */
+    Profile invoked(int entry){
+        Profile profile = profiles.get(entry);
+        profile.invocations++;
+        update(profile);
+        return profile;
+    }
+
+    /**
+     * Count a backward branch taken at address.  A promotion it causes takes
+     * effect with the next call of the function.
+     */
+    void branchedBack(int address){
+        Profile profile = profiles.get(owners[address]);
+        profile.backwardBranches++;
+        update(profile);
+    }
+
+    private void update(Profile profile){
+        Tier target = profile.forced;
+        if (target == null){
+            int heat = profile.heat();
+            if (heat >= jitThreshold) target = Tier.JIT;
+            else if (heat >= closureThreshold) target = Tier.CLOSURE;
+            else return;
+        }
+        if (target.compareTo(profile.limit) > 0) target = profile.limit;
+        if (target.compareTo(profile.tier) <= 0) return;
+
+        if (target == Tier.JIT){
+            profile.compiled = jitCompiler.compile(profile.function);
+            if (profile.compiled == null){
+                profile.limit = Tier.CLOSURE;
+                update(profile);
+                return;
+            }
+        } else {
+            if (closureCompiler.canCompile(profile.function)){
+                profile.closure = closureCompiler.compile(profile.function);
+            } else {
+                profile.limit = Tier.INTERPRETER;
+                return;
+            }
+        }
+        log.println("tier: " + profile.function.getName() + " " + name(profile.tier) + " -> "
+                + name(target) + " after " + profile.invocations + " calls and "
+                + profile.backwardBranches + " backward branches");
+        profile.tier = target;
+    }
+
+    private static String name(Tier tier){
+        return tier.name().toLowerCase();
+    }
+
+    /**
+     * @return the tier the function of that name currently runs in, or null
+     *  if there is no such function.
+     */
+    public Tier getTier(String name){
+        for (Profile profile : profiles.values()){
+            String label = profile.function.getName();
+            if (label.equals(name) || label.startsWith(name + "<<")) return profile.tier;
+        }
+        return null;
+    }
+
+    public void setLog(PrintStream log){
+        this.log = log;
+    }
+}
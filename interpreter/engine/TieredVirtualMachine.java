@@ -0,0 +1,145 @@
+package interpreter.engine;
+import interpreter.*;
+import interpreter.ByteCode.*;
+import interpreter.analysis.Function;
+import interpreter.analysis.FunctionAnalyzer;
+import interpreter.compiler.ClosureCompiler;
+import java.util.*;
+
+/**
+ * A VirtualMachine that runs each function in the tier its TierManager
+ * picked for it: interpreted, compiled to closures, or compiled to JVM
+ * bytecode.  Calls between functions always go through the VM, so every
+ * call runs the callee in its current tier and is counted.
+ *
+ * Compiled code of either tier runs on the Java stack, so at most
+ * MAX_COMPILED_DEPTH compiled functions run inside one another.  Calls any
+ * deeper than that are interpreted, in the VM's own frames, so a program
+ * recurses as deep here as it does on the plain VM.
+ *
+ * Select this engine with:  java interpreter.Interpreter -e tiered file.x.cod
+ *
+ * @author admin
+ */
+public class TieredVirtualMachine extends VirtualMachine {
+
+    // the most compiled functions running inside one another
+    public static final int MAX_COMPILED_DEPTH = 32;
+
+    private TierManager tiers;
+    // the compiled functions running right now
+    private int compiledDepth;
+    // whether the code at an address is a branch to an earlier address
+    private boolean[] branchesBack;
+
+    public TieredVirtualMachine(Program prog){
+        this(prog, 100, 1000);
+    }
+
+    /**
+     * @param closureThreshold how hot a function gets before it is compiled
+     *  to closures
+     * @param jitThreshold how hot a function gets before it is compiled to
+     *  JVM bytecode
+     */
+    public TieredVirtualMachine(Program prog, int closureThreshold, int jitThreshold){
+        super(prog);
+        Map<Integer, Function> functions = FunctionAnalyzer.analyze(prog);
+        ClosureCompiler closures = new ClosureCompiler(prog, functions){
+            protected Statement call(int entry, int first, Expression[] arguments){
+                return frame -> {
+                    for (Expression argument : arguments){
+                        pushRunStack(argument.eval(frame));
+                    }
+                    frame[first] = invokeFunction(entry, arguments.length);
+                };
+            }
+        };
+        tiers = new TierManager(prog, functions, closures, closureThreshold, jitThreshold);
+
+        branchesBack = new boolean[prog.getNumberOfByteCodes()];
+        for (int i=0; i<branchesBack.length; i++){
+            ByteCode code = prog.getCode(i);
+            if (code instanceof GoToByteCode){
+                branchesBack[i] = ((GoToByteCode)code).targetAddrs < i;
+            } else if (code instanceof FalseBranchByteCode){
+                branchesBack[i] = ((FalseBranchByteCode)code).targetAddrs < i;
+            }
+        }
+    }
+
+    public TierManager getTierManager(){
+        return tiers;
+    }
+
+    protected void step(){
+        int address = pc;
+        super.step();
+        // a branch to t continues at t+1, so a taken backward branch ends up
+        // at or before the branch itself
+        if (branchesBack[address] && pc <= address){
+            tiers.branchedBack(address);
+        }
+    }
+
+    public void callFunction(int address){
+        TierManager.Profile profile = tiers.invoked(address);
+        if (interprets(profile)){
+            super.callFunction(address);
+            return;
+        }
+        callCompiled(profile);
+    }
+
+    // Compiled code runs on the Java stack, so there is no frame to reuse
+    // when it is tail called.
+    public boolean tailCallFunction(int address){
+        TierManager.Profile profile = tiers.invoked(address);
+        if (interprets(profile)){
+            return super.tailCallFunction(address);
+        }
+        callCompiled(profile);
+        return false;
+    }
+
+    private void callCompiled(TierManager.Profile profile){
+        // make sure the call has a frame of its own, even without ARGS
+        setReturnAddrs(pc);
+        pushRunStack(runCompiled(profile));
+        popRunStackFrame();
+    }
+
+    public int invokeFunction(int entry, int numArgs){
+        TierManager.Profile profile = tiers.invoked(entry);
+        if (interprets(profile)){
+            return super.invokeFunction(entry, numArgs);
+        }
+        newFrameOnRunTimeStackAt(numArgs);
+        pushRunStack(runCompiled(profile));
+        popRunStackFrame();
+        return popRunStack();
+    }
+
+    // Whether this call of the function is interpreted, because that is its
+    // tier or because compiled code already runs too deep.
+    private boolean interprets(TierManager.Profile profile){
+        return profile.tier == TierManager.Tier.INTERPRETER || compiledDepth >= MAX_COMPILED_DEPTH;
+    }
+
+    // Run a compiled function whose arguments are in the current frame.
+    private int runCompiled(TierManager.Profile profile){
+        compiledDepth++;
+        try {
+            if (profile.tier == TierManager.Tier.JIT){
+                return profile.compiled.invoke(this);
+            }
+            int[] frame = profile.closure.newFrame();
+            for (int i=0; i<profile.closure.getArity(); i++){
+                frame[i] = getValueAtOffset(i);
+            }
+            return profile.closure.run(frame);
+        } finally {
+            compiledDepth--;
+        }
+    }
+}
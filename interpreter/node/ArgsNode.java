@@ -0,0 +1,22 @@
+package interpreter.node;
+import interpreter.RunTimeStack;
+import interpreter.VirtualMachine;
+
+/**
+ * ARGS n
+ * 
+ * @author admin
+ */
+class ArgsNode extends Node {
+    
+    private int arguments;
+    
+    ArgsNode(int arguments){
+        this.arguments = arguments;
+    }
+    
+    public Node execute(RunTimeStack stack, VirtualMachine vm){
+        stack.newFrameOfSize(arguments);
+        return next;
+    }
+}
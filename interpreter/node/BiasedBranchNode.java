@@ -0,0 +1,42 @@
+package interpreter.node;
+import interpreter.RunTimeStack;
+import interpreter.VirtualMachine;
+
+/**
+ * A FALSEBRANCH that has so far always gone the same way.  The expected way
+ * is the straight path through execute(); the first time the branch goes
+ * the other way, the node gives up and replaces itself with a plain
+ * FalseBranchNode that no longer profiles.
+ * 
+ * @author admin
+ */
+class BiasedBranchNode extends Node {
+    
+    Node target;
+    private boolean expectTaken;
+    
+    BiasedBranchNode(boolean expectTaken){
+        this.expectTaken = expectTaken;
+    }
+    
+    public Node execute(RunTimeStack stack, VirtualMachine vm){
+        boolean jump = (stack.pop() == 0);
+        if (jump == expectTaken){
+            return (expectTaken ? target : next);
+        }
+        FalseBranchNode general = new FalseBranchNode(false);
+        general.next = next;
+        general.target = target;
+        graph.replace(this, general);
+        return (jump ? target : next);
+    }
+    
+    Node[] successors(){
+        return new Node[]{next, target};
+    }
+    
+    void redirect(Node from, Node to){
+        super.redirect(from, to);
+        if (target == from) target = to;
+    }
+}
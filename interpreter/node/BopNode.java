@@ -0,0 +1,37 @@
+package interpreter.node;
+import interpreter.RunTimeStack;
+import interpreter.VirtualMachine;
+import interpreter.ByteCode.BopByteCode;
+
+/**
+ * BOP op.  A BOP whose result only decides the FALSEBRANCH after it
+ * replaces itself with a CompareBranchNode the first time it runs, so the
+ * result is never pushed.
+ * 
+ * @author admin
+ */
+class BopNode extends Node {
+    
+    BopByteCode operation;
+    private boolean specialized;
+    
+    BopNode(String operator){
+        operation = BopByteCode.forOperator(operator);
+    }
+    
+    public Node execute(RunTimeStack stack, VirtualMachine vm){
+        if (!specialized){
+            specialized = true;
+            if (next instanceof FalseBranchNode){
+                FalseBranchNode branch = (FalseBranchNode)next;
+                Node fused = new CompareBranchNode(operation, branch.next, branch.target);
+                graph.replace(this, fused);
+                return fused.execute(stack, vm);
+            }
+        }
+        int second = stack.pop();
+        int first = stack.pop();
+        stack.push(operation.apply(first, second));
+        return next;
+    }
+}
@@ -0,0 +1,36 @@
+package interpreter.node;
+import interpreter.RunTimeStack;
+import interpreter.VirtualMachine;
+
+/**
+ * CALL f, which links to the first node of f.  The frame records the CALL's
+ * address as usual, and the RETURN looks up the node after it in the graph.
+ * A tail call reuses the caller's frame when it can. 
+ * 
+ * @author admin
+ */
+class CallNode extends Node {
+    
+    Node callee;
+    private boolean isTailCall;
+    
+    CallNode(boolean isTailCall){
+        this.isTailCall = isTailCall;
+    }
+    
+    public Node execute(RunTimeStack stack, VirtualMachine vm){
+        if (!isTailCall || !stack.replaceFrame()){
+            stack.setReturnAddress(address);
+        }
+        return callee;
+    }
+    
+    Node[] successors(){
+        return new Node[]{next, callee};
+    }
+    
+    void redirect(Node from, Node to){
+        super.redirect(from, to);
+        if (callee == from) callee = to;
+    }
+}
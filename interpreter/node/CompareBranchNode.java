@@ -0,0 +1,46 @@
+package interpreter.node;
+import interpreter.RunTimeStack;
+import interpreter.VirtualMachine;
+import interpreter.ByteCode.BopByteCode;
+
+/**
+ * BOP op; FALSEBRANCH l  as one node, which branches on the result of op
+ * without pushing it.  The second operand is either on the stack or a
+ * constant from a LIT in front of the BOP.
+ * 
+ * @author admin
+ */
+class CompareBranchNode extends Node {
+    
+    private BopByteCode operation;
+    private boolean hasConstant;
+    private int constant;
+    Node target;
+    
+    CompareBranchNode(BopByteCode operation, Node next, Node target){
+        this.operation = operation;
+        this.next = next;
+        this.target = target;
+    }
+    
+    CompareBranchNode(BopByteCode operation, int constant, Node next, Node target){
+        this(operation, next, target);
+        this.hasConstant = true;
+        this.constant = constant;
+    }
+    
+    public Node execute(RunTimeStack stack, VirtualMachine vm){
+        int second = (hasConstant ? constant : stack.pop());
+        int first = stack.pop();
+        return (operation.apply(first, second) == 0 ? target : next);
+    }
+    
+    Node[] successors(){
+        return new Node[]{next, target};
+    }
+    
+    void redirect(Node from, Node to){
+        super.redirect(from, to);
+        if (target == from) target = to;
+    }
+}
@@ -0,0 +1,38 @@
+package interpreter.node;
+import interpreter.RunTimeStack;
+import interpreter.VirtualMachine;
+import interpreter.ByteCode.BopByteCode;
+
+/**
+ * LIT n; BOP op  as one node, which applies op to the top of the stack and
+ * n.  Like a BopNode, it turns into a CompareBranchNode the first time it
+ * runs if a FALSEBRANCH comes next.
+ * 
+ * @author admin
+ */
+class ConstantOperandNode extends Node {
+    
+    private BopByteCode operation;
+    private int constant;
+    private boolean specialized;
+    
+    ConstantOperandNode(BopByteCode operation, int constant, Node next){
+        this.operation = operation;
+        this.constant = constant;
+        this.next = next;
+    }
+    
+    public Node execute(RunTimeStack stack, VirtualMachine vm){
+        if (!specialized){
+            specialized = true;
+            if (next instanceof FalseBranchNode){
+                FalseBranchNode branch = (FalseBranchNode)next;
+                Node fused = new CompareBranchNode(operation, constant, branch.next, branch.target);
+                graph.replace(this, fused);
+                return fused.execute(stack, vm);
+            }
+        }
+        stack.push(operation.apply(stack.pop(), constant));
+        return next;
+    }
+}
@@ -0,0 +1,27 @@
+package interpreter.node;
+import interpreter.RunTimeStack;
+import interpreter.VirtualMachine;
+import interpreter.ByteCode.ByteCode;
+
+/**
+ * Any other code, which runs itself against the VM as usual.  The VM's pc
+ * is set to the code's address first, and the node after the address the
+ * code leaves in the pc runs next.
+ * 
+ * @author admin
+ */
+class ExecNode extends Node {
+    
+    private ByteCode code;
+    
+    ExecNode(ByteCode code){
+        this.code = code;
+    }
+    
+    public Node execute(RunTimeStack stack, VirtualMachine vm){
+        vm.setPc(address);
+        code.execute(vm);
+        if (vm.doneExecuting()) return null;
+        return graph.nodeAfter(vm.getPc());
+    }
+}
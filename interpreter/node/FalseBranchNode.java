@@ -0,0 +1,57 @@
+package interpreter.node;
+import interpreter.RunTimeStack;
+import interpreter.VirtualMachine;
+
+/**
+ * FALSEBRANCH l, which links to the node after the LABEL l.
+ * 
+ * The node counts which way it goes for its first PROFILE_LENGTH runs.  If
+ * it went the same way every time, it replaces itself with a
+ * BiasedBranchNode for that way.  Either way it stops counting. 
+ * 
+ * @author admin
+ */
+class FalseBranchNode extends Node {
+    
+    static final int PROFILE_LENGTH = 1000;
+    
+    Node target;
+    private boolean profiling;
+    private int runs;
+    private int taken;
+    
+    FalseBranchNode(){
+        this(true);
+    }
+    
+    FalseBranchNode(boolean profiling){
+        this.profiling = profiling;
+    }
+    
+    public Node execute(RunTimeStack stack, VirtualMachine vm){
+        boolean jump = (stack.pop() == 0);
+        if (profiling){
+            runs++;
+            if (jump) taken++;
+            if (runs == PROFILE_LENGTH){
+                profiling = false;
+                if (taken == runs || taken == 0){
+                    BiasedBranchNode biased = new BiasedBranchNode(taken == runs);
+                    biased.next = next;
+                    biased.target = target;
+                    graph.replace(this, biased);
+                }
+            }
+        }
+        return (jump ? target : next);
+    }
+    
+    Node[] successors(){
+        return new Node[]{next, target};
+    }
+    
+    void redirect(Node from, Node to){
+        super.redirect(from, to);
+        if (target == from) target = to;
+    }
+}
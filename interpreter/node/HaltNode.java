@@ -0,0 +1,16 @@
+package interpreter.node;
+import interpreter.RunTimeStack;
+import interpreter.VirtualMachine;
+
+/**
+ * HALT
+ * 
+ * @author admin
+ */
+class HaltNode extends Node {
+    
+    public Node execute(RunTimeStack stack, VirtualMachine vm){
+        vm.turnOffVm();
+        return null;
+    }
+}
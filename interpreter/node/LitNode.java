@@ -0,0 +1,29 @@
+package interpreter.node;
+import interpreter.RunTimeStack;
+import interpreter.VirtualMachine;
+
+/**
+ * LIT n.  A LIT whose value is the second operand of the BOP after it
+ * replaces itself with a ConstantOperandNode the first time it runs, so the
+ * value is never pushed.
+ * 
+ * @author admin
+ */
+class LitNode extends Node {
+    
+    private int value;
+    
+    LitNode(int value){
+        this.value = value;
+    }
+    
+    public Node execute(RunTimeStack stack, VirtualMachine vm){
+        if (next instanceof BopNode){
+            Node specialized = new ConstantOperandNode(((BopNode)next).operation, value, next.next);
+            graph.replace(this, specialized);
+            return specialized.execute(stack, vm);
+        }
+        stack.push(value);
+        return next;
+    }
+}
@@ -0,0 +1,22 @@
+package interpreter.node;
+import interpreter.RunTimeStack;
+import interpreter.VirtualMachine;
+
+/**
+ * LOAD n
+ * 
+ * @author admin
+ */
+class LoadNode extends Node {
+    
+    private int offset;
+    
+    LoadNode(int offset){
+        this.offset = offset;
+    }
+    
+    public Node execute(RunTimeStack stack, VirtualMachine vm){
+        stack.push(stack.getValueAtOffset(offset));
+        return next;
+    }
+}
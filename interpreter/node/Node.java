@@ -0,0 +1,53 @@
+package interpreter.node;
+import interpreter.RunTimeStack;
+import interpreter.VirtualMachine;
+import java.util.*;
+
+/**
+ * One code of a Program in a NodeGraph.  Instead of an address, a node holds
+ * the node that runs after it, and branches and calls hold the node they go
+ * to, so running a program is only following the nodes each one returns:
+ * 
+ *      while (node != null) node = node.execute(stack, vm);
+ * 
+ * LABELs and GOTOs have no nodes of their own: whatever runs into a LABEL
+ * or jumps to it links straight to the node after it.
+ * 
+ * A node may replace itself in the graph with a more specialized node once
+ * it has seen how it runs, which it does with NodeGraph.replace.
+ * 
+ * @author admin
+ */
+public abstract class Node {
+    
+    // the address of the code the node runs, or the first of them
+    int address;
+    Node next;
+    NodeGraph graph;
+    // the nodes that link to this one
+    List<Node> predecessors = new ArrayList<Node>(2);
+    // the addresses this node is where execution continues after, e.g. for
+    // a RETURN to the CALL at such an address
+    List<Integer> entryOf = new ArrayList<Integer>(1);
+    
+    /**
+     * Run the node.
+     * 
+     * @return the node to run next, or null when the program is done.
+     */
+    public abstract Node execute(RunTimeStack stack, VirtualMachine vm);
+    
+    // The nodes this one links to. 
+    Node[] successors(){
+        return new Node[]{next};
+    }
+    
+    // Link to to instead of from. 
+    void redirect(Node from, Node to){
+        if (next == from) next = to;
+    }
+    
+    public String toString(){
+        return getClass().getSimpleName() + "@" + address;
+    }
+}
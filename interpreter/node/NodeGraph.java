@@ -0,0 +1,135 @@
+package interpreter.node;
+import interpreter.Program;
+import interpreter.ByteCode.*;
+import java.util.*;
+
+/**
+ * A Program as a graph of Nodes.  Every code apart from LABEL and GOTO gets
+ * a node, linked to the nodes that can run after it.
+ * 
+ * The graph keeps, for every address, the node execution continues at when
+ * it gets to that address, which is where a RETURN goes to after the CALL
+ * it returns to.
+ * 
+ * @author admin
+ */
+public class NodeGraph {
+    
+    private Program program;
+    private Node[] nodes;
+    // entries[i] is the node that runs when execution gets to address i
+    private Node[] entries;
+    
+    public NodeGraph(Program program){
+        this.program = program;
+        int size = program.getNumberOfByteCodes();
+        nodes = new Node[size];
+        entries = new Node[size+1];
+        
+        for (int i=0; i<size; i++){
+            ByteCode code = program.getCode(i);
+            if (!(code instanceof LabelByteCode || code instanceof GoToByteCode)){
+                nodes[i] = create(code, i);
+            }
+        }
+        for (int i=0; i<=size; i++){
+            Node entry = resolve(i);
+            entries[i] = entry;
+            if (entry != null) entry.entryOf.add(i);
+        }
+        for (int i=0; i<size; i++){
+            if (nodes[i] == null) continue;
+            nodes[i].graph = this;
+            nodes[i].next = entries[i+1];
+            if (nodes[i] instanceof FalseBranchNode){
+                FalseBranchNode branch = (FalseBranchNode)nodes[i];
+                branch.target = entries[((FalseBranchByteCode)program.getCode(i)).targetAddrs+1];
+            } else if (nodes[i] instanceof CallNode){
+                CallNode call = (CallNode)nodes[i];
+                call.callee = entries[((CallByteCode)program.getCode(i)).targetAddrs+1];
+            }
+        }
+        for (int i=0; i<size; i++){
+            if (nodes[i] == null) continue;
+            for (Node successor : nodes[i].successors()){
+                if (successor != null) successor.predecessors.add(nodes[i]);
+            }
+        }
+    }
+    
+    private Node create(ByteCode code, int address){
+        Node node;
+        if (code instanceof LitByteCode) node = new LitNode(((LitByteCode)code).value());
+        else if (code instanceof LoadByteCode) node = new LoadNode(((LoadByteCode)code).offset());
+        else if (code instanceof StoreByteCode) node = new StoreNode(((StoreByteCode)code).offset());
+        else if (code instanceof PopByteCode) node = new PopNode(((PopByteCode)code).numLevels());
+        else if (code instanceof ArgsByteCode) node = new ArgsNode(((ArgsByteCode)code).numArguments());
+        else if (code instanceof CallByteCode) node = new CallNode(((CallByteCode)code).isTailCall());
+        else if (code instanceof ReturnByteCode) node = new ReturnNode();
+        else if (code instanceof FalseBranchByteCode) node = new FalseBranchNode();
+        else if (code instanceof BopByteCode) node = new BopNode(((BopByteCode)code).operator());
+        else if (code instanceof ReadByteCode) node = new ReadNode();
+        else if (code instanceof WriteByteCode) node = new WriteNode();
+        else if (code instanceof HaltByteCode) node = new HaltNode();
+        else node = new ExecNode(code);
+        node.address = address;
+        return node;
+    }
+    
+    // The node that runs when execution gets to address, after any LABELs
+    // and GOTOs.  A GOTO that never gets anywhere else is run as it is. 
+    private Node resolve(int address){
+        int size = program.getNumberOfByteCodes();
+        for (int steps=0; steps<=size; steps++){
+            if (address >= size) return null;
+            if (nodes[address] != null) return nodes[address];
+            ByteCode code = program.getCode(address);
+            address = (code instanceof GoToByteCode ? ((GoToByteCode)code).targetAddrs+1 : address+1);
+        }
+        Node loop = new ExecNode(program.getCode(address));
+        loop.address = address;
+        nodes[address] = loop;
+        return loop;
+    }
+    
+    /**
+     * @return the node the program starts with.
+     */
+    public Node getStart(){
+        return entries[0];
+    }
+    
+    /**
+     * @return the node that runs after the code at address, e.g. after the
+     *  CALL that a RETURN returns to.
+     */
+    public Node nodeAfter(int address){
+        return entries[address+1];
+    }
+    
+    /**
+     * Put replacement into the graph in place of node: everything that
+     * linked to node links to replacement.  The replacement's own links must
+     * be set already. 
+     */
+    public void replace(Node node, Node replacement){
+        replacement.graph = this;
+        replacement.address = node.address;
+        for (Node predecessor : node.predecessors){
+            predecessor.redirect(node, replacement);
+            replacement.predecessors.add(predecessor);
+        }
+        for (int address : node.entryOf){
+            entries[address] = replacement;
+            replacement.entryOf.add(address);
+        }
+        for (Node successor : node.successors()){
+            if (successor != null) successor.predecessors.remove(node);
+        }
+        for (Node successor : replacement.successors()){
+            if (successor != null) successor.predecessors.add(replacement);
+        }
+        node.predecessors.clear();
+        node.entryOf.clear();
+    }
+}
@@ -0,0 +1,22 @@
+package interpreter.node;
+import interpreter.RunTimeStack;
+import interpreter.VirtualMachine;
+
+/**
+ * POP n
+ * 
+ * @author admin
+ */
+class PopNode extends Node {
+    
+    private int levels;
+    
+    PopNode(int levels){
+        this.levels = levels;
+    }
+    
+    public Node execute(RunTimeStack stack, VirtualMachine vm){
+        for (int i=levels; i>0; i--) stack.pop();
+        return next;
+    }
+}
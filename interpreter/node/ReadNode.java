@@ -0,0 +1,17 @@
+package interpreter.node;
+import interpreter.RunTimeStack;
+import interpreter.VirtualMachine;
+import interpreter.ByteCode.ReadByteCode;
+
+/**
+ * READ
+ * 
+ * @author admin
+ */
+class ReadNode extends Node {
+    
+    public Node execute(RunTimeStack stack, VirtualMachine vm){
+        stack.push(ReadByteCode.readInteger());
+        return next;
+    }
+}
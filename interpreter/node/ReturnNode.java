@@ -0,0 +1,15 @@
+package interpreter.node;
+import interpreter.RunTimeStack;
+import interpreter.VirtualMachine;
+
+/**
+ * RETURN
+ * 
+ * @author admin
+ */
+class ReturnNode extends Node {
+    
+    public Node execute(RunTimeStack stack, VirtualMachine vm){
+        return graph.nodeAfter(stack.popFrame());
+    }
+}
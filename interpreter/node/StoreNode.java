@@ -0,0 +1,22 @@
+package interpreter.node;
+import interpreter.RunTimeStack;
+import interpreter.VirtualMachine;
+
+/**
+ * STORE n
+ * 
+ * @author admin
+ */
+class StoreNode extends Node {
+    
+    private int offset;
+    
+    StoreNode(int offset){
+        this.offset = offset;
+    }
+    
+    public Node execute(RunTimeStack stack, VirtualMachine vm){
+        stack.store(offset);
+        return next;
+    }
+}
@@ -0,0 +1,16 @@
+package interpreter.node;
+import interpreter.RunTimeStack;
+import interpreter.VirtualMachine;
+
+/**
+ * WRITE
+ * 
+ * @author admin
+ */
+class WriteNode extends Node {
+    
+    public Node execute(RunTimeStack stack, VirtualMachine vm){
+        System.out.println(stack.peek());
+        return next;
+    }
+}
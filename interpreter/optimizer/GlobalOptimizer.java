@@ -0,0 +1,409 @@
+package interpreter.optimizer;
+import interpreter.Program;
+import interpreter.analysis.Function;
+import interpreter.analysis.FunctionAnalyzer;
+import interpreter.ByteCode.*;
+import java.util.*;
+
+/**
+ * An optimizer that looks at whole functions instead of neighbouring codes.
+ * Every function is put in SSA form (see SsaFunction), and then
+ *
+ *   sparse conditional constant propagation finds the values that are the
+ *   same constant every time, following only the branches that can be
+ *   taken with what is known so far;
+ *
+ *   global value numbering finds BOPs that compute a value some slot of the
+ *   frame already holds;
+ *
+ *   a liveness analysis of the slots finds the STOREs into slots that are
+ *   never read again, and STOREs of the value the slot already holds.
+ *
+ * What they find is written back as plain bytecodes, which leaves the stack
+ * exactly as deep as before after every code:
+ *
+ *   a BOP with a constant result      POP 2; LIT c
+ *   a BOP some slot s already holds   POP 2; LOAD s
+ *   a LOAD of a constant              LIT c
+ *   a FALSEBRANCH that is always taken   POP 1; GOTO target
+ *   one that is never taken           POP 1
+ *   a dead or redundant STORE         POP 1
+ *
+ * The PeepholeOptimizer then removes the pushes that are popped right away
+ * and the code that can no longer be reached.  The result is an ordinary
+ * Program that any engine can run.
+ *
+ * Programs that DUMP are left alone, since the dump shows every code.
+ *
+ * @author admin
+ */
+public class GlobalOptimizer {
+
+    private Program program;
+    // the codes replacing the code at an address
+    private HashMap<Integer, List<ByteCode>> replacements = new HashMap<Integer, List<ByteCode>>();
+
+    private GlobalOptimizer(Program program){
+        this.program = program;
+    }
+
+    /**
+     * @return the number of bytecodes removed from the program.
+     */
+    public static int optimize(Program program){
+        if (program.containsDump()) return 0;
+        int originalSize = program.getNumberOfByteCodes();
+
+        Map<Integer, Function> functions = FunctionAnalyzer.analyze(program);
+        // a code that belongs to more than one function is left as it is
+        int[] owners = new int[originalSize];
+        for (Function function : functions.values()){
+            for (int address : function.getCodes()) owners[address]++;
+        }
+
+        GlobalOptimizer optimizer = new GlobalOptimizer(program);
+        for (Function function : functions.values()){
+            if (!FunctionAnalyzer.isCompilable(program, function)) continue;
+            SsaFunction ssa = new SsaFunction(program, function);
+            propagateConstants(ssa);
+            numberValues(ssa);
+            optimizer.rewrite(ssa, deadStores(ssa), owners);
+        }
+        optimizer.apply();
+
+        PeepholeOptimizer.optimize(program);
+        return originalSize - program.getNumberOfByteCodes();
+    }
+
+    // -------- sparse conditional constant propagation --------
+
+    private static void propagateConstants(SsaFunction ssa){
+        for (SsaBlock block : ssa.blocks){
+            block.predecessorExecutable = new boolean[block.predecessors.size()];
+        }
+        ssa.blocks.get(0).executable = true;
+
+        boolean changed = true;
+        while (changed){
+            changed = false;
+            for (SsaBlock block : ssa.blocks){
+                if (!block.executable) continue;
+
+                for (SsaValue phi : block.phis){
+                    if (phi != null && phi.replacement == null){
+                        changed |= lower(phi, evaluatePhi(phi));
+                    }
+                }
+                for (int address : block.addresses){
+                    SsaValue value = ssa.computed.get(address);
+                    if (value != null) changed |= lower(value, evaluateBop(value));
+                }
+
+                ByteCode last = ssa.program.getCode(block.last());
+                for (int i=0; i<block.successors.size(); i++){
+                    if (!canTake(ssa, block, last, i)) continue;
+                    SsaBlock successor = block.successors.get(i);
+                    int edge = successor.predecessors.indexOf(block);
+                    // a FALSEBRANCH to the next code reaches the same block twice
+                    for (int p=edge; p<successor.predecessors.size(); p++){
+                        if (successor.predecessors.get(p) == block && !successor.predecessorExecutable[p]){
+                            successor.predecessorExecutable[p] = true;
+                            successor.executable = true;
+                            changed = true;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Whether the i-th way out of the block can be taken with what is known.
+    private static boolean canTake(SsaFunction ssa, SsaBlock block, ByteCode last, int i){
+        if (!(last instanceof FalseBranchByteCode)) return true;
+        SsaValue[] state = ssa.stateBefore.get(block.last());
+        SsaValue condition = state[state.length-1].resolve();
+        if (condition.lattice == SsaValue.UNKNOWN) return false;
+        if (condition.lattice == SsaValue.VARYING) return true;
+        // successors are the next code first, then the branch target
+        return (condition.latticeValue == 0) == (i == 1);
+    }
+
+    // Lower the value in the lattice; @return whether it changed.
+    private static boolean lower(SsaValue value, SsaValue result){
+        if (result.lattice == value.lattice
+                && (result.lattice != SsaValue.KNOWN || result.latticeValue == value.latticeValue)){
+            return false;
+        }
+        if (result.lattice < value.lattice) return false;
+        if (value.lattice == SsaValue.KNOWN && result.lattice == SsaValue.KNOWN){
+            // two different constants
+            value.lattice = SsaValue.VARYING;
+        } else {
+            value.lattice = result.lattice;
+            value.latticeValue = result.latticeValue;
+        }
+        return true;
+    }
+
+    private static SsaValue evaluatePhi(SsaValue phi){
+        SsaValue result = new SsaValue(-1, SsaValue.PHI);
+        SsaBlock block = phi.block;
+        for (int i=0; i<phi.operands.length; i++){
+            boolean fromArguments = i == block.predecessors.size();
+            if (!fromArguments && !block.predecessorExecutable[i]) continue;
+            SsaValue operand = phi.operands[i].resolve();
+            if (operand == phi || operand.lattice == SsaValue.UNKNOWN) continue;
+            if (operand.lattice == SsaValue.VARYING
+                    || (result.lattice == SsaValue.KNOWN && result.latticeValue != operand.latticeValue)){
+                result.lattice = SsaValue.VARYING;
+                break;
+            }
+            result.lattice = SsaValue.KNOWN;
+            result.latticeValue = operand.latticeValue;
+        }
+        return result;
+    }
+
+    private static SsaValue evaluateBop(SsaValue bop){
+        SsaValue result = new SsaValue(-1, SsaValue.BOP);
+        SsaValue first = bop.first.resolve(), second = bop.second.resolve();
+        if (first.lattice == SsaValue.VARYING || second.lattice == SsaValue.VARYING){
+            result.lattice = SsaValue.VARYING;
+        } else if (first.lattice == SsaValue.KNOWN && second.lattice == SsaValue.KNOWN){
+            if (bop.operator.equals("/") && second.latticeValue == 0){
+                // left to fail at runtime
+                result.lattice = SsaValue.VARYING;
+            } else {
+                result.lattice = SsaValue.KNOWN;
+                result.latticeValue = BopByteCode.forOperator(bop.operator)
+                        .apply(first.latticeValue, second.latticeValue);
+            }
+        }
+        return result;
+    }
+
+    // -------- global value numbering --------
+
+    private static final List<String> COMMUTATIVE = Arrays.asList("+", "*", "==", "!=", "|", "&");
+
+    // Values get the same number when they are always equal: the same
+    // constant, or the same operator applied to values with the same numbers.
+    private static void numberValues(SsaFunction ssa){
+        HashMap<String, Integer> numbers = new HashMap<String, Integer>();
+        // operands get their numbers first, except through PHIs, which are
+        // numbered by themselves
+        for (SsaValue value : ssa.values){
+            if (value.kind == SsaValue.PHI && value.replacement == null){
+                // a PHI that only one value can reach is that value
+                SsaValue only = onlyExecutableOperand(value);
+                if (only != null && only.valueNumber > 0){
+                    value.valueNumber = only.valueNumber;
+                    continue;
+                }
+            }
+            String key;
+            if (value.isConstant()){
+                key = "c" + value.latticeValue;
+            } else if (value.kind == SsaValue.BOP){
+                int first = value.first.resolve().valueNumber;
+                int second = value.second.resolve().valueNumber;
+                if (COMMUTATIVE.contains(value.operator) && second < first){
+                    int swap = first;
+                    first = second;
+                    second = swap;
+                }
+                key = first + value.operator + second;
+            } else {
+                key = "v" + value.id;
+            }
+            Integer number = numbers.get(key);
+            if (number == null){
+                number = numbers.size() + 1;
+                numbers.put(key, number);
+            }
+            value.valueNumber = number;
+        }
+    }
+
+    private static SsaValue onlyExecutableOperand(SsaValue phi){
+        SsaValue only = null;
+        SsaBlock block = phi.block;
+        for (int i=0; i<phi.operands.length; i++){
+            boolean fromArguments = i == block.predecessors.size();
+            if (!fromArguments && !block.predecessorExecutable[i]) continue;
+            SsaValue operand = phi.operands[i].resolve();
+            if (operand == phi || operand == only) continue;
+            if (only != null) return null;
+            only = operand;
+        }
+        return only;
+    }
+
+    // -------- liveness of the slots --------
+
+    /**
+     * @return the addresses of the STOREs whose slot is not read again
+     *  before it is overwritten or the function returns.
+     */
+    private static Set<Integer> deadStores(SsaFunction ssa){
+        int size = ssa.blocks.size();
+        BitSet[] liveIn = new BitSet[size];
+        for (int i=0; i<size; i++) liveIn[i] = new BitSet();
+
+        Set<Integer> dead = new HashSet<Integer>();
+        boolean changed = true;
+        while (changed){
+            changed = false;
+            dead.clear();
+            for (int b=size-1; b>=0; b--){
+                SsaBlock block = ssa.blocks.get(b);
+                BitSet live = new BitSet();
+                for (SsaBlock successor : block.successors) live.or(liveIn[successor.index]);
+
+                for (int i=block.addresses.length-1; i>=0; i--){
+                    int address = block.addresses[i];
+                    ByteCode code = ssa.program.getCode(address);
+                    if (code instanceof StoreByteCode && !live.get(((StoreByteCode)code).offset())){
+                        dead.add(address);
+                    }
+                    liveBefore(ssa, address, live);
+                }
+                if (!live.equals(liveIn[b])){
+                    liveIn[b] = live;
+                    changed = true;
+                }
+            }
+        }
+        return dead;
+    }
+
+    // Turn the slots live after the code at address into those live before it.
+    private static void liveBefore(SsaFunction ssa, int address, BitSet live){
+        ByteCode code = ssa.program.getCode(address);
+        int depth = ssa.function.getDepthBefore(address);
+        if (code instanceof LitByteCode || code instanceof ReadByteCode){
+            live.clear(depth);
+        } else if (code instanceof LoadByteCode){
+            live.clear(depth);
+            live.set(((LoadByteCode)code).offset());
+        } else if (code instanceof StoreByteCode){
+            live.clear(((StoreByteCode)code).offset());
+            live.set(depth-1);
+        } else if (code instanceof PopByteCode){
+            live.clear(depth-((PopByteCode)code).numLevels(), depth);
+        } else if (code instanceof BopByteCode){
+            live.set(depth-2, depth);
+        } else if (code instanceof CallByteCode){
+            int first = depth - FunctionAnalyzer.argumentsPassedBy(ssa.program, address);
+            live.clear(first);
+            live.set(first, depth);
+        } else if (code instanceof WriteByteCode || code instanceof FalseBranchByteCode){
+            live.set(depth-1);
+        } else if (code instanceof ReturnByteCode){
+            live.clear();
+            live.set(depth-1);
+        } else if (code instanceof HaltByteCode){
+            live.clear();
+        }
+    }
+
+    // -------- rewriting --------
+
+    private void rewrite(SsaFunction ssa, Set<Integer> deadStores, int[] owners){
+        for (SsaBlock block : ssa.blocks){
+            if (!block.executable) continue;
+            for (int address : block.addresses){
+                if (owners[address] != 1) continue;
+                ByteCode code = program.getCode(address);
+                SsaValue[] state = ssa.stateBefore.get(address);
+                int depth = state.length;
+
+                if (code instanceof BopByteCode){
+                    SsaValue value = ssa.computed.get(address);
+                    if (value.isConstant()){
+                        replace(address, pop(2), literal(value.latticeValue));
+                    } else {
+                        int slot = slotHolding(state, depth-2, value.valueNumber);
+                        if (slot >= 0) replace(address, pop(2), load(slot));
+                    }
+                } else if (code instanceof LoadByteCode){
+                    SsaValue value = state[((LoadByteCode)code).offset()].resolve();
+                    if (value.isConstant()) replace(address, literal(value.latticeValue));
+                } else if (code instanceof FalseBranchByteCode){
+                    SsaValue condition = state[depth-1].resolve();
+                    if (condition.isConstant() && condition.latticeValue == 0){
+                        replace(address, pop(1), jump(((FalseBranchByteCode)code).targetAddrs));
+                    } else if (condition.isConstant()){
+                        replace(address, pop(1));
+                    }
+                } else if (code instanceof StoreByteCode){
+                    int offset = ((StoreByteCode)code).offset();
+                    boolean redundant = state[offset].resolve().valueNumber
+                            == state[depth-1].resolve().valueNumber;
+                    if (redundant || deadStores.contains(address)) replace(address, pop(1));
+                }
+            }
+        }
+    }
+
+    // @return a slot below depth that holds a value numbered number, or -1
+    private static int slotHolding(SsaValue[] state, int depth, int number){
+        for (int slot=0; slot<depth; slot++){
+            if (state[slot].resolve().valueNumber == number) return slot;
+        }
+        return -1;
+    }
+
+    private void replace(int address, ByteCode... codes){
+        replacements.put(address, Arrays.asList(codes));
+    }
+
+    // Put the replacements in the program and re-resolve every branch and
+    // CALL.  A branch to t continues at t+1, which now starts at the first
+    // code replacing t+1.
+    private void apply(){
+        int size = program.getNumberOfByteCodes();
+        int[] newStart = new int[size+1];
+        List<ByteCode> codes = new ArrayList<ByteCode>();
+        for (int i=0; i<size; i++){
+            newStart[i] = codes.size();
+            List<ByteCode> replacement = replacements.get(i);
+            if (replacement == null) codes.add(program.getCode(i));
+            else codes.addAll(replacement);
+        }
+        newStart[size] = codes.size();
+
+        for (ByteCode code : codes){
+            if (code instanceof BranchingByteCode){
+                BranchingByteCode branch = (BranchingByteCode)code;
+                branch.setTargetAddress(newStart[branch.targetAddress()+1]-1);
+            }
+        }
+        program.setByteCodes(codes);
+    }
+
+    private static ByteCode pop(int levels){
+        ByteCode code = new PopByteCode();
+        code.init(new String[]{"POP", Integer.toString(levels)});
+        return code;
+    }
+
+    private static ByteCode literal(int value){
+        ByteCode code = new LitByteCode();
+        code.init(new String[]{"LIT", Integer.toString(value)});
+        return code;
+    }
+
+    private static ByteCode load(int offset){
+        ByteCode code = new LoadByteCode();
+        code.init(new String[]{"LOAD", Integer.toString(offset), "<value>"});
+        return code;
+    }
+
+    private static ByteCode jump(int target){
+        GoToByteCode code = new GoToByteCode();
+        code.init(new String[]{"GOTO", "<folded>"});
+        code.targetAddrs = target;
+        return code;
+    }
+}
@@ -0,0 +1,189 @@
+package interpreter.optimizer;
+import interpreter.Program;
+import interpreter.analysis.Function;
+import interpreter.analysis.FunctionAnalyzer;
+import interpreter.ByteCode.*;
+import java.util.*;
+
+/**
+ * Replaces  ARGS n; CALL f  with a copy of f's body, so that small functions
+ * like the Read and Write wrappers every program starts with no longer cost
+ * a frame and a return address per call.
+ *
+ * The arguments are already on the stack where the CALL would have found
+ * them, at depth base = d-n of the caller's frame, so the copy addresses its
+ * frame relative to base:  LOAD k  becomes  LOAD base+k,  and  STORE k
+ * becomes  STORE base+k.  A RETURN with m values in f's frame becomes
+ *      STORE base; POP m-2; GOTO continuation
+ * which leaves the result at depth base, where the CALL would have left it.
+ * The LABELs in the copy are renamed, so every copy has its own.
+ *
+ * A call site is inlined when f's body is at most maxSize codes long, or
+ * three times that if the call is inside a loop of the caller, where it is
+ * likely to be hot.  Functions that call themselves are never inlined.
+ *
+ * Works on a Program as loaded, whose branches still have their LABELs, so
+ * run it before the optimizers.
+ *
+ * @author admin
+ */
+public class Inliner {
+
+    public static final int DEFAULT_MAX_SIZE = 12;
+    private static final int HOT_FACTOR = 3;
+
+    /**
+     * @return the number of calls that were inlined.
+     */
+    public static int inline(Program program){
+        return inline(program, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @return the number of calls that were inlined.
+     */
+    public static int inline(Program program, int maxSize){
+        // the dump would show the copies instead of the calls
+        if (program.containsDump()) return 0;
+
+        Map<Integer, Function> functions = FunctionAnalyzer.analyze(program);
+        int[] owners = new int[program.getNumberOfByteCodes()];
+        for (Function function : functions.values()){
+            for (int address : function.getCodes()) owners[address]++;
+        }
+
+        // the call sites to inline, by the address of their CALL
+        TreeMap<Integer, Function> sites = new TreeMap<Integer, Function>();
+        for (Function caller : functions.values()){
+            if (!FunctionAnalyzer.isCompilable(program, caller)) continue;
+            for (int address : caller.getCodes()){
+                ByteCode code = program.getCode(address);
+                if (!(code instanceof CallByteCode) || owners[address] != 1) continue;
+
+                Function callee = functions.get(((CallByteCode)code).targetAddrs);
+                int budget = (isInLoop(program, caller, address) ? maxSize*HOT_FACTOR : maxSize);
+                if (callee != caller && canInline(program, callee) && size(program, callee) <= budget){
+                    sites.put(address, caller);
+                }
+            }
+        }
+        if (sites.isEmpty()) return 0;
+
+        List<ByteCode> codes = new ArrayList<ByteCode>();
+        int copies = 0;
+        for (int i=0; i<program.getNumberOfByteCodes(); i++){
+            ByteCode code = program.getCode(i);
+            if (code instanceof ArgsByteCode && sites.containsKey(i+1)) continue;
+
+            Function caller = sites.get(i);
+            if (caller == null){
+                codes.add(code);
+                continue;
+            }
+            Function callee = functions.get(((CallByteCode)code).targetAddrs);
+            int base = caller.getDepthBefore(i) - FunctionAnalyzer.argumentsPassedBy(program, i);
+            copy(program, callee, base, "@" + (++copies), codes);
+        }
+
+        program.setByteCodes(codes);
+        program.resolveAddresses();
+        return copies;
+    }
+
+    private static boolean canInline(Program program, Function callee){
+        if (callee.isMain() || !FunctionAnalyzer.isCompilable(program, callee)) return false;
+        for (int address : callee.getCodes()){
+            ByteCode code = program.getCode(address);
+            if (code instanceof CallByteCode && ((CallByteCode)code).targetAddrs == callee.getEntry()){
+                return false;
+            }
+            // the copies are tied together by LABEL names
+            int target = targetOf(code);
+            if (target >= 0 && !(program.getCode(target) instanceof LabelByteCode)) return false;
+        }
+        return true;
+    }
+
+    // The number of codes of the function that do something.
+    private static int size(Program program, Function function){
+        int size = 0;
+        for (int address : function.getCodes()){
+            if (!(program.getCode(address) instanceof LabelByteCode)) size++;
+        }
+        return size;
+    }
+
+    // Whether a branch of the caller back to before address can run the
+    // code at address again.
+    private static boolean isInLoop(Program program, Function caller, int address){
+        for (int branch : caller.getCodes()){
+            int target = targetOf(program.getCode(branch));
+            if (target >= 0 && target < address && address <= branch) return true;
+        }
+        return false;
+    }
+
+    // @return the target of a GOTO or FALSEBRANCH, -1 for other codes
+    private static int targetOf(ByteCode code){
+        if (code instanceof GoToByteCode) return ((GoToByteCode)code).targetAddrs;
+        if (code instanceof FalseBranchByteCode) return ((FalseBranchByteCode)code).targetAddrs;
+        return -1;
+    }
+
+    // Append a copy of the callee's body, whose frame starts at depth base of
+    // the caller's, followed by the LABEL its RETURNs go to.
+    private static void copy(Program program, Function callee, int base, String suffix,
+            List<ByteCode> codes){
+        String continuation = callee.getName() + suffix + "-return";
+
+        // the LABELs the callee branches to that it never runs into, which the
+        // copy still needs in front of the code the branch continues at
+        HashMap<Integer, String> labelsInFront = new HashMap<Integer, String>();
+        for (int address : callee.getCodes()){
+            int target = targetOf(program.getCode(address));
+            if (target >= 0 && !callee.contains(target)){
+                labelsInFront.put(target+1, ((LabelByteCode)program.getCode(target)).label + suffix);
+            }
+        }
+
+        for (int address : callee.getCodes()){
+            if (labelsInFront.containsKey(address)){
+                codes.add(make(new LabelByteCode(), "LABEL", labelsInFront.get(address)));
+            }
+            ByteCode code = program.getCode(address);
+            if (code instanceof LabelByteCode){
+                codes.add(make(new LabelByteCode(), "LABEL", ((LabelByteCode)code).label + suffix));
+            } else if (code instanceof LoadByteCode){
+                LoadByteCode load = (LoadByteCode)code;
+                codes.add(make(new LoadByteCode(), "LOAD", "" + (base+load.offset()), load.variable()));
+            } else if (code instanceof StoreByteCode){
+                StoreByteCode store = (StoreByteCode)code;
+                codes.add(make(new StoreByteCode(), "STORE", "" + (base+store.offset()), store.variable()));
+            } else if (code instanceof GoToByteCode){
+                codes.add(make(new GoToByteCode(), "GOTO", ((GoToByteCode)code).label + suffix));
+            } else if (code instanceof FalseBranchByteCode){
+                codes.add(make(new FalseBranchByteCode(), "FALSEBRANCH",
+                        ((FalseBranchByteCode)code).targetLabel + suffix));
+            } else if (code instanceof CallByteCode){
+                // a tail call of the callee is not one in the copy
+                codes.add(make(new CallByteCode(), "CALL", ((CallByteCode)code).func));
+            } else if (code instanceof ReturnByteCode){
+                int depth = callee.getDepthBefore(address);
+                if (depth > 1){
+                    codes.add(make(new StoreByteCode(), "STORE", "" + base, "<return>"));
+                    if (depth > 2) codes.add(make(new PopByteCode(), "POP", "" + (depth-2)));
+                }
+                codes.add(make(new GoToByteCode(), "GOTO", continuation));
+            } else {
+                // the other codes do not depend on where the frame starts
+                codes.add(code);
+            }
+        }
+        codes.add(make(new LabelByteCode(), "LABEL", continuation));
+    }
+
+    private static ByteCode make(ByteCode code, String... arguments){
+        code.init(arguments);
+        return code;
+    }
+}
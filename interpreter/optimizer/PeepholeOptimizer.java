@@ -0,0 +1,276 @@
+package interpreter.optimizer;
+import interpreter.Program;
+import interpreter.ByteCode.*;
+import java.util.*;
+
+/**
+ * An optional pass over a Program whose addresses have been resolved.  It
+ * rewrites the bytecodes in place of the Program's own list:
+ *
+ *   LIT a; LIT b; BOP op      becomes a single LIT of the result
+ *   LIT or LOAD; POP n        becomes POP n-1, and BOP; POP n  POP n+1
+ *   GOTO to a GOTO            jumps straight to the end of the chain
+ *   POP 0                     is removed
+ *   code nobody can reach     is removed, e.g. the POP 0 / GOTO after a RETURN
+ *   GOTO to the next code     is removed
+ *   LABEL                     is removed once nothing else changes
+ *
+ * Every CALL, GOTO and FALSEBRANCH is re-resolved against the new list.  A
+ * branch to a code that was removed goes to the first code after it that
+ * was kept, so it lands where it would have before.
+ *
+ * Only meant for regular execution: the debugger relies on the codes that
+ * are removed here, and a program that DUMPs is left as it is, as the
+ * GlobalOptimizer and Inliner leave it.
+ *
+ * @author admin
+ */
+public class PeepholeOptimizer {
+
+    /**
+     * @return the number of bytecodes removed from the program.
+     */
+    public static int optimize(Program program){
+        // the dump would show the folded codes instead of those written
+        if (program.containsDump()) return 0;
+        List<ByteCode> codes = new ArrayList<ByteCode>();
+        for (int i=0; i<program.getNumberOfByteCodes(); i++){
+            codes.add(program.getCode(i));
+        }
+        int originalSize = codes.size();
+
+        boolean changed = true;
+        while (changed){
+            boolean[] removed = new boolean[codes.size()];
+            boolean[] entered = branchEntries(codes);
+            changed = foldConstants(codes, removed, entered);
+            changed |= removeDeadPushes(codes, removed, entered);
+            changed |= removeEmptyPops(codes, removed);
+            changed |= shortenGotoChains(codes);
+            changed |= removeUnreachableCodes(codes, removed);
+            changed |= removeGotosToNextCode(codes, removed);
+            codes = compact(codes, removed);
+        }
+
+        boolean[] labels = new boolean[codes.size()];
+        for (int i=0; i<codes.size(); i++){
+            labels[i] = codes.get(i) instanceof LabelByteCode;
+        }
+        codes = compact(codes, labels);
+
+        program.setByteCodes(codes);
+        // removing codes can put a CALL right in front of a RETURN
+        program.markTailCalls();
+        return originalSize - codes.size();
+    }
+
+    // The codes a branch or CALL continues at.  Once the LABELs are gone,
+    // codes next to each other are not always executed one after the other.
+    private static boolean[] branchEntries(List<ByteCode> codes){
+        boolean[] entered = new boolean[codes.size()+1];
+        for (ByteCode code : codes){
+            int target = -1;
+            if (code instanceof CallByteCode) target = ((CallByteCode)code).targetAddrs;
+            else if (code instanceof SpawnByteCode) target = ((SpawnByteCode)code).targetAddrs;
+            else if (code instanceof GoToByteCode) target = ((GoToByteCode)code).targetAddrs;
+            else if (code instanceof FalseBranchByteCode) target = ((FalseBranchByteCode)code).targetAddrs;
+            if (target >= 0 && target < codes.size()) entered[target+1] = true;
+        }
+        return entered;
+    }
+
+    // LIT a; LIT b; BOP op  ->  LIT (a op b)
+    // Division by a constant 0 is left alone so that it still fails at runtime.
+    private static boolean foldConstants(List<ByteCode> codes, boolean[] removed, boolean[] entered){
+        boolean changed = false;
+        for (int i=0; i+2<codes.size(); i++){
+            if (removed[i] || entered[i+1] || entered[i+2]) continue;
+            ByteCode first = codes.get(i), second = codes.get(i+1), op = codes.get(i+2);
+            if (first instanceof LitByteCode && second instanceof LitByteCode
+                    && op instanceof BopByteCode){
+                int a = ((LitByteCode)first).value();
+                int b = ((LitByteCode)second).value();
+                if (op instanceof BopDiv && b == 0) continue;
+
+                codes.set(i, literal(((BopByteCode)op).apply(a, b)));
+                removed[i+1] = true;
+                removed[i+2] = true;
+                changed = true;
+                i += 2;
+            }
+        }
+        return changed;
+    }
+
+    // A value that is pushed only to be popped again is never pushed:
+    //   LIT or LOAD; POP n  ->  POP n-1
+    //   BOP; POP n          ->  POP n+1,  the operands are popped instead
+    // except for a division, which may fail.
+    private static boolean removeDeadPushes(List<ByteCode> codes, boolean[] removed, boolean[] entered){
+        boolean changed = false;
+        for (int i=0; i+1<codes.size(); i++){
+            if (removed[i] || removed[i+1] || entered[i+1]) continue;
+            ByteCode code = codes.get(i), next = codes.get(i+1);
+            if (!(next instanceof PopByteCode) || ((PopByteCode)next).numLevels() == 0) continue;
+
+            int levels = ((PopByteCode)next).numLevels();
+            if (code instanceof LitByteCode || code instanceof LoadByteCode){
+                removed[i] = true;
+                codes.set(i+1, pop(levels-1));
+            } else if (code instanceof BopByteCode && !(code instanceof BopDiv)){
+                removed[i] = true;
+                codes.set(i+1, pop(levels+1));
+            } else continue;
+            changed = true;
+            i++;
+        }
+        return changed;
+    }
+
+    private static boolean removeEmptyPops(List<ByteCode> codes, boolean[] removed){
+        boolean changed = false;
+        for (int i=0; i<codes.size(); i++){
+            ByteCode code = codes.get(i);
+            if (!removed[i] && code instanceof PopByteCode && ((PopByteCode)code).numLevels()==0){
+                removed[i] = true;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    // A GOTO or FALSEBRANCH whose target label is followed by a GOTO jumps
+    // to that GOTO's target instead.
+    private static boolean shortenGotoChains(List<ByteCode> codes){
+        boolean changed = false;
+        for (int i=0; i<codes.size(); i++){
+            ByteCode code = codes.get(i);
+            if (code instanceof GoToByteCode){
+                GoToByteCode gotoCode = (GoToByteCode)code;
+                int target = finalTarget(codes, gotoCode.targetAddrs);
+                if (target != gotoCode.targetAddrs){
+                    gotoCode.targetAddrs = target;
+                    changed = true;
+                }
+            } else if (code instanceof FalseBranchByteCode){
+                FalseBranchByteCode branchCode = (FalseBranchByteCode)code;
+                int target = finalTarget(codes, branchCode.targetAddrs);
+                if (target != branchCode.targetAddrs){
+                    branchCode.targetAddrs = target;
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    private static int finalTarget(List<ByteCode> codes, int target){
+        // the length of the program bounds any chain that is not a cycle
+        for (int hops=0; hops<codes.size(); hops++){
+            int next = nextExecuted(codes, target+1);
+            if (next >= codes.size() || !(codes.get(next) instanceof GoToByteCode)) break;
+            int nextTarget = ((GoToByteCode)codes.get(next)).targetAddrs;
+            if (nextTarget == target) break;
+            target = nextTarget;
+        }
+        return target;
+    }
+
+    // Walks the program from its first code, following every way control can
+    // leave a code, and removes everything that was not visited.
+    private static boolean removeUnreachableCodes(List<ByteCode> codes, boolean[] removed){
+        boolean[] reached = new boolean[codes.size()];
+        Stack<Integer> pending = new Stack<Integer>();
+        pending.push(0);
+
+        while (!pending.empty()){
+            int i = pending.pop();
+            if (i >= codes.size() || reached[i]) continue;
+            reached[i] = true;
+
+            ByteCode code = codes.get(i);
+            if (code instanceof GoToByteCode){
+                pending.push(((GoToByteCode)code).targetAddrs);
+            } else if (code instanceof FalseBranchByteCode){
+                pending.push(((FalseBranchByteCode)code).targetAddrs);
+                pending.push(i+1);
+            } else if (code instanceof CallByteCode){
+                pending.push(((CallByteCode)code).targetAddrs);
+                pending.push(i+1);
+            } else if (code instanceof SpawnByteCode){
+                pending.push(((SpawnByteCode)code).targetAddrs);
+                pending.push(i+1);
+            } else if (!(code instanceof ReturnByteCode) && !(code instanceof HaltByteCode)){
+                pending.push(i+1);
+            }
+        }
+
+        boolean changed = false;
+        for (int i=0; i<codes.size(); i++){
+            if (!reached[i] && !removed[i]){
+                removed[i] = true;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private static boolean removeGotosToNextCode(List<ByteCode> codes, boolean[] removed){
+        boolean changed = false;
+        for (int i=0; i<codes.size(); i++){
+            ByteCode code = codes.get(i);
+            if (!removed[i] && code instanceof GoToByteCode
+                    && nextExecuted(codes, ((GoToByteCode)code).targetAddrs+1) == nextExecuted(codes, i+1)){
+                removed[i] = true;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    // the first code at or after i that is not a LABEL
+    private static int nextExecuted(List<ByteCode> codes, int i){
+        while (i < codes.size() && codes.get(i) instanceof LabelByteCode) i++;
+        return i;
+    }
+
+    /**
+     * Drop the removed codes and re-resolve the branches that are kept.  The
+     * VM increments pc after a branch sets it, so a branch to address t
+     * continues at t+1; in the new list it continues at the first kept code
+     * at or after t+1.
+     */
+    private static List<ByteCode> compact(List<ByteCode> codes, boolean[] removed){
+        int size = codes.size();
+        int[] firstKept = new int[size+1];
+        List<ByteCode> kept = new ArrayList<ByteCode>();
+
+        for (int i=0; i<size; i++){
+            if (!removed[i]) kept.add(codes.get(i));
+        }
+        firstKept[size] = kept.size();
+        for (int i=size-1; i>=0; i--){
+            firstKept[i] = (removed[i] ? firstKept[i+1] : firstKept[i+1]-1);
+        }
+
+        for (ByteCode code : kept){
+            if (code instanceof BranchingByteCode){
+                BranchingByteCode branch = (BranchingByteCode)code;
+                branch.setTargetAddress(firstKept[branch.targetAddress()+1]-1);
+            }
+        }
+        return kept;
+    }
+
+    private static PopByteCode pop(int levels){
+        PopByteCode pop = new PopByteCode();
+        pop.init(new String[]{"POP", Integer.toString(levels)});
+        return pop;
+    }
+
+    private static LitByteCode literal(int value){
+        LitByteCode lit = new LitByteCode();
+        lit.init(new String[]{"LIT", Integer.toString(value)});
+        return lit;
+    }
+}
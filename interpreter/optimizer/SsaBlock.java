@@ -0,0 +1,35 @@
+package interpreter.optimizer;
+import java.util.*;
+
+/**
+ * A basic block of a function in SSA form: consecutive addresses that always
+ * execute together, the PHIs for the slots of the frame at its start, and
+ * the values in the frame when it ends.
+ *
+ * @author admin
+ */
+class SsaBlock {
+
+    int index;
+    int depth;
+    int[] addresses;
+    List<SsaBlock> successors = new ArrayList<SsaBlock>();
+    List<SsaBlock> predecessors = new ArrayList<SsaBlock>();
+    // the function's start is also entered by its CALLs, which bring the
+    // arguments in as one more incoming edge after the predecessors
+    boolean isStart;
+
+    SsaValue[] phis;
+    SsaValue[] exitState;
+
+    boolean executable;
+    boolean[] predecessorExecutable;
+
+    int first(){
+        return addresses[0];
+    }
+
+    int last(){
+        return addresses[addresses.length-1];
+    }
+}
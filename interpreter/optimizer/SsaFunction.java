@@ -0,0 +1,219 @@
+package interpreter.optimizer;
+import interpreter.Program;
+import interpreter.analysis.Function;
+import interpreter.analysis.FunctionAnalyzer;
+import interpreter.ByteCode.*;
+import java.util.*;
+
+/**
+ * A function of a Program in SSA form.  The variables are the slots of the
+ * function's frame: every slot below the depth the FunctionAnalyzer found in
+ * front of a code holds exactly one SsaValue there.
+ *
+ * Each block gets a PHI for every slot of the frame when it starts, and PHIs
+ * that merge only one value besides themselves are replaced by that value
+ * afterwards, which leaves the PHIs of the blocks where different values
+ * really meet.
+ *
+ * @author admin
+ */
+class SsaFunction {
+
+    Program program;
+    Function function;
+    // in reverse postorder, so every block comes after the blocks that reach
+    // it other than through a loop
+    List<SsaBlock> blocks = new ArrayList<SsaBlock>();
+    HashMap<Integer, SsaBlock> blockAt = new HashMap<Integer, SsaBlock>();
+    List<SsaValue> values = new ArrayList<SsaValue>();
+
+    // the values in the frame in front of each address, and the value each
+    // BOP computes
+    HashMap<Integer, SsaValue[]> stateBefore = new HashMap<Integer, SsaValue[]>();
+    HashMap<Integer, SsaValue> computed = new HashMap<Integer, SsaValue>();
+
+    private HashMap<Integer, SsaValue> constants = new HashMap<Integer, SsaValue>();
+    private SsaValue[] arguments;
+
+    SsaFunction(Program program, Function function){
+        this.program = program;
+        this.function = function;
+        buildBlocks();
+        buildValues();
+        removeTrivialPhis();
+    }
+
+    private void buildBlocks(){
+        int[] codes = function.getCodes();
+        Set<Integer> leaders = new TreeSet<Integer>();
+        leaders.add(function.getStart());
+        for (int i=0; i<codes.length; i++){
+            ByteCode code = program.getCode(codes[i]);
+            int[] next = FunctionAnalyzer.successors(program, codes[i]);
+            boolean endsBlock = code instanceof GoToByteCode || code instanceof FalseBranchByteCode
+                    || code instanceof ReturnByteCode || code instanceof HaltByteCode;
+            if (endsBlock){
+                for (int successor : next) leaders.add(successor);
+            }
+            if (i > 0 && codes[i-1] != codes[i]-1) leaders.add(codes[i]);
+        }
+
+        List<SsaBlock> inOrder = new ArrayList<SsaBlock>();
+        List<Integer> addresses = new ArrayList<Integer>();
+        for (int i=0; i<codes.length; i++){
+            addresses.add(codes[i]);
+            if (i+1 == codes.length || leaders.contains(codes[i+1])){
+                SsaBlock block = new SsaBlock();
+                block.addresses = new int[addresses.size()];
+                for (int j=0; j<addresses.size(); j++) block.addresses[j] = addresses.get(j);
+                block.depth = function.getDepthBefore(block.first());
+                blockAt.put(block.first(), block);
+                inOrder.add(block);
+                addresses.clear();
+            }
+        }
+
+        for (SsaBlock block : inOrder){
+            for (int next : FunctionAnalyzer.successors(program, block.last())){
+                SsaBlock successor = blockAt.get(next);
+                block.successors.add(successor);
+                successor.predecessors.add(block);
+            }
+        }
+
+        SsaBlock start = blockAt.get(function.getStart());
+        start.isStart = true;
+        List<SsaBlock> postorder = new ArrayList<SsaBlock>();
+        visit(start, new HashSet<SsaBlock>(), postorder);
+        for (int i=postorder.size()-1; i>=0; i--){
+            SsaBlock block = postorder.get(i);
+            block.index = blocks.size();
+            blocks.add(block);
+        }
+    }
+
+    private void visit(SsaBlock block, Set<SsaBlock> seen, List<SsaBlock> postorder){
+        if (!seen.add(block)) return;
+        for (SsaBlock successor : block.successors) visit(successor, seen, postorder);
+        postorder.add(block);
+    }
+
+    private void buildValues(){
+        int size = function.getMaxDepth() + 1;
+        arguments = new SsaValue[size];
+        for (int slot=0; slot<function.getArity(); slot++){
+            arguments[slot] = newValue(SsaValue.ARGUMENT);
+        }
+
+        for (SsaBlock block : blocks){
+            SsaValue[] state = new SsaValue[size];
+            block.phis = new SsaValue[block.depth];
+            if (block.isStart && block.predecessors.isEmpty()){
+                System.arraycopy(arguments, 0, state, 0, block.depth);
+            } else {
+                for (int slot=0; slot<block.depth; slot++){
+                    SsaValue phi = newValue(SsaValue.PHI);
+                    phi.block = block;
+                    block.phis[slot] = phi;
+                    state[slot] = phi;
+                }
+            }
+
+            for (int address : block.addresses){
+                int depth = function.getDepthBefore(address);
+                stateBefore.put(address, Arrays.copyOf(state, depth));
+                execute(address, depth, state);
+            }
+            block.exitState = state;
+        }
+
+        for (SsaBlock block : blocks){
+            if (block.isStart && block.predecessors.isEmpty()) continue;
+            int incoming = block.predecessors.size() + (block.isStart ? 1 : 0);
+            for (int slot=0; slot<block.depth; slot++){
+                SsaValue[] operands = new SsaValue[incoming];
+                for (int i=0; i<block.predecessors.size(); i++){
+                    operands[i] = block.predecessors.get(i).exitState[slot];
+                }
+                if (block.isStart) operands[incoming-1] = arguments[slot];
+                block.phis[slot].operands = operands;
+            }
+        }
+    }
+
+    // What the code at address does to the values in the frame.
+    private void execute(int address, int depth, SsaValue[] state){
+        ByteCode code = program.getCode(address);
+        if (code instanceof LitByteCode){
+            state[depth] = constant(((LitByteCode)code).value());
+        } else if (code instanceof LoadByteCode){
+            state[depth] = state[((LoadByteCode)code).offset()];
+        } else if (code instanceof StoreByteCode){
+            state[((StoreByteCode)code).offset()] = state[depth-1];
+            state[depth-1] = null;
+        } else if (code instanceof PopByteCode){
+            for (int slot=depth-((PopByteCode)code).numLevels(); slot<depth; slot++) state[slot] = null;
+        } else if (code instanceof BopByteCode){
+            SsaValue value = newValue(SsaValue.BOP);
+            value.operator = ((BopByteCode)code).operator();
+            value.first = state[depth-2];
+            value.second = state[depth-1];
+            computed.put(address, value);
+            state[depth-2] = value;
+            state[depth-1] = null;
+        } else if (code instanceof CallByteCode){
+            int first = depth - FunctionAnalyzer.argumentsPassedBy(program, address);
+            for (int slot=first; slot<depth; slot++) state[slot] = null;
+            state[first] = newValue(SsaValue.OPAQUE);
+        } else if (code instanceof ReadByteCode){
+            state[depth] = newValue(SsaValue.OPAQUE);
+        } else if (code instanceof FalseBranchByteCode){
+            state[depth-1] = null;
+        }
+    }
+
+    SsaValue constant(int value){
+        SsaValue constant = constants.get(value);
+        if (constant == null){
+            constant = newValue(SsaValue.CONSTANT);
+            constant.constant = value;
+            constant.lattice = SsaValue.KNOWN;
+            constant.latticeValue = value;
+            constants.put(value, constant);
+        }
+        return constant;
+    }
+
+    private SsaValue newValue(int kind){
+        SsaValue value = new SsaValue(values.size(), kind);
+        values.add(value);
+        return value;
+    }
+
+    // A PHI whose operands are all the same value, apart from the PHI itself,
+    // is that value.
+    private void removeTrivialPhis(){
+        boolean changed = true;
+        while (changed){
+            changed = false;
+            for (SsaValue value : values){
+                if (value.kind != SsaValue.PHI || value.replacement != null) continue;
+                SsaValue same = null;
+                boolean trivial = true;
+                for (SsaValue operand : value.operands){
+                    SsaValue resolved = operand.resolve();
+                    if (resolved == value || resolved == same) continue;
+                    if (same != null){
+                        trivial = false;
+                        break;
+                    }
+                    same = resolved;
+                }
+                if (trivial && same != null){
+                    value.replacement = same;
+                    changed = true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package interpreter.optimizer;
+
+/**
+ * A value in the SSA form of a function: computed once, by a LIT, a BOP, a
+ * READ or CALL, as an argument of the function, or by a PHI that merges the
+ * values a slot holds on the paths into a block.  LOAD and STORE only copy
+ * values from one slot to another and so make no values of their own.
+ *
+ * @author admin
+ */
+class SsaValue {
+
+    static final int CONSTANT = 0;
+    static final int ARGUMENT = 1;
+    // the result of a READ or CALL, which nothing is known about
+    static final int OPAQUE = 2;
+    static final int BOP = 3;
+    static final int PHI = 4;
+
+    // what sparse conditional constant propagation found out about the value
+    static final int UNKNOWN = 0;
+    static final int KNOWN = 1;
+    static final int VARYING = 2;
+
+    int id;
+    int kind;
+    int constant;
+    String operator;
+    SsaValue first, second;
+    SsaValue[] operands;
+    SsaBlock block;
+
+    // a trivial PHI is replaced by the one value it merges
+    SsaValue replacement;
+
+    int lattice = UNKNOWN;
+    int latticeValue;
+    int valueNumber;
+
+    SsaValue(int id, int kind){
+        this.id = id;
+        this.kind = kind;
+        // no two values share a number until numberValues() says so
+        valueNumber = -(id+1);
+        if (kind == ARGUMENT || kind == OPAQUE) lattice = VARYING;
+    }
+
+    SsaValue resolve(){
+        SsaValue value = this;
+        while (value.replacement != null) value = value.replacement;
+        return value;
+    }
+
+    boolean isConstant(){
+        return lattice == KNOWN;
+    }
+
+    public String toString(){
+        switch (kind){
+            case CONSTANT: return "" + constant;
+            case ARGUMENT: return "arg" + id;
+            case OPAQUE: return "v" + id;
+            case BOP: return "v" + id + "=" + first.resolve() + operator + second.resolve();
+            default: return "phi" + id;
+        }
+    }
+}
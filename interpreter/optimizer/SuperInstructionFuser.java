@@ -0,0 +1,71 @@
+package interpreter.optimizer;
+import interpreter.Program;
+import interpreter.ByteCode.*;
+import java.util.*;
+
+/**
+ * Turns the hottest pairs and triples of consecutive bytecodes into
+ * FusedByteCode superinstructions, given how often each of them ran.
+ *
+ * pairCounts[i] is the number of times the code at i was directly followed
+ * by the code at i+1, tripleCounts[i] the number of times i, i+1 and i+2 ran
+ * back to back.  A sequence is worth the dispatches it saves, which is its
+ * count times its length minus one, and the most valuable ones are fused
+ * first.  Each address starts at most one superinstruction.
+ *
+ * Typical winners are  LOAD 0 n; LIT 1; BOP -  and  ARGS 1; CALL f.
+ *
+ * @author admin
+ */
+public class SuperInstructionFuser {
+
+    /**
+     * @param minCount sequences that ran fewer times than this are left alone
+     * @param maxFusions the most superinstructions to create
+     * @return the number of superinstructions put into the program.
+     */
+    public static int fuse(Program program, int[] pairCounts, int[] tripleCounts,
+            int minCount, int maxFusions){
+        List<long[]> candidates = new ArrayList<long[]>();
+        for (int i=0; i<pairCounts.length; i++){
+            if (tripleCounts[i] >= minCount && canFuse(program, i, 3)){
+                candidates.add(new long[]{2L*tripleCounts[i], i, 3});
+            }
+            if (pairCounts[i] >= minCount && canFuse(program, i, 2)){
+                candidates.add(new long[]{pairCounts[i], i, 2});
+            }
+        }
+        Collections.sort(candidates, new Comparator<long[]>(){
+            public int compare(long[] a, long[] b){
+                return Long.compare(b[0], a[0]);
+            }
+        });
+
+        // fusing replaces codes, so runs are built from the original ones
+        ByteCode[] original = new ByteCode[program.getNumberOfByteCodes()];
+        for (int i=0; i<original.length; i++) original[i] = program.getCode(i);
+
+        boolean[] fused = new boolean[original.length];
+        int count = 0;
+        for (long[] candidate : candidates){
+            if (count == maxFusions) break;
+            int start = (int)candidate[1];
+            int length = (int)candidate[2];
+            if (fused[start]) continue;
+
+            ByteCode[] codes = Arrays.copyOfRange(original, start, start+length);
+            program.setCode(start, FusedByteCode.of(codes));
+            fused[start] = true;
+            count++;
+        }
+        return count;
+    }
+
+    private static boolean canFuse(Program program, int start, int length){
+        if (start+length > program.getNumberOfByteCodes()) return false;
+        for (int k=0; k<length-1; k++){
+            if (!FusedByteCode.canPrecede(program.getCode(start+k))) return false;
+        }
+        return FusedByteCode.canEnd(program.getCode(start+length-1));
+    }
+}
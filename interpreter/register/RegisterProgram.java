@@ -0,0 +1,165 @@
+package interpreter.register;
+import java.util.*;
+
+/**
+ * A Program translated into register form by the RegisterTranslator.
+ *
+ * Every function works on a window of registers: register n of a call is the
+ * slot at depth n of its frame, so the arguments are r0 .. r(arity-1).  A
+ * CALL whose arguments are in ra .. of the caller starts the callee's window
+ * at ra, and the callee's result ends up in ra.
+ *
+ * An instruction is an opcode and three operands a, b and c.  a is always a
+ * register, b and c are registers when they are >= 0 and the constant
+ * constants[~x] otherwise.
+ *
+ * @author admin
+ */
+public class RegisterProgram {
+
+    public static final int MOVE = 0;     // ra = b
+    public static final int READ = 1;     // ra = the integer read
+    public static final int WRITE = 2;    // print b
+    public static final int JUMP = 3;     // continue at c
+    public static final int JUMPF = 4;    // continue at c if b is 0
+    public static final int CALL = 5;     // ra = function b called on ra ..
+    public static final int RET = 6;      // return b
+    public static final int HALT = 7;
+    public static final int ADD = 8;      // ra = b + c, and so on
+    public static final int SUB = 9;
+    public static final int MUL = 10;
+    public static final int DIV = 11;
+    public static final int EQ = 12;
+    public static final int NE = 13;
+    public static final int LE = 14;
+    public static final int GE = 15;
+    public static final int LT = 16;
+    public static final int GT = 17;
+    public static final int OR = 18;
+    public static final int AND = 19;
+
+    static final String[] OPERATORS = {"+", "-", "*", "/", "==", "!=", "<=", ">=", "<", ">", "|", "&"};
+
+    int size;
+    int[] opcode = new int[64];
+    int[] a = new int[64];
+    int[] b = new int[64];
+    int[] c = new int[64];
+
+    Vector<Integer> constantList = new Vector<Integer>();
+    int[] constants;
+
+    // the functions, main first, with where their code starts and how many
+    // registers they use
+    Vector<String> functionNames = new Vector<String>();
+    int[] functionStart;
+    int[] functionRegisters;
+
+    int emit(int op, int ra, int rb, int rc){
+        if (size == opcode.length){
+            opcode = Arrays.copyOf(opcode, size*2);
+            a = Arrays.copyOf(a, size*2);
+            b = Arrays.copyOf(b, size*2);
+            c = Arrays.copyOf(c, size*2);
+        }
+        opcode[size] = op;
+        a[size] = ra;
+        b[size] = rb;
+        c[size] = rc;
+        return size++;
+    }
+
+    // @return the operand that stands for the constant value
+    int constant(int value){
+        int index = constantList.indexOf(value);
+        if (index < 0){
+            index = constantList.size();
+            constantList.add(value);
+        }
+        return ~index;
+    }
+
+    /**
+     * @return the number of instructions.
+     */
+    public int size(){
+        return size;
+    }
+
+    public int getNumberOfFunctions(){
+        return functionNames.size();
+    }
+
+    /**
+     * @return the index of the first instruction of function f; function 0
+     *  is the main program.
+     */
+    public int getStart(int f){
+        return functionStart[f];
+    }
+
+    /**
+     * @return the number of registers function f uses.
+     */
+    public int getRegisters(int f){
+        return functionRegisters[f];
+    }
+
+    // The instructions, as parallel arrays that may be longer than size().
+
+    public int[] getOpcodes(){
+        return opcode;
+    }
+
+    public int[] getA(){
+        return a;
+    }
+
+    public int[] getB(){
+        return b;
+    }
+
+    public int[] getC(){
+        return c;
+    }
+
+    public int[] getConstants(){
+        return constants;
+    }
+
+    private String operand(int x){
+        return (x >= 0 ? "r" + x : "" + constants[~x]);
+    }
+
+    /**
+     * @return the instruction at index, as in  r1 = r0 - 2
+     */
+    public String toString(int index){
+        int op = opcode[index];
+        switch (op){
+            case MOVE: return "r" + a[index] + " = " + operand(b[index]);
+            case READ: return "r" + a[index] + " = READ";
+            case WRITE: return "WRITE " + operand(b[index]);
+            case JUMP: return "JUMP " + c[index];
+            case JUMPF: return "JUMPF " + operand(b[index]) + " " + c[index];
+            case CALL: return "r" + a[index] + " = CALL " + functionNames.get(b[index]);
+            case RET: return "RETURN " + operand(b[index]);
+            case HALT: return "HALT";
+            default: return "r" + a[index] + " = " + operand(b[index]) + " "
+                    + OPERATORS[op-ADD] + " " + operand(c[index]);
+        }
+    }
+
+    public String toString(){
+        StringBuilder listing = new StringBuilder();
+        for (int f=0; f<functionNames.size(); f++){
+            int end = (f+1 < functionNames.size() ? functionStart[f+1] : size);
+            listing.append(functionNames.get(f)).append(": ")
+                   .append(functionRegisters[f]).append(" registers\n");
+            for (int i=functionStart[f]; i<end; i++){
+                listing.append(String.format("%5d  ", i)).append(toString(i)).append("\n");
+            }
+        }
+        return listing.toString();
+    }
+}
@@ -0,0 +1,198 @@
+package interpreter.register;
+import interpreter.Program;
+import interpreter.analysis.Function;
+import interpreter.analysis.FunctionAnalyzer;
+import interpreter.ByteCode.*;
+import java.util.*;
+
+/**
+ * Translates a Program into a RegisterProgram.
+ *
+ * The FunctionAnalyzer knows how deep the frame is in front of every code,
+ * so the slot a code pushes to or pops from is a known register.  LIT and
+ * LOAD do not move anything: they only remember which constant or register
+ * holds the slot's value, and the code that uses the value reads it from
+ * there.  So
+ *      LOAD 0 n; LIT 2; BOP -      becomes      r1 = r0 - 2
+ * A remembered value is only moved into its register when a STORE would
+ * overwrite the register it comes from, when it is an argument of a CALL, or
+ * at the end of a basic block.
+ *
+ * @author admin
+ */
+public class RegisterTranslator {
+
+    private Program program;
+    private RegisterProgram registers;
+    private HashMap<Integer, Integer> functionIndex = new HashMap<Integer, Integer>();
+
+    // operand[d] is where the value at depth d is when moved[d] is false
+    private int[] operand;
+    private boolean[] moved;
+
+    private RegisterTranslator(Program program){
+        this.program = program;
+        registers = new RegisterProgram();
+    }
+
+    /**
+     * @return the program in register form, or null if one of its functions
+     *  cannot be translated.
+     */
+    public static RegisterProgram translate(Program program){
+        Map<Integer, Function> functions = FunctionAnalyzer.analyze(program);
+        for (Function function : functions.values()){
+            if (!FunctionAnalyzer.isCompilable(program, function)) return null;
+        }
+
+        RegisterTranslator translator = new RegisterTranslator(program);
+        RegisterProgram registers = translator.registers;
+        registers.functionStart = new int[functions.size()];
+        registers.functionRegisters = new int[functions.size()];
+        for (Function function : functions.values()){
+            translator.functionIndex.put(function.getEntry(), registers.functionNames.size());
+            registers.functionNames.add(function.getName());
+        }
+
+        int index = 0;
+        for (Function function : functions.values()){
+            registers.functionStart[index] = registers.size;
+            registers.functionRegisters[index] = Math.max(function.getMaxDepth(), 1);
+            translator.translateFunction(function);
+            index++;
+        }
+
+        registers.constants = new int[registers.constantList.size()];
+        for (int i=0; i<registers.constants.length; i++){
+            registers.constants[i] = registers.constantList.get(i);
+        }
+        return registers;
+    }
+
+    private void translateFunction(Function function){
+        int[] codes = function.getCodes();
+        operand = new int[function.getMaxDepth()+1];
+        moved = new boolean[function.getMaxDepth()+1];
+        Arrays.fill(moved, true);
+
+        Set<Integer> targets = new HashSet<Integer>();
+        for (int address : codes){
+            ByteCode code = program.getCode(address);
+            if (code instanceof GoToByteCode) targets.add(((GoToByteCode)code).targetAddrs+1);
+            if (code instanceof FalseBranchByteCode) targets.add(((FalseBranchByteCode)code).targetAddrs+1);
+        }
+
+        // the instruction each address translated to, and the jumps that
+        // still hold the address they go to
+        HashMap<Integer, Integer> instructionAt = new HashMap<Integer, Integer>();
+        Vector<Integer> jumps = new Vector<Integer>();
+
+        for (int address : codes){
+            ByteCode code = program.getCode(address);
+            int depth = function.getDepthBefore(address);
+            if (targets.contains(address)){
+                moveAll(depth);
+            }
+            instructionAt.put(address, registers.size);
+
+            if (code instanceof LitByteCode){
+                remember(depth, registers.constant(((LitByteCode)code).value()));
+            } else if (code instanceof LoadByteCode){
+                remember(depth, valueAt(((LoadByteCode)code).offset()));
+            } else if (code instanceof StoreByteCode){
+                int offset = ((StoreByteCode)code).offset();
+                int value = take(depth-1);
+                for (int slot=0; slot<depth-1; slot++){
+                    if (!moved[slot] && operand[slot] == offset) move(slot);
+                }
+                moved[offset] = true;
+                if (value != offset) registers.emit(RegisterProgram.MOVE, offset, value, 0);
+            } else if (code instanceof PopByteCode){
+                for (int slot=depth-((PopByteCode)code).numLevels(); slot<depth; slot++){
+                    moved[slot] = true;
+                }
+            } else if (code instanceof BopByteCode){
+                int second = take(depth-1);
+                int first = take(depth-2);
+                registers.emit(opcodeFor(((BopByteCode)code).operator()), depth-2, first, second);
+            } else if (code instanceof CallByteCode){
+                int first = depth - FunctionAnalyzer.argumentsPassedBy(program, address);
+                for (int slot=first; slot<depth; slot++){
+                    move(slot);
+                }
+                registers.emit(RegisterProgram.CALL, first,
+                        functionIndex.get(((CallByteCode)code).targetAddrs), 0);
+                moved[first] = true;
+            } else if (code instanceof ReadByteCode){
+                registers.emit(RegisterProgram.READ, depth, 0, 0);
+                moved[depth] = true;
+            } else if (code instanceof WriteByteCode){
+                registers.emit(RegisterProgram.WRITE, 0, valueAt(depth-1), 0);
+            } else if (code instanceof FalseBranchByteCode){
+                int condition = take(depth-1);
+                moveAll(depth-1);
+                jumps.add(registers.emit(RegisterProgram.JUMPF, 0, condition,
+                        ((FalseBranchByteCode)code).targetAddrs+1));
+            } else if (code instanceof GoToByteCode){
+                moveAll(depth);
+                jumps.add(registers.emit(RegisterProgram.JUMP, 0, 0,
+                        ((GoToByteCode)code).targetAddrs+1));
+                forgetAll();
+            } else if (code instanceof ReturnByteCode){
+                registers.emit(RegisterProgram.RET, 0, valueAt(depth-1), 0);
+                forgetAll();
+            } else if (code instanceof HaltByteCode){
+                registers.emit(RegisterProgram.HALT, 0, 0, 0);
+                forgetAll();
+            }
+            // LABEL and ARGS have nothing left to do
+        }
+
+        for (int jump : jumps){
+            registers.c[jump] = instructionAt.get(registers.c[jump]);
+        }
+    }
+
+    // @return where the value at depth slot is
+    private int valueAt(int slot){
+        return (moved[slot] ? slot : operand[slot]);
+    }
+
+    private void remember(int slot, int value){
+        operand[slot] = value;
+        moved[slot] = false;
+    }
+
+    // @return where the value at depth slot is, which is popped
+    private int take(int slot){
+        int value = valueAt(slot);
+        moved[slot] = true;
+        return value;
+    }
+
+    private void move(int slot){
+        if (!moved[slot]){
+            registers.emit(RegisterProgram.MOVE, slot, operand[slot], 0);
+            moved[slot] = true;
+        }
+    }
+
+    private void moveAll(int depth){
+        for (int slot=0; slot<depth; slot++){
+            move(slot);
+        }
+    }
+
+    // Nothing remembered carries over the end of a block that does not go
+    // on to the next code.
+    private void forgetAll(){
+        Arrays.fill(moved, true);
+    }
+
+    private static int opcodeFor(String op){
+        for (int i=0; i<RegisterProgram.OPERATORS.length; i++){
+            if (RegisterProgram.OPERATORS[i].equals(op)) return RegisterProgram.ADD + i;
+        }
+        throw new IllegalArgumentException("unknown binary operator " + op);
+    }
+}
@@ -0,0 +1,9 @@
+program { int k
+  int count(int n, int total) {
+      if (n < 1) then
+         { return total }
+      else
+         { return count(n-1, total+1) }
+  }
+  k = write(count(read(), 0))
+}